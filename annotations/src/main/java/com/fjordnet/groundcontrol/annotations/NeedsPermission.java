@@ -43,6 +43,21 @@ public @interface NeedsPermission {
      */
     int rationaleResourceId() default 0;
 
+    /**
+     * An optional attribute specifying whether the permissions should only be checked,
+     * without ever prompting the user. If the permissions have not been granted, the method
+     * annotated with {@link OnPermissionDenied} with the same permissions is invoked
+     * immediately instead, if any. The default value is {@code false}.
+     * <p>
+     * Check-only methods are not limited to activities and fragments. A class whose methods
+     * annotated with {@link NeedsPermission} are all check-only must either be a
+     * {@code Context}, or have or inherit an accessible {@code getContext()} method,
+     * e.g. services, views, or sync adapters.
+     *
+     * @return {@code true} if the permissions should only be checked.
+     */
+    boolean checkOnly() default false;
+
     /**
      * An optional attribute specifying whether to display compilation warnings
      * for this annotation. The default value is {@code true}.
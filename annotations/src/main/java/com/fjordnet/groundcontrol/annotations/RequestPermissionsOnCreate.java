@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017-2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Class annotation indicating that all runtime permissions required by the methods of
+ * the class annotated with {@link NeedsPermission} should be requested together when the
+ * activity or fragment is first created, rather than one method at a time.
+ * Subclasses inherit this behavior, and request the permissions of their own annotated
+ * methods as well.
+ * <p>
+ * Permissions are only requested up front if none of the missing permissions needs a
+ * rationale. Otherwise, each annotated method shows its rationale and requests its
+ * permissions when invoked, as usual.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface RequestPermissionsOnCreate {
+
+    /**
+     * An optional attribute specifying whether to display compilation warnings
+     * for this annotation. The default value is {@code true}.
+     *
+     * @return {@code true} if compilation warnings for this annotation should be displayed.
+     */
+    boolean usageWarnings() default true;
+}
@@ -19,6 +19,7 @@ package com.fjordnet.groundcontrol;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.app.Fragment;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -27,20 +28,293 @@ import android.os.Build;
 import android.support.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static android.content.pm.PackageManager.PERMISSION_GRANTED;
-import static android.support.v4.app.ActivityCompat.shouldShowRequestPermissionRationale;
-import static android.support.v4.content.ContextCompat.checkSelfPermission;
 
 /**
  * This is the primary interface for permission management in this library.
  */
 public abstract class GroundControl {
 
+    /**
+     * Default duration, in milliseconds, after which an unanswered permission request
+     * is considered abandoned.
+     */
+    public static final long DEFAULT_REQUEST_EXPIRY = 10 * 60 * 1000;
+
+    private static final String[] NO_PERMISSIONS = new String[0];
+
+    private static volatile long requestExpiry = DEFAULT_REQUEST_EXPIRY;
+
+    private static volatile PermissionBackend permissionBackend = new PlatformPermissionBackend();
+
+    /**
+     * Permissions found to be granted. Revoking a permission kills the app process,
+     * so granted permissions never need to be checked again within the same process.
+     */
+    private static final Set<String> grantedPermissionsCache
+            = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     protected GroundControl() {
     }
 
+    /**
+     * Sets the duration after which an unanswered permission request is considered abandoned.
+     * Abandoned requests no longer hold back the requests queued behind them, and queued
+     * requests are dropped once abandoned. The result of a request sent to the platform is
+     * still delivered whenever the user answers, to whichever activity or fragment awaits it.
+     *
+     * @param expiry duration in milliseconds, or {@code 0} for requests to never expire.
+     */
+    public static void setRequestExpiry(long expiry) {
+        requestExpiry = expiry;
+    }
+
+    /**
+     * @return the duration in milliseconds after which an unanswered permission request
+     * is considered abandoned, or {@code 0} if requests never expire.
+     */
+    public static long getRequestExpiry() {
+        return requestExpiry;
+    }
+
+    /**
+     * Installs the backend through which permissions are checked, explained and requested
+     * for the whole process, by both this class and the code generated for annotated methods.
+     * The backend is assumed to delegate to the platform, e.g. a {@link PlatformPermissionBackend}
+     * subclass or a wrapper around one, see {@link #setPermissionBackend(PermissionBackend,
+     * boolean)}.
+     *
+     * @param backend the backend to install, or {@code null} to restore the default
+     * {@link PlatformPermissionBackend}.
+     */
+    public static void setPermissionBackend(PermissionBackend backend) {
+        setPermissionBackend(backend, true);
+    }
+
+    /**
+     * Installs the backend through which permissions are checked, explained and requested
+     * for the whole process, by both this class and the code generated for annotated methods.
+     * Permissions found to be granted by the previous backend are forgotten, as is the history
+     * of denials.
+     *
+     * @param backend the backend to install, or {@code null} to restore the default
+     * {@link PlatformPermissionBackend}.
+     * @param delegatesToPlatform {@code true} if the backend ultimately asks the platform,
+     * in which case the history of denials is persisted across processes. {@code false}
+     * for backends answering on their own, such as the {@link ScriptedPermissionBackend},
+     * whose denials are kept in memory only. Ignored when restoring the default backend.
+     */
+    public static void setPermissionBackend(PermissionBackend backend,
+            boolean delegatesToPlatform) {
+
+        permissionBackend = null == backend ? new PlatformPermissionBackend() : backend;
+        grantedPermissionsCache.clear();
+        PermissionDenials.reset(null == backend || delegatesToPlatform);
+        PermissionRequestPlanner.reset();
+    }
+
+    /**
+     * Forget the permissions found to be granted so far, e.g. once the installed backend
+     * revokes a permission, which the platform does by killing the app process instead.
+     */
+    static void clearGrantedPermissionsCache() {
+        grantedPermissionsCache.clear();
+    }
+
+    /**
+     * @return the backend through which permissions are checked, explained and requested.
+     */
+    @NonNull
+    public static PermissionBackend getPermissionBackend() {
+        return permissionBackend;
+    }
+
+    /**
+     * Sets the listener notified of every planned permission request sent to the installed
+     * {@link PermissionBackend}, e.g. for tests to verify the order of the requests.
+     *
+     * @param listener the listener, or {@code null} to remove it.
+     */
+    public static void setOnPermissionRequestPlannedListener(
+            OnPermissionRequestPlannedListener listener) {
+        PermissionRequestPlanner.setListener(listener);
+    }
+
+    /**
+     * Requests the specified permissions through the installed {@link PermissionBackend},
+     * once planned as described by {@link PermissionRequestPlan}. The request waits for
+     * the result of any outstanding request to the same activity.
+     *
+     * @param activity the activity whose {@code onRequestPermissionsResult} method receives
+     * the result.
+     */
+    public static void requestPermissions(@NonNull Activity activity,
+            @NonNull String[] permissions,
+            int requestCode) {
+
+        PermissionRequestPlanner.request(new PermissionRequestPlanner.Request<Activity>(
+                activity, activity, permissions, requestCode) {
+
+            @Override
+            void send(PermissionBackend backend, Activity requester) {
+                backend.requestPermissions(requester, plan.permissions, plan.requestCode);
+            }
+        });
+    }
+
+    /**
+     * Requests the specified permissions through the installed {@link PermissionBackend},
+     * once planned as described by {@link PermissionRequestPlan}. The request waits for
+     * the result of any outstanding request to the same activity.
+     *
+     * @param fragment the fragment whose {@code onRequestPermissionsResult} method receives
+     * the result.
+     */
+    public static void requestPermissions(@NonNull Fragment fragment,
+            @NonNull String[] permissions,
+            int requestCode) {
+
+        PermissionRequestPlanner.request(new PermissionRequestPlanner.Request<Fragment>(
+                fragment, fragment.getActivity(), permissions, requestCode) {
+
+            @Override
+            boolean isAdded(Fragment requester) {
+                return requester.isAdded();
+            }
+
+            @Override
+            void send(PermissionBackend backend, Fragment requester) {
+                backend.requestPermissions(requester, plan.permissions, plan.requestCode);
+            }
+        });
+    }
+
+    /**
+     * Requests the specified permissions through the installed {@link PermissionBackend},
+     * once planned as described by {@link PermissionRequestPlan}. The request waits for
+     * the result of any outstanding request to the same activity.
+     *
+     * @param supportFragment the support fragment whose {@code onRequestPermissionsResult}
+     * method receives the result.
+     */
+    public static void requestPermissions(
+            @NonNull android.support.v4.app.Fragment supportFragment,
+            @NonNull String[] permissions,
+            int requestCode) {
+
+        PermissionRequestPlanner.request(
+                new PermissionRequestPlanner.Request<android.support.v4.app.Fragment>(
+                        supportFragment, supportFragment.getActivity(), permissions,
+                        requestCode) {
+
+                    @Override
+                    boolean isAdded(android.support.v4.app.Fragment requester) {
+                        return requester.isAdded();
+                    }
+
+                    @Override
+                    void send(PermissionBackend backend,
+                            android.support.v4.app.Fragment requester) {
+                        backend.requestPermissions(requester, plan.permissions,
+                                plan.requestCode);
+                    }
+                });
+    }
+
+    /**
+     * Records the result of a permission request, from which permanently denied permissions
+     * are inferred. Permanently denied permissions are no longer requested by the code
+     * generated for annotated methods, which invokes the permission denied callback instead.
+     * Any request queued for the same activity behind the request is then sent.
+     *
+     * @param activity the activity which received the result, or hosts the fragment
+     * which received it.
+     * @param requestCode the request code of the result.
+     * @param permissions the requested permissions.
+     * @param grantResults the grant results for the corresponding permissions.
+     */
+    public static void recordPermissionsResult(Activity activity,
+            int requestCode,
+            String[] permissions,
+            int[] grantResults) {
+
+        if (null == activity) {
+            return;
+        }
+
+        // Any request waiting for this one may now be sent.
+        PermissionRequestPlanner.onResult(activity, requestCode);
+
+        // Interrupted requests have empty results.
+        if (null == permissions || null == grantResults) {
+            return;
+        }
+
+        final PermissionBackend backend = permissionBackend;
+        for (int index = 0; index < permissions.length && index < grantResults.length; index++) {
+
+            final String permission = permissions[index];
+            if (PERMISSION_GRANTED == grantResults[index]) {
+                PermissionDenials.recordGranted(permission);
+            } else {
+                PermissionDenials.recordDenied(activity, permission,
+                        backend.shouldShowRequestPermissionRationale(activity, permission));
+            }
+        }
+    }
+
+    /**
+     * Checks whether any of the specified permissions has been permanently denied, i.e.
+     * the user chose not to be asked for it again. Such permissions can only be granted from
+     * the app settings, e.g. shown with {@link #showAppSettings(Context)} from a method
+     * annotated with {@code OnPermissionDenied}.
+     *
+     * @param context {@link Context}
+     * @param permissions one or more permissions to check.
+     *
+     * @return {@code true} if at least one of the permissions is permanently denied.
+     */
+    public static boolean isPermanentlyDenied(@NonNull Context context, String... permissions) {
+
+        if (null == permissions) {
+            return false;
+        }
+
+        final PermissionBackend backend = permissionBackend;
+        for (String permission : permissions) {
+            if (PERMISSION_GRANTED != backend.checkSelfPermission(context, permission)
+                    && PermissionDenials.isPermanentlyDenied(context, permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a permission request made at the specified time has been abandoned.
+     *
+     * @param requestTime the time at which the request was made, in milliseconds since
+     * the epoch, as returned by {@link System#currentTimeMillis()}.
+     *
+     * @return {@code true} if the request has expired.
+     */
+    public static boolean isRequestExpired(long requestTime) {
+
+        final long expiry = requestExpiry;
+        if (0 >= expiry) {
+            return false;
+        }
+
+        // A request time in the future means the clock was changed since the request.
+        final long elapsed = System.currentTimeMillis() - requestTime;
+        return 0 > elapsed || expiry < elapsed;
+    }
+
     /**
      * Checks whether or not a specific permission has been granted.
      *
@@ -56,18 +330,125 @@ public abstract class GroundControl {
         }
 
         // If we are on pre-M, simply return true.
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M)
+        final PermissionBackend backend = permissionBackend;
+        if (backend.isGrantedAtInstall())
             return true;
 
         // Check each permission.
         for (String permission : permissions) {
-            if (PERMISSION_GRANTED != checkSelfPermission(context, permission)) {
+            if (PERMISSION_GRANTED != backend.checkSelfPermission(context, permission)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the specified permissions have been granted, only querying those which
+     * have not been found to be granted before. Permissions can only be revoked by killing
+     * the app process, so granted permissions remain valid for the lifetime of the process.
+     * May be called from any thread.
+     *
+     * @param context {@link Context}
+     * @param permissions one or more permissions to check.
+     *
+     * @return {@code true} if the permissions have been granted.
+     */
+    public static boolean hasCachedPermissions(@NonNull Context context,
+            String... permissions) {
+
+        if (null == permissions || 0 >= permissions.length) {
+            return false;
+        }
+
+        // If we are on pre-M, simply return true.
+        final PermissionBackend backend = permissionBackend;
+        if (backend.isGrantedAtInstall()) {
+            return true;
+        }
+
+        for (String permission : permissions) {
+
+            if (grantedPermissionsCache.contains(permission)) {
+                continue;
+            }
+
+            if (PERMISSION_GRANTED != backend.checkSelfPermission(context, permission)) {
                 return false;
             }
+            grantedPermissionsCache.add(permission);
+            PermissionDenials.recordGranted(permission);
         }
         return true;
     }
 
+    /**
+     * Evaluates the state of the specified permissions in a single pass, querying whether
+     * each permission has been granted once, and whether a rationale should be shown only
+     * for those that have not. Missing permissions not needing a rationale are looked up
+     * in the persisted history of denials, to determine whether they are permanently denied.
+     *
+     * @param context context within which to check whether the specified permissions
+     * have been granted. If it is an {@link Activity}, it is also used to determine
+     * whether a rationale should be shown.
+     * @param permissions the permissions to be evaluated.
+     *
+     * @return a snapshot of the state of the specified permissions.
+     */
+    @NonNull
+    public static PermissionSnapshot evaluatePermissions(@NonNull Context context,
+            String... permissions) {
+
+        if (null == permissions || 0 >= permissions.length) {
+            return new PermissionSnapshot(NO_PERMISSIONS, NO_PERMISSIONS, NO_PERMISSIONS);
+        }
+
+        // If we are on pre-M, all permissions are granted at install time.
+        final PermissionBackend backend = permissionBackend;
+        if (backend.isGrantedAtInstall()) {
+            return new PermissionSnapshot(permissions, NO_PERMISSIONS, NO_PERMISSIONS);
+        }
+
+        List<String> grantedPermissions = new ArrayList<>(permissions.length);
+        List<String> missingPermissions = new ArrayList<>(permissions.length);
+        for (String permission : permissions) {
+            if (PERMISSION_GRANTED == backend.checkSelfPermission(context, permission)) {
+                grantedPermissions.add(permission);
+
+                // Granted permissions remain granted within the process, so their denials
+                // only need to be forgotten once.
+                if (grantedPermissionsCache.add(permission)) {
+                    PermissionDenials.recordGranted(permission);
+                }
+            } else {
+                missingPermissions.add(permission);
+            }
+        }
+
+        if (missingPermissions.isEmpty()) {
+            return new PermissionSnapshot(permissions, NO_PERMISSIONS, NO_PERMISSIONS);
+        }
+
+        List<String> rationalePermissions = new ArrayList<>(missingPermissions.size());
+        List<String> permanentlyDeniedPermissions = new ArrayList<>(missingPermissions.size());
+        for (String permission : missingPermissions) {
+            if (context instanceof Activity && backend.shouldShowRequestPermissionRationale(
+                    (Activity) context, permission)) {
+                rationalePermissions.add(permission);
+                PermissionDenials.recordRationaleNeeded(context, permission);
+            } else if (PermissionDenials.isPermanentlyDenied(context, permission)) {
+                permanentlyDeniedPermissions.add(permission);
+            }
+        }
+
+        return new PermissionSnapshot(
+                grantedPermissions.toArray(new String[grantedPermissions.size()]),
+                missingPermissions.toArray(new String[missingPermissions.size()]),
+                rationalePermissions.toArray(new String[rationalePermissions.size()]),
+                permanentlyDeniedPermissions.toArray(
+                        new String[permanentlyDeniedPermissions.size()]));
+    }
+
     /**
      * Given an array of permissions, filter out any permissions that have already been granted.
      *
@@ -85,9 +466,10 @@ public abstract class GroundControl {
             return new String[0];
         }
 
+        final PermissionBackend backend = permissionBackend;
         List<String> filteredPermissions = new ArrayList<>();
         for (String permission : permissions) {
-            if (PERMISSION_GRANTED != checkSelfPermission(context, permission)) {
+            if (PERMISSION_GRANTED != backend.checkSelfPermission(context, permission)) {
                 filteredPermissions.add(permission);
             }
         }
@@ -113,8 +495,9 @@ public abstract class GroundControl {
             return false;
         }
 
+        final PermissionBackend backend = permissionBackend;
         for (String permission : permissions) {
-            if (shouldShowRequestPermissionRationale(activity, permission)) {
+            if (backend.shouldShowRequestPermissionRationale(activity, permission)) {
                 return true;
             }
         }
@@ -148,6 +531,37 @@ public abstract class GroundControl {
                 .create();
     }
 
+    /**
+     * Create a light style alert dialog for displaying a rationale, which requests
+     * the permissions of the specified listener once acknowledged. Used by the code generated
+     * for methods annotated with {@code NeedsPermission} specifying a rationale resource ID.
+     *
+     * @param context used for creating the alert dialog.
+     * @param rationale the rationale to display in the alert dialog.
+     * @param listener the listener of the request for which the rationale is displayed.
+     * @param target the activity or fragment making the request.
+     *
+     * @return an alert dialog containing the rationale for requesting a permission.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP_MR1)
+    @NonNull
+    public static AlertDialog createPermissionRationaleDialog(
+            @NonNull Context context,
+            @NonNull Rationale rationale,
+            @NonNull final OnRationaleAcknowledgedListener listener,
+            @NonNull final OnRationaleAcknowledgedListener.Target target) {
+
+        return createPermissionRationaleDialog(context, rationale,
+                new DialogInterface.OnClickListener() {
+
+                    @Override
+                    public void onClick(DialogInterface dialog, int buttonId) {
+                        target.__groundControlOnRationaleAcknowledged(listener.permissions,
+                                listener.requestCode);
+                    }
+                });
+    }
+
     /**
      * Creates and returns an Intent to the application settings.
      *
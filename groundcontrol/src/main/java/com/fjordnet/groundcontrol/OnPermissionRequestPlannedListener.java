@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol;
+
+/**
+ * Callback for when Ground Control sends a planned permission request to the
+ * {@link PermissionBackend}, e.g. for tests to verify the requests made, or for metrics.
+ */
+public interface OnPermissionRequestPlannedListener {
+
+    /**
+     * Callback when a planned request is sent, on the thread sending it.
+     *
+     * @param plan the request, as sent to the backend.
+     */
+    void onPermissionRequestPlanned(PermissionRequestPlan plan);
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017-2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol;
+
+/**
+ * Callback for when permissions observed through {@link PermissionMonitor} are granted or
+ * revoked, e.g. from the app settings, outside of the permission requests of the app.
+ */
+public interface OnPermissionsChangedListener {
+
+    /**
+     * Callback when any of the permissions this listener subscribed to has changed.
+     * Invoked on the main thread.
+     *
+     * @param grantedPermissions the subscribed permissions which have been granted since
+     * they were last evaluated. May be empty.
+     * @param revokedPermissions the subscribed permissions which have been revoked since
+     * they were last evaluated. May be empty.
+     */
+    void onPermissionsChanged(String[] grantedPermissions, String[] revokedPermissions);
+}
@@ -28,7 +28,12 @@ import android.os.Parcelable;
  * An instance of this class will be passed to methods annotated with {@code OnShowRationale}.
  * The implementation of those methods should invoke the appropriate version of
  * {@code onRationaleAcknowledged} depending on the type of the class containing the methods.
- * Invocation of any of the other methods will result in an {@link UnsupportedOperationException}.
+ * </p><p>
+ * The listener only holds the permissions to request and the request code identifying
+ * the pending callback, and hands them back to the activity or fragment it is invoked with,
+ * so it may be saved as a {@link Parcelable} and restored. Invocation with an instance of
+ * a class which is not woven by Ground Control will result in an
+ * {@link UnsupportedOperationException}.
  * </p>
  */
 public class OnRationaleAcknowledgedListener implements Parcelable {
@@ -50,7 +55,7 @@ public class OnRationaleAcknowledgedListener implements Parcelable {
     protected String[] permissions;
     protected int requestCode;
 
-    protected OnRationaleAcknowledgedListener(String[] permissions, int requestCode) {
+    public OnRationaleAcknowledgedListener(String[] permissions, int requestCode) {
         this.permissions = permissions;
         this.requestCode = requestCode;
     }
@@ -62,7 +67,7 @@ public class OnRationaleAcknowledgedListener implements Parcelable {
      * annotated by {@code OnShowRationale}.
      */
     public void onRationaleAcknowledged(Activity activity) {
-        throw new UnsupportedOperationException();
+        acknowledge(activity);
     }
 
     /**
@@ -72,7 +77,7 @@ public class OnRationaleAcknowledgedListener implements Parcelable {
      * annotated by {@code OnShowRationale}.
      */
     public void onRationaleAcknowledged(Fragment fragment) {
-        throw new UnsupportedOperationException();
+        acknowledge(fragment);
     }
 
     /**
@@ -82,7 +87,20 @@ public class OnRationaleAcknowledgedListener implements Parcelable {
      * subclass containing methods annotated by {@code OnShowRationale}.
      */
     public void onRationaleAcknowledged(android.support.v4.app.Fragment supportFragment) {
-        throw new UnsupportedOperationException();
+        acknowledge(supportFragment);
+    }
+
+    /**
+     * Hands the permissions and request code back to the specified instance, which requests
+     * the permissions for the callback pending under the request code.
+     */
+    private void acknowledge(Object instance) {
+
+        if (!(instance instanceof Target)) {
+            throw new UnsupportedOperationException();
+        }
+
+        ((Target) instance).__groundControlOnRationaleAcknowledged(permissions, requestCode);
     }
 
     @Override
@@ -95,4 +113,18 @@ public class OnRationaleAcknowledgedListener implements Parcelable {
         dest.writeStringArray(permissions);
         dest.writeInt(requestCode);
     }
+
+    /**
+     * Implemented by the classes Ground Control weaves into the hierarchy of activities and
+     * fragments with methods annotated with {@code OnShowRationale}. Not meant to be
+     * implemented by other classes, hence the prefixed method name.
+     */
+    public interface Target {
+
+        /**
+         * Requests the specified permissions after their rationale was acknowledged,
+         * for the callback pending under the specified request code.
+         */
+        void __groundControlOnRationaleAcknowledged(String[] permissions, int requestCode);
+    }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol;
+
+import android.app.Activity;
+import android.app.Fragment;
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+/**
+ * <p>
+ * Operations through which Ground Control checks, explains and requests permissions.
+ * Both {@link GroundControl} and the code generated for annotated methods go through
+ * the backend installed with {@link GroundControl#setPermissionBackend(PermissionBackend)},
+ * which is the {@link PlatformPermissionBackend} by default.
+ * </p><p>
+ * Installing a backend allows caching, batching or instrumenting these operations,
+ * typically by extending {@link PlatformPermissionBackend}, or replacing them altogether,
+ * e.g. with a deterministic in-memory backend for tests and benchmarks.
+ * Implementations must be thread-safe, as permissions may be checked from any thread.
+ * </p>
+ */
+public interface PermissionBackend {
+
+    /**
+     * @return {@code true} if all permissions are granted at install time, i.e. before
+     * Android M, in which case permissions are neither checked nor requested.
+     */
+    boolean isGrantedAtInstall();
+
+    /**
+     * @return {@link android.content.pm.PackageManager#PERMISSION_GRANTED} if the specified
+     * permission has been granted,
+     * {@link android.content.pm.PackageManager#PERMISSION_DENIED} otherwise.
+     *
+     * @see android.support.v4.content.ContextCompat#checkSelfPermission(Context, String)
+     */
+    int checkSelfPermission(@NonNull Context context, @NonNull String permission);
+
+    /**
+     * @return {@code true} if a rationale should be shown before requesting the specified
+     * permission.
+     *
+     * @see android.support.v4.app.ActivityCompat#shouldShowRequestPermissionRationale(
+     * Activity, String)
+     */
+    boolean shouldShowRequestPermissionRationale(@NonNull Activity activity,
+            @NonNull String permission);
+
+    /**
+     * Requests the specified permissions on behalf of the specified activity, whose
+     * {@code onRequestPermissionsResult} method must eventually receive the result.
+     */
+    void requestPermissions(@NonNull Activity activity,
+            @NonNull String[] permissions,
+            int requestCode);
+
+    /**
+     * Requests the specified permissions on behalf of the specified fragment, whose
+     * {@code onRequestPermissionsResult} method must eventually receive the result.
+     */
+    void requestPermissions(@NonNull Fragment fragment,
+            @NonNull String[] permissions,
+            int requestCode);
+
+    /**
+     * Requests the specified permissions on behalf of the specified support fragment, whose
+     * {@code onRequestPermissionsResult} method must eventually receive the result.
+     */
+    void requestPermissions(@NonNull android.support.v4.app.Fragment supportFragment,
+            @NonNull String[] permissions,
+            int requestCode);
+}
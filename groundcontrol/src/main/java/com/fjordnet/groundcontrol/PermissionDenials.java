@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Permissions permanently denied by the user, persisted in shared preferences so that they
+ * are known from the first check of every app process.
+ * </p><p>
+ * A permission is permanently denied once the user chooses not to be asked again, or,
+ * from Android 11, denies it twice. The platform then denies any further request without
+ * asking the user, and stops recommending a rationale. Permanent denial is thus inferred when
+ * a rationale was recommended for a permission before it was requested, and no longer is once
+ * the request is denied. From Android 11, dismissing the request also denies the permission,
+ * leaving the rationale flag unchanged, so dismissals never count as permanent denials.
+ * </p><p>
+ * The rationale flags before requests are only kept in memory, as are the permissions found
+ * to be granted until the persisted history is needed, which is loaded at most once per
+ * process. Kept in memory only while a backend other than the platform is installed.
+ * May be used from any thread.
+ * </p>
+ */
+final class PermissionDenials {
+
+    private static final String PREFERENCES_NAME = "com.fjordnet.groundcontrol.denials";
+    private static final String KEY_PERMANENTLY_DENIED = "permanentlyDenied";
+
+    /** Whether a rationale was recommended for each requested permission, when requested. */
+    private static final Map<String, Boolean> rationalesBeforeRequests = new HashMap<>();
+
+    /** Permissions found to be granted before the history was loaded. */
+    private static final Set<String> grantedBeforeLoad = new HashSet<>();
+
+    private static boolean persisted = true;
+    private static SharedPreferences preferences;
+    private static Set<String> permanentlyDeniedPermissions;
+
+    private PermissionDenials() {
+    }
+
+    /**
+     * @return {@code true} if the specified permission was found to be permanently denied.
+     */
+    static synchronized boolean isPermanentlyDenied(Context context, String permission) {
+        load(context);
+        return permanentlyDeniedPermissions.contains(permission);
+    }
+
+    /**
+     * Record whether a rationale is recommended for the specified permission, as it's about
+     * to be requested, to be compared with the recommendation once the request is denied.
+     */
+    static synchronized void recordRequested(String permission, boolean showRationale) {
+        rationalesBeforeRequests.put(permission, showRationale);
+    }
+
+    /**
+     * Forget any denial of the specified permission, found to be granted, e.g. from
+     * the app settings. The history isn't loaded for this, only updated once loaded.
+     */
+    static synchronized void recordGranted(String permission) {
+
+        rationalesBeforeRequests.remove(permission);
+
+        if (null == permanentlyDeniedPermissions) {
+            grantedBeforeLoad.add(permission);
+        } else if (permanentlyDeniedPermissions.remove(permission)) {
+            save();
+        }
+    }
+
+    /**
+     * Record the denial of the specified permission by the user.
+     *
+     * @param showRationale whether a rationale should be shown for the permission,
+     * queried after the denial.
+     */
+    static synchronized void recordDenied(Context context,
+            String permission,
+            boolean showRationale) {
+
+        // Unknown if the request was made by an earlier process.
+        final Boolean showedRationale = rationalesBeforeRequests.remove(permission);
+
+        load(context);
+
+        final boolean changed;
+        if (showRationale) {
+            // The user may still be asked, e.g. after resetting the permission in the settings.
+            changed = permanentlyDeniedPermissions.remove(permission);
+        } else if (Boolean.TRUE.equals(showedRationale)) {
+            changed = permanentlyDeniedPermissions.add(permission);
+        } else {
+            // The request was dismissed, or denied by the platform as already permanently
+            // denied, neither of which changes the recorded state.
+            changed = false;
+        }
+
+        if (changed) {
+            save();
+        }
+    }
+
+    /**
+     * Forget that the specified permission is permanently denied, as the platform recommends
+     * a rationale for it again, e.g. after the permission was reset in the settings.
+     */
+    static synchronized void recordRationaleNeeded(Context context, String permission) {
+
+        load(context);
+        if (permanentlyDeniedPermissions.remove(permission)) {
+            save();
+        }
+    }
+
+    /**
+     * Forget the history loaded so far, upon installing a permission backend.
+     *
+     * @param persisted {@code true} to load the history from shared preferences again upon
+     * next use, {@code false} to start from an empty history kept in memory only.
+     */
+    static synchronized void reset(boolean persisted) {
+        PermissionDenials.persisted = persisted;
+        preferences = null;
+        permanentlyDeniedPermissions = null;
+        rationalesBeforeRequests.clear();
+        grantedBeforeLoad.clear();
+    }
+
+    private static void load(Context context) {
+
+        if (null != permanentlyDeniedPermissions) {
+            return;
+        }
+
+        if (!persisted) {
+            permanentlyDeniedPermissions = new HashSet<>();
+            grantedBeforeLoad.clear();
+            return;
+        }
+
+        preferences = context.getApplicationContext()
+                .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        // Sets returned by shared preferences must not be modified.
+        permanentlyDeniedPermissions = new HashSet<>(
+                preferences.getStringSet(KEY_PERMANENTLY_DENIED, new HashSet<String>()));
+
+        if (permanentlyDeniedPermissions.removeAll(grantedBeforeLoad)) {
+            save();
+        }
+        grantedBeforeLoad.clear();
+    }
+
+    private static void save() {
+
+        if (null == preferences) {
+            return;
+        }
+
+        preferences.edit()
+                .putStringSet(KEY_PERMANENTLY_DENIED, new HashSet<>(permanentlyDeniedPermissions))
+                .apply();
+    }
+}
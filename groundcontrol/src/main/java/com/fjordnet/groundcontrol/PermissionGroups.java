@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Table of the platform permission groups of dangerous permissions, bundled with Ground Control
+ * so that permissions can be grouped without querying the package manager. The platform shows
+ * a single dialog for all the permissions of a group within a request, and, up to Android 7.1,
+ * grants the other permissions of a group without asking once one of them is granted.
+ */
+public final class PermissionGroups {
+
+    public static final String CALENDAR = "android.permission-group.CALENDAR";
+    public static final String CALL_LOG = "android.permission-group.CALL_LOG";
+    public static final String CAMERA = "android.permission-group.CAMERA";
+    public static final String CONTACTS = "android.permission-group.CONTACTS";
+    public static final String LOCATION = "android.permission-group.LOCATION";
+    public static final String MICROPHONE = "android.permission-group.MICROPHONE";
+    public static final String PHONE = "android.permission-group.PHONE";
+    public static final String SENSORS = "android.permission-group.SENSORS";
+    public static final String SMS = "android.permission-group.SMS";
+    public static final String STORAGE = "android.permission-group.STORAGE";
+    public static final String ACTIVITY_RECOGNITION
+            = "android.permission-group.ACTIVITY_RECOGNITION";
+    public static final String NEARBY_DEVICES = "android.permission-group.NEARBY_DEVICES";
+    public static final String NOTIFICATIONS = "android.permission-group.NOTIFICATIONS";
+    public static final String READ_MEDIA_AURAL = "android.permission-group.READ_MEDIA_AURAL";
+    public static final String READ_MEDIA_VISUAL = "android.permission-group.READ_MEDIA_VISUAL";
+
+    private static final String PERMISSION_PREFIX = "android.permission.";
+
+    private static final Map<String, String> groups = new HashMap<>();
+
+    static {
+        put(CALENDAR, "READ_CALENDAR", "WRITE_CALENDAR");
+        put(CALL_LOG, "READ_CALL_LOG", "WRITE_CALL_LOG", "PROCESS_OUTGOING_CALLS");
+        put(CAMERA, "CAMERA");
+        put(CONTACTS, "READ_CONTACTS", "WRITE_CONTACTS", "GET_ACCOUNTS");
+        put(LOCATION, "ACCESS_FINE_LOCATION", "ACCESS_COARSE_LOCATION",
+                "ACCESS_BACKGROUND_LOCATION");
+        put(MICROPHONE, "RECORD_AUDIO");
+        put(PHONE, "READ_PHONE_STATE", "READ_PHONE_NUMBERS", "CALL_PHONE", "ANSWER_PHONE_CALLS",
+                "ADD_VOICEMAIL", "USE_SIP", "ACCEPT_HANDOVER");
+        put(SENSORS, "BODY_SENSORS", "BODY_SENSORS_BACKGROUND");
+        put(SMS, "SEND_SMS", "RECEIVE_SMS", "READ_SMS", "RECEIVE_WAP_PUSH", "RECEIVE_MMS");
+        put(STORAGE, "READ_EXTERNAL_STORAGE", "WRITE_EXTERNAL_STORAGE");
+        put(ACTIVITY_RECOGNITION, "ACTIVITY_RECOGNITION");
+        put(NEARBY_DEVICES, "BLUETOOTH_SCAN", "BLUETOOTH_CONNECT", "BLUETOOTH_ADVERTISE",
+                "NEARBY_WIFI_DEVICES", "UWB_RANGING");
+        put(NOTIFICATIONS, "POST_NOTIFICATIONS");
+        put(READ_MEDIA_AURAL, "READ_MEDIA_AUDIO");
+        put(READ_MEDIA_VISUAL, "READ_MEDIA_IMAGES", "READ_MEDIA_VIDEO",
+                "READ_MEDIA_VISUAL_USER_SELECTED");
+    }
+
+    private PermissionGroups() {
+    }
+
+    /**
+     * @return the platform permission group of the specified permission, or {@code null}
+     * if it isn't a dangerous permission known to belong to a group.
+     */
+    public static String getGroup(String permission) {
+        return groups.get(permission);
+    }
+
+    private static void put(String group, String... permissionNames) {
+        for (String permissionName : permissionNames) {
+            groups.put(PERMISSION_PREFIX + permissionName, group);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2017-2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * Process-wide observer of the state of permissions, notifying subscribers when permissions
+ * are granted or revoked outside of the permission requests of the app, e.g. after
+ * {@link GroundControl#showAppSettings(Context)}.
+ * </p><p>
+ * Whenever any activity of the app resumes, the permissions of all subscribers are evaluated
+ * together in a single pass, and compared against their last evaluated state. Subscribers are
+ * only notified of the changes to the permissions they subscribed to, so components don't
+ * need to check their permissions individually.
+ * </p><p>
+ * Subscribers are held strongly until unsubscribed, along with anything they reference,
+ * e.g. the activity or fragment of a listener declared as an inner class. Components must
+ * unsubscribe when destroyed, typically in {@code onDestroy}.
+ * </p><p>
+ * All methods must be called on the main thread.
+ * </p>
+ */
+public final class PermissionMonitor {
+
+    private static final Map<OnPermissionsChangedListener, String[]> subscribers
+            = new LinkedHashMap<>();
+
+    /** The evaluated permissions, mapped to whether they were granted. */
+    private static final Map<String, Boolean> permissionStates = new LinkedHashMap<>();
+
+    private static Application application;
+
+    private static final Application.ActivityLifecycleCallbacks lifecycleCallbacks
+            = new Application.ActivityLifecycleCallbacks() {
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            revalidate();
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    };
+
+    private PermissionMonitor() {
+    }
+
+    /**
+     * Subscribes the specified listener to changes of the specified permissions.
+     * The current state of any permission not already observed is evaluated immediately,
+     * so that only subsequent changes are notified.
+     *
+     * @param context any context of the app.
+     * @param listener listener to notify of changes, held strongly until unsubscribed.
+     * Replaces any previous subscription of the same listener.
+     * @param permissions the permissions to observe.
+     */
+    public static void subscribe(@NonNull Context context,
+            @NonNull OnPermissionsChangedListener listener,
+            String... permissions) {
+
+        if (null == permissions || 0 >= permissions.length) {
+            unsubscribe(listener);
+            return;
+        }
+
+        if (null == application) {
+            application = (Application) context.getApplicationContext();
+            application.registerActivityLifecycleCallbacks(lifecycleCallbacks);
+        }
+
+        subscribers.put(listener, Arrays.copyOf(permissions, permissions.length));
+        permissionStates.keySet().retainAll(getObservedPermissions());
+
+        // Establish the baseline for newly observed permissions.
+        List<String> unobservedPermissions = new ArrayList<>(permissions.length);
+        for (String permission : permissions) {
+            if (!permissionStates.containsKey(permission)) {
+                unobservedPermissions.add(permission);
+            }
+        }
+        if (!unobservedPermissions.isEmpty()) {
+            evaluate(unobservedPermissions);
+        }
+    }
+
+    /**
+     * Unsubscribes the specified listener from changes of the permissions it observed.
+     * Permissions no longer observed by any subscriber are no longer evaluated.
+     *
+     * @param listener the listener to unsubscribe.
+     */
+    public static void unsubscribe(@NonNull OnPermissionsChangedListener listener) {
+
+        if (null == subscribers.remove(listener)) {
+            return;
+        }
+
+        permissionStates.keySet().retainAll(getObservedPermissions());
+
+        if (subscribers.isEmpty() && null != application) {
+            application.unregisterActivityLifecycleCallbacks(lifecycleCallbacks);
+            application = null;
+        }
+    }
+
+    /**
+     * Evaluates all observed permissions in a single pass, and notifies subscribers of
+     * the permissions which changed since they were last evaluated. Called automatically
+     * whenever an activity of the app resumes.
+     */
+    public static void revalidate() {
+
+        if (null == application || subscribers.isEmpty()) {
+            return;
+        }
+
+        final Set<String> changedPermissions = evaluate(permissionStates.keySet());
+        if (changedPermissions.isEmpty()) {
+            return;
+        }
+
+        // Copy subscribers, so listeners can unsubscribe when notified.
+        final Map<OnPermissionsChangedListener, String[]> notifiedSubscribers
+                = new LinkedHashMap<>(subscribers);
+
+        List<String> grantedPermissions = new ArrayList<>();
+        List<String> revokedPermissions = new ArrayList<>();
+
+        for (Map.Entry<OnPermissionsChangedListener, String[]> subscriber
+                : notifiedSubscribers.entrySet()) {
+
+            grantedPermissions.clear();
+            revokedPermissions.clear();
+
+            for (String permission : subscriber.getValue()) {
+                if (!changedPermissions.contains(permission)) {
+                    continue;
+                }
+                if (permissionStates.get(permission)) {
+                    grantedPermissions.add(permission);
+                } else {
+                    revokedPermissions.add(permission);
+                }
+            }
+
+            if (grantedPermissions.isEmpty() && revokedPermissions.isEmpty()) {
+                continue;
+            }
+
+            subscriber.getKey().onPermissionsChanged(
+                    grantedPermissions.toArray(new String[grantedPermissions.size()]),
+                    revokedPermissions.toArray(new String[revokedPermissions.size()]));
+        }
+    }
+
+    /**
+     * Evaluates the specified permissions, recording their state.
+     *
+     * @return the previously evaluated permissions whose state changed.
+     */
+    private static Set<String> evaluate(Iterable<String> permissions) {
+
+        List<String> permissionsList = new ArrayList<>();
+        for (String permission : permissions) {
+            permissionsList.add(permission);
+        }
+
+        // The application context doesn't query whether rationales should be shown.
+        final PermissionSnapshot snapshot = GroundControl.evaluatePermissions(application,
+                permissionsList.toArray(new String[permissionsList.size()]));
+
+        final Set<String> changedPermissions = new HashSet<>();
+        for (String permission : snapshot.grantedPermissions) {
+            if (Boolean.FALSE.equals(permissionStates.put(permission, true))) {
+                changedPermissions.add(permission);
+            }
+        }
+        for (String permission : snapshot.missingPermissions) {
+            if (Boolean.TRUE.equals(permissionStates.put(permission, false))) {
+                changedPermissions.add(permission);
+            }
+        }
+        return changedPermissions;
+    }
+
+    private static Set<String> getObservedPermissions() {
+
+        Set<String> observedPermissions = new LinkedHashSet<>();
+        for (String[] permissions : subscribers.values()) {
+            observedPermissions.addAll(Arrays.asList(permissions));
+        }
+        return observedPermissions;
+    }
+}
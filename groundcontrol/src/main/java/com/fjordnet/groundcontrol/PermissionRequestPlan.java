@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A permission request as planned by Ground Control before it is sent to the
+ * {@link PermissionBackend}, reported to the {@link OnPermissionRequestPlannedListener}.
+ * Permissions are requested without duplicates, and those of the same platform group are
+ * requested together, in the order each group was first requested, so that the system shows
+ * each dialog once and in a predictable order.
+ */
+public class PermissionRequestPlan {
+
+    /**
+     * The permissions to request, in order.
+     */
+    public final String[] permissions;
+
+    /**
+     * The platform groups of the requested permissions, in order, for each of which
+     * the system shows at most one dialog. Permissions without a known group
+     * stand for their own group.
+     */
+    public final String[] groups;
+
+    /**
+     * The request code, identifying the callback awaiting the result.
+     */
+    public final int requestCode;
+
+    /**
+     * Whether the request waited for the result of an earlier request to the same activity,
+     * which the platform would otherwise have cancelled.
+     */
+    public final boolean queued;
+
+    PermissionRequestPlan(String[] permissions, int requestCode, boolean queued) {
+
+        // Permissions by group, in the order each group was first requested.
+        Map<String, Set<String>> groupedPermissions = new LinkedHashMap<>();
+        for (String permission : permissions) {
+
+            String group = PermissionGroups.getGroup(permission);
+            if (null == group) {
+                group = permission;
+            }
+
+            Set<String> groupPermissions = groupedPermissions.get(group);
+            if (null == groupPermissions) {
+                groupPermissions = new LinkedHashSet<>();
+                groupedPermissions.put(group, groupPermissions);
+            }
+            groupPermissions.add(permission);
+        }
+
+        List<String> orderedPermissions = new ArrayList<>(permissions.length);
+        for (Set<String> groupPermissions : groupedPermissions.values()) {
+            orderedPermissions.addAll(groupPermissions);
+        }
+
+        this.permissions = orderedPermissions.toArray(new String[orderedPermissions.size()]);
+        this.groups = groupedPermissions.keySet()
+                .toArray(new String[groupedPermissions.size()]);
+        this.requestCode = requestCode;
+        this.queued = queued;
+    }
+}
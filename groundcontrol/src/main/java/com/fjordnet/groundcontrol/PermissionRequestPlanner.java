@@ -0,0 +1,325 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol;
+
+import android.app.Activity;
+import android.os.Build;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>
+ * Plans the permission requests made through {@link GroundControl}, before sending them to
+ * the installed {@link PermissionBackend}. The permissions of each request are ordered by
+ * platform group, as described by {@link PermissionRequestPlan}.
+ * </p><p>
+ * The platform handles a single request per activity at a time, including those of its
+ * fragments, and cancels any other request made meanwhile with an empty result, which the
+ * generated code handles as a denial. A request made while an earlier request to the same
+ * activity is outstanding is therefore queued, until the result of the outstanding request
+ * is recorded for that activity with the same request code, or the outstanding request
+ * expires, as checked upon the next request or result. Each activity has its own outstanding
+ * request and queue, so results delivered to one activity never release the requests of
+ * another.
+ * </p><p>
+ * Queued requests are not merged into a single platform request, as each result is delivered
+ * to a single activity or fragment with the request code of a single request, and each class
+ * awaits a single pending request. A queued request is instead superseded by any later
+ * request from the same component, which only awaits the result of its latest request.
+ * </p><p>
+ * Requesters are only weakly referenced. Queued requests are dropped once they expire,
+ * or once their activity is finishing or destroyed, or their fragment removed, as they would
+ * deliver their result to a component no longer shown, e.g. recreated meanwhile.
+ * </p><p>
+ * May be used from any thread.
+ * </p>
+ */
+final class PermissionRequestPlanner {
+
+    private static final List<Request<?>> outstandingRequests = new ArrayList<>();
+    private static final List<Request<?>> queuedRequests = new ArrayList<>();
+
+    private static volatile OnPermissionRequestPlannedListener listener;
+
+    private PermissionRequestPlanner() {
+    }
+
+    static void setListener(OnPermissionRequestPlannedListener listener) {
+        PermissionRequestPlanner.listener = listener;
+    }
+
+    /**
+     * Send the specified request, unless it must wait for the outstanding request
+     * to the same activity. Requests queued behind outstanding requests found to be expired
+     * or abandoned are sent first.
+     */
+    static void request(Request<?> request) {
+
+        List<Request<?>> requestsToSend = new ArrayList<>();
+
+        synchronized (PermissionRequestPlanner.class) {
+
+            releaseAbandonedRequests(requestsToSend);
+
+            Activity host = request.host.get();
+            if (null != host && null != findOutstandingRequest(host)) {
+
+                Object requester = request.requester.get();
+                Iterator<Request<?>> iterator = queuedRequests.iterator();
+                while (iterator.hasNext()) {
+                    Request<?> queuedRequest = iterator.next();
+                    if (requester == queuedRequest.requester.get()
+                            || !isPending(queuedRequest)) {
+                        iterator.remove();
+                    }
+                }
+
+                request.plan = new PermissionRequestPlan(request.plan.permissions,
+                        request.plan.requestCode, true);
+                request.queueTime = System.currentTimeMillis();
+                queuedRequests.add(request);
+
+            } else {
+                // Requests of detached fragments have no activity to wait for.
+                if (null != host) {
+                    makeOutstanding(request);
+                }
+                requestsToSend.add(request);
+            }
+        }
+
+        for (Request<?> requestToSend : requestsToSend) {
+            send(requestToSend);
+        }
+    }
+
+    /**
+     * Send the next request queued for the specified activity, if any, once the result of
+     * its outstanding request has been delivered. Results of other requests, e.g. made before
+     * the activity was recreated, or outside of Ground Control, leave the queue untouched.
+     *
+     * @param host the activity which received the result, or hosts the fragment which
+     * received it.
+     * @param requestCode the request code of the result.
+     */
+    static void onResult(Activity host, int requestCode) {
+
+        List<Request<?>> requestsToSend = new ArrayList<>();
+
+        synchronized (PermissionRequestPlanner.class) {
+
+            Request<?> outstandingRequest = findOutstandingRequest(host);
+            if (null != outstandingRequest
+                    && requestCode == outstandingRequest.plan.requestCode) {
+
+                outstandingRequests.remove(outstandingRequest);
+
+                Request<?> nextRequest = pollQueuedRequest(host);
+                if (null != nextRequest) {
+                    requestsToSend.add(nextRequest);
+                }
+            }
+
+            releaseAbandonedRequests(requestsToSend);
+        }
+
+        for (Request<?> requestToSend : requestsToSend) {
+            send(requestToSend);
+        }
+    }
+
+    /**
+     * Forget the outstanding and queued requests, upon installing a permission backend.
+     */
+    static synchronized void reset() {
+        queuedRequests.clear();
+        outstandingRequests.clear();
+    }
+
+    /**
+     * Forget the outstanding requests whose result is no longer expected, making the oldest
+     * request queued behind each of them, if any, outstanding in their place.
+     *
+     * @param requestsToSend list to which the new outstanding requests are added.
+     */
+    private static void releaseAbandonedRequests(List<Request<?>> requestsToSend) {
+
+        List<Activity> releasedHosts = new ArrayList<>();
+
+        Iterator<Request<?>> iterator = outstandingRequests.iterator();
+        while (iterator.hasNext()) {
+            Request<?> outstandingRequest = iterator.next();
+            if (!isOutstanding(outstandingRequest)) {
+                iterator.remove();
+
+                Activity host = outstandingRequest.host.get();
+                if (null != host) {
+                    releasedHosts.add(host);
+                }
+            }
+        }
+
+        for (Activity host : releasedHosts) {
+            Request<?> nextRequest = pollQueuedRequest(host);
+            if (null != nextRequest) {
+                requestsToSend.add(nextRequest);
+            }
+        }
+    }
+
+    /**
+     * @return the outstanding request to the specified activity, or {@code null} if none.
+     */
+    private static Request<?> findOutstandingRequest(Activity host) {
+
+        for (Request<?> outstandingRequest : outstandingRequests) {
+            if (host == outstandingRequest.host.get()) {
+                return outstandingRequest;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Make the oldest request queued for the specified activity, still pending, its
+     * outstanding request, dropping the queued requests no longer pending.
+     *
+     * @return the new outstanding request, or {@code null} if none was pending.
+     */
+    private static Request<?> pollQueuedRequest(Activity host) {
+
+        Iterator<Request<?>> iterator = queuedRequests.iterator();
+        while (iterator.hasNext()) {
+
+            Request<?> request = iterator.next();
+            if (!isPending(request)) {
+                iterator.remove();
+            } else if (host == request.host.get()) {
+                iterator.remove();
+                makeOutstanding(request);
+                return request;
+            }
+        }
+
+        return null;
+    }
+
+    private static void makeOutstanding(Request<?> request) {
+        request.sendTime = System.currentTimeMillis();
+        outstandingRequests.add(request);
+    }
+
+    /**
+     * @return {@code true} if the result of the specified request, sent to the platform,
+     * may still be delivered.
+     */
+    private static boolean isOutstanding(Request<?> request) {
+        return !GroundControl.isRequestExpired(request.sendTime) && request.isAttached();
+    }
+
+    /**
+     * @return {@code true} if the specified queued request may still be sent.
+     */
+    private static boolean isPending(Request<?> request) {
+        return !GroundControl.isRequestExpired(request.queueTime) && request.isAttached();
+    }
+
+    private static void send(Request<?> request) {
+
+        OnPermissionRequestPlannedListener listener = PermissionRequestPlanner.listener;
+        if (null != listener) {
+            listener.onPermissionRequestPlanned(request.plan);
+        }
+
+        request.send(GroundControl.getPermissionBackend());
+    }
+
+    /**
+     * Permission request of an activity or fragment, sent to the backend once planned.
+     *
+     * @param <T> type of the requester.
+     */
+    abstract static class Request<T> {
+
+        /** The activity or fragment whose {@code onRequestPermissionsResult} gets the result. */
+        final WeakReference<T> requester;
+
+        /** The activity handling the request. */
+        final WeakReference<Activity> host;
+
+        PermissionRequestPlan plan;
+        long queueTime;
+        long sendTime;
+
+        Request(T requester, Activity host, String[] permissions, int requestCode) {
+            this.requester = new WeakReference<>(requester);
+            this.host = new WeakReference<>(host);
+            this.plan = new PermissionRequestPlan(permissions, requestCode, false);
+        }
+
+        /**
+         * @return {@code true} if the requester is still shown by its activity, which is
+         * neither finishing nor destroyed.
+         */
+        boolean isAttached() {
+
+            T requester = this.requester.get();
+            Activity host = this.host.get();
+            if (null == requester || null == host || host.isFinishing()) {
+                return false;
+            }
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                    && host.isDestroyed()) {
+                return false;
+            }
+
+            return isAdded(requester);
+        }
+
+        void send(PermissionBackend backend) {
+
+            T requester = this.requester.get();
+            Activity host = this.host.get();
+            if (null == requester || null == host) {
+                return;
+            }
+
+            // Compared with the recommendation after a denial, to infer permanent denials.
+            for (String permission : plan.permissions) {
+                PermissionDenials.recordRequested(permission,
+                        backend.shouldShowRequestPermissionRationale(host, permission));
+            }
+
+            send(backend, requester);
+        }
+
+        /**
+         * @return {@code true} if the specified requester is added to its activity,
+         * always the case of activities.
+         */
+        boolean isAdded(T requester) {
+            return true;
+        }
+
+        abstract void send(PermissionBackend backend, T requester);
+    }
+}
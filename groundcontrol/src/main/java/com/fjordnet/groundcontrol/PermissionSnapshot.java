@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017-2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol;
+
+/**
+ * The state of a set of permissions, evaluated in a single pass by
+ * {@link GroundControl#evaluatePermissions(android.content.Context, String...)}.
+ * Each permission is queried once, so the snapshot should be reused rather than
+ * querying the package manager again for the same permissions.
+ */
+public class PermissionSnapshot {
+
+    /**
+     * The evaluated permissions that have been granted.
+     */
+    public final String[] grantedPermissions;
+
+    /**
+     * The evaluated permissions that have not been granted yet.
+     */
+    public final String[] missingPermissions;
+
+    /**
+     * The missing permissions for which a rationale should be shown before requesting them.
+     */
+    public final String[] rationalePermissions;
+
+    /**
+     * The missing permissions which the user chose not to be asked for again.
+     * Requesting them again is denied by the platform without asking the user.
+     */
+    public final String[] permanentlyDeniedPermissions;
+
+    public PermissionSnapshot(String[] grantedPermissions,
+            String[] missingPermissions,
+            String[] rationalePermissions) {
+
+        this(grantedPermissions, missingPermissions, rationalePermissions, new String[0]);
+    }
+
+    public PermissionSnapshot(String[] grantedPermissions,
+            String[] missingPermissions,
+            String[] rationalePermissions,
+            String[] permanentlyDeniedPermissions) {
+
+        this.grantedPermissions = grantedPermissions;
+        this.missingPermissions = missingPermissions;
+        this.rationalePermissions = rationalePermissions;
+        this.permanentlyDeniedPermissions = permanentlyDeniedPermissions;
+    }
+
+    /**
+     * @return {@code true} if all evaluated permissions have been granted.
+     */
+    public boolean isGranted() {
+        return 0 == missingPermissions.length;
+    }
+
+    /**
+     * @return {@code true} if a rationale should be shown for at least one of the
+     * missing permissions.
+     */
+    public boolean shouldShowRationale() {
+        return 0 < rationalePermissions.length;
+    }
+
+    /**
+     * @return {@code true} if at least one of the missing permissions is permanently denied,
+     * in which case requesting the missing permissions is bound to be denied.
+     */
+    public boolean isPermanentlyDenied() {
+        return 0 < permanentlyDeniedPermissions.length;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Fragment;
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.v4.app.ActivityCompat;
+import android.support.v4.content.ContextCompat;
+
+/**
+ * Default {@link PermissionBackend}, performing every operation through the platform
+ * and the support library. Extend this class to layer behavior over the platform,
+ * e.g. to record metrics, calling through to the overridden methods.
+ */
+public class PlatformPermissionBackend implements PermissionBackend {
+
+    @Override
+    public boolean isGrantedAtInstall() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.M;
+    }
+
+    @Override
+    public int checkSelfPermission(@NonNull Context context, @NonNull String permission) {
+        return ContextCompat.checkSelfPermission(context, permission);
+    }
+
+    @Override
+    public boolean shouldShowRequestPermissionRationale(@NonNull Activity activity,
+            @NonNull String permission) {
+        return ActivityCompat.shouldShowRequestPermissionRationale(activity, permission);
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    @Override
+    public void requestPermissions(@NonNull Activity activity,
+            @NonNull String[] permissions,
+            int requestCode) {
+        activity.requestPermissions(permissions, requestCode);
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    @Override
+    public void requestPermissions(@NonNull Fragment fragment,
+            @NonNull String[] permissions,
+            int requestCode) {
+        fragment.requestPermissions(permissions, requestCode);
+    }
+
+    @Override
+    public void requestPermissions(@NonNull android.support.v4.app.Fragment supportFragment,
+            @NonNull String[] permissions,
+            int requestCode) {
+        supportFragment.requestPermissions(permissions, requestCode);
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol;
+
+import android.app.Activity;
+import android.app.Fragment;
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static android.content.pm.PackageManager.PERMISSION_DENIED;
+import static android.content.pm.PackageManager.PERMISSION_GRANTED;
+
+/**
+ * <p>
+ * {@link PermissionBackend} answering permission checks, rationale queries and requests
+ * from a script rather than from the platform, for exercising code gated by permissions
+ * in local unit tests, which run the classes woven by the Ground Control plugin on the JVM.
+ * </p><p>
+ * Permissions are denied until granted with {@link #grant(String...)}. Requests are held
+ * until answered with {@link #answerPendingRequests()}, as the platform answers them
+ * asynchronously, with the outcome scripted for each permission with
+ * {@link #answer(Outcome, String...)}; unscripted permissions are denied. Results are
+ * delivered to the {@code onRequestPermissionsResult} method of the requesting activity
+ * or fragment, e.g.:
+ * </p>
+ * <pre>
+ * ScriptedPermissionBackend backend = new ScriptedPermissionBackend()
+ *         .answer(Outcome.GRANT, CAMERA);
+ * GroundControl.setPermissionBackend(backend, false);
+ *
+ * activity.onCaptureClicked();
+ * backend.answerPendingRequests();
+ * </pre>
+ */
+public class ScriptedPermissionBackend implements PermissionBackend {
+
+    /**
+     * Answer of the user to a permission request.
+     */
+    public enum Outcome {
+
+        /** The permission is granted. */
+        GRANT,
+
+        /** The permission is denied, after which a rationale is recommended. */
+        DENY,
+
+        /**
+         * The permission is denied, and the user chooses not to be asked again,
+         * after which no rationale is recommended.
+         */
+        DENY_PERMANENTLY,
+
+        /**
+         * The request is dismissed, which denies the permission from Android 11 without
+         * changing whether a rationale is recommended.
+         */
+        DISMISS
+    }
+
+    private final Set<String> grantedPermissions = new HashSet<>();
+    private final Set<String> rationalePermissions = new HashSet<>();
+    private final Map<String, Outcome> outcomes = new HashMap<>();
+    private final List<Request> pendingRequests = new ArrayList<>();
+    private final List<String> requestedPermissions = new ArrayList<>();
+    private boolean grantedAtInstall;
+
+    /**
+     * Specifies whether all permissions are granted at install time, as before Android M,
+     * in which case permissions are neither checked nor requested. {@code false} by default.
+     */
+    @NonNull
+    public synchronized ScriptedPermissionBackend grantAtInstall(boolean grantedAtInstall) {
+        this.grantedAtInstall = grantedAtInstall;
+        return this;
+    }
+
+    /**
+     * Grants the specified permissions, as if granted before the test, e.g. from the app
+     * settings.
+     */
+    @NonNull
+    public synchronized ScriptedPermissionBackend grant(String... permissions) {
+        grantedPermissions.addAll(Arrays.asList(permissions));
+        rationalePermissions.removeAll(Arrays.asList(permissions));
+        return this;
+    }
+
+    /**
+     * Revokes the specified permissions, e.g. from the app settings. Permissions cached
+     * as granted by {@link GroundControl#hasCachedPermissions(Context, String...)} are
+     * checked again.
+     */
+    @NonNull
+    public synchronized ScriptedPermissionBackend revoke(String... permissions) {
+        grantedPermissions.removeAll(Arrays.asList(permissions));
+        GroundControl.clearGrantedPermissionsCache();
+        return this;
+    }
+
+    /**
+     * Specifies whether a rationale is recommended before requesting the specified
+     * permissions, until they are requested again.
+     */
+    @NonNull
+    public synchronized ScriptedPermissionBackend showRationale(boolean showRationale,
+            String... permissions) {
+
+        if (showRationale) {
+            rationalePermissions.addAll(Arrays.asList(permissions));
+        } else {
+            rationalePermissions.removeAll(Arrays.asList(permissions));
+        }
+        return this;
+    }
+
+    /**
+     * Specifies the outcome of the requests for the specified permissions, applied when
+     * the requests are answered. Permissions requested while granted remain granted.
+     */
+    @NonNull
+    public synchronized ScriptedPermissionBackend answer(@NonNull Outcome outcome,
+            String... permissions) {
+
+        for (String permission : permissions) {
+            outcomes.put(permission, outcome);
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of requests awaiting an answer.
+     */
+    public synchronized int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * @return every permission requested so far, in the order of the requests.
+     */
+    @NonNull
+    public synchronized List<String> getRequestedPermissions() {
+        return Collections.unmodifiableList(new ArrayList<>(requestedPermissions));
+    }
+
+    /**
+     * Answers the pending requests in the order they were made, with the scripted outcomes,
+     * delivering the results on the calling thread. Requests made while the results are
+     * delivered remain pending.
+     *
+     * @return the number of requests answered.
+     */
+    public int answerPendingRequests() {
+
+        List<Request> requests;
+        List<int[]> results = new ArrayList<>();
+
+        synchronized (this) {
+
+            requests = new ArrayList<>(pendingRequests);
+            pendingRequests.clear();
+
+            for (Request request : requests) {
+                results.add(answer(request.permissions));
+            }
+        }
+
+        // Outside of the lock, as the results are handled by checking permissions again.
+        for (int index = 0; index < requests.size(); index++) {
+            requests.get(index).deliver(results.get(index));
+        }
+
+        return requests.size();
+    }
+
+    /**
+     * Answers the oldest pending request with the scripted outcomes, delivering the result
+     * on the calling thread, e.g. for answering requests made to several activities in turn.
+     *
+     * @return {@code false} if no request was pending.
+     */
+    public boolean answerNextRequest() {
+
+        Request request;
+        int[] grantResults;
+
+        synchronized (this) {
+
+            if (pendingRequests.isEmpty()) {
+                return false;
+            }
+
+            request = pendingRequests.remove(0);
+            grantResults = answer(request.permissions);
+        }
+
+        // Outside of the lock, as the result is handled by checking permissions again.
+        request.deliver(grantResults);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isGrantedAtInstall() {
+        return grantedAtInstall;
+    }
+
+    @Override
+    public synchronized int checkSelfPermission(@NonNull Context context,
+            @NonNull String permission) {
+        return grantedPermissions.contains(permission) ? PERMISSION_GRANTED : PERMISSION_DENIED;
+    }
+
+    @Override
+    public synchronized boolean shouldShowRequestPermissionRationale(@NonNull Activity activity,
+            @NonNull String permission) {
+        return rationalePermissions.contains(permission);
+    }
+
+    @Override
+    public void requestPermissions(@NonNull final Activity activity,
+            @NonNull String[] permissions,
+            int requestCode) {
+
+        enqueue(new Request(permissions, requestCode) {
+
+            @Override
+            void deliver(int[] grantResults) {
+                activity.onRequestPermissionsResult(requestCode, permissions, grantResults);
+            }
+        });
+    }
+
+    @Override
+    public void requestPermissions(@NonNull final Fragment fragment,
+            @NonNull String[] permissions,
+            int requestCode) {
+
+        enqueue(new Request(permissions, requestCode) {
+
+            @Override
+            void deliver(int[] grantResults) {
+                fragment.onRequestPermissionsResult(requestCode, permissions, grantResults);
+            }
+        });
+    }
+
+    @Override
+    public void requestPermissions(
+            @NonNull final android.support.v4.app.Fragment supportFragment,
+            @NonNull String[] permissions,
+            int requestCode) {
+
+        enqueue(new Request(permissions, requestCode) {
+
+            @Override
+            void deliver(int[] grantResults) {
+                supportFragment.onRequestPermissionsResult(requestCode, permissions,
+                        grantResults);
+            }
+        });
+    }
+
+    private synchronized void enqueue(Request request) {
+        pendingRequests.add(request);
+        requestedPermissions.addAll(Arrays.asList(request.permissions));
+    }
+
+    /**
+     * Applies the scripted outcomes to the specified permissions, as the user would answer.
+     *
+     * @return the grant results for the corresponding permissions.
+     */
+    private int[] answer(String[] permissions) {
+
+        int[] grantResults = new int[permissions.length];
+
+        for (int index = 0; index < permissions.length; index++) {
+
+            String permission = permissions[index];
+            Outcome outcome = grantedPermissions.contains(permission)
+                    ? Outcome.GRANT
+                    : outcomes.get(permission);
+
+            if (Outcome.GRANT == outcome) {
+                grantedPermissions.add(permission);
+                rationalePermissions.remove(permission);
+                grantResults[index] = PERMISSION_GRANTED;
+            } else if (Outcome.DENY_PERMANENTLY == outcome) {
+                rationalePermissions.remove(permission);
+                grantResults[index] = PERMISSION_DENIED;
+            } else if (Outcome.DISMISS == outcome) {
+                grantResults[index] = PERMISSION_DENIED;
+            } else {
+                rationalePermissions.add(permission);
+                grantResults[index] = PERMISSION_DENIED;
+            }
+        }
+
+        return grantResults;
+    }
+
+    /**
+     * Permission request awaiting an answer, delivered to the component which made it.
+     */
+    private abstract static class Request {
+
+        final String[] permissions;
+        final int requestCode;
+
+        Request(String[] permissions, int requestCode) {
+            this.permissions = permissions.clone();
+            this.requestCode = requestCode;
+        }
+
+        abstract void deliver(int[] grantResults);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle;
+
+import com.android.build.gradle.api.AndroidSourceSet;
+import com.android.build.gradle.api.BaseVariant;
+import com.android.build.gradle.internal.CompileOptions;
+import com.android.build.gradle.internal.api.DefaultAndroidSourceSet;
+import com.android.build.gradle.internal.dsl.BuildType;
+import com.android.build.gradle.internal.dsl.ProductFlavor;
+
+import org.gradle.api.Action;
+import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.api.NamedDomainObjectFactory;
+import org.gradle.api.Project;
+
+/**
+ * Stub of the {@code android} extension, with the subset of its DSL supported by the stub
+ * of the Android Gradle plugin.
+ */
+public abstract class BaseExtension {
+
+    private final NamedDomainObjectContainer<AndroidSourceSet> sourceSets;
+    private final NamedDomainObjectContainer<BuildType> buildTypes;
+    private final NamedDomainObjectContainer<ProductFlavor> productFlavors;
+    private final CompileOptions compileOptions = new CompileOptions();
+    private int compileSdkVersion;
+
+    protected BaseExtension(final Project project) {
+
+        sourceSets = project.container(AndroidSourceSet.class,
+                new NamedDomainObjectFactory<AndroidSourceSet>() {
+
+                    @Override
+                    public AndroidSourceSet create(String name) {
+                        return new DefaultAndroidSourceSet(name, project);
+                    }
+                });
+        buildTypes = project.container(BuildType.class);
+        productFlavors = project.container(ProductFlavor.class);
+    }
+
+    public String getCompileSdkVersion() {
+        return "android-" + compileSdkVersion;
+    }
+
+    public void setCompileSdkVersion(int apiLevel) {
+        compileSdkVersion = apiLevel;
+    }
+
+    public void compileSdkVersion(int apiLevel) {
+        compileSdkVersion = apiLevel;
+    }
+
+    public NamedDomainObjectContainer<AndroidSourceSet> getSourceSets() {
+        return sourceSets;
+    }
+
+    public void sourceSets(Action<NamedDomainObjectContainer<AndroidSourceSet>> action) {
+        action.execute(sourceSets);
+    }
+
+    public NamedDomainObjectContainer<BuildType> getBuildTypes() {
+        return buildTypes;
+    }
+
+    public void buildTypes(Action<? super NamedDomainObjectContainer<BuildType>> action) {
+        action.execute(buildTypes);
+    }
+
+    public NamedDomainObjectContainer<ProductFlavor> getProductFlavors() {
+        return productFlavors;
+    }
+
+    public void productFlavors(Action<? super NamedDomainObjectContainer<ProductFlavor>> action) {
+        action.execute(productFlavors);
+    }
+
+    public CompileOptions getCompileOptions() {
+        return compileOptions;
+    }
+
+    public void compileOptions(Action<CompileOptions> action) {
+        action.execute(compileOptions);
+    }
+
+    /**
+     * Add the specified variant, once the build script is evaluated.
+     */
+    abstract void addVariant(BaseVariant variant);
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle;
+
+import com.android.build.gradle.api.AndroidSourceSet;
+import com.android.build.gradle.internal.api.StubVariant;
+import com.android.build.gradle.internal.dsl.BuildType;
+import com.android.build.gradle.internal.dsl.ProductFlavor;
+
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ConfigurationContainer;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.api.tasks.util.PatternSet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+
+/**
+ * Stub of the Android Gradle plugin, for benchmarking the Ground Control plugin without
+ * the Android build tools. It only provides what the Ground Control plugin relies on:
+ * the {@code android} extension with its source sets, build types and product flavors,
+ * the dependency configurations, and a Java compilation task for each variant, compiling
+ * against the {@code android.jar} of the SDK.
+ */
+public abstract class BasePlugin implements Plugin<Project> {
+
+    private static final String[] DEPENDENCY_CONFIGURATIONS
+            = {"api", "implementation", "compile", "compileOnly"};
+    private static final String ANNOTATION_PROCESSOR = "annotationProcessor";
+
+    @Override
+    public void apply(final Project project) {
+
+        // Provides the clean task.
+        project.getPluginManager().apply("base");
+
+        ConfigurationContainer configurations = project.getConfigurations();
+        final Configuration compileClasspath = configurations.create("stubCompileClasspath");
+        for (String name : DEPENDENCY_CONFIGURATIONS) {
+            compileClasspath.extendsFrom(configurations.create(name));
+        }
+        final Configuration processorPath = configurations.create(ANNOTATION_PROCESSOR);
+
+        final BaseExtension extension = createExtension(project);
+        extension.getSourceSets().create("main");
+        extension.getBuildTypes().create("debug");
+        extension.getBuildTypes().create("release");
+
+        // As with the Android plugin, variants are only known once the build script
+        // is evaluated.
+        project.afterEvaluate(new Action<Project>() {
+
+            @Override
+            public void execute(Project project) {
+                createVariants(project, extension, getJavaClasspath(project, compileClasspath),
+                        processorPath);
+            }
+        });
+    }
+
+    protected abstract BaseExtension createExtension(Project project);
+
+    private void createVariants(Project project,
+            BaseExtension extension,
+            FileCollection classpath,
+            FileCollection processorPath) {
+
+        List<String> flavors = new ArrayList<>();
+        for (ProductFlavor flavor : extension.getProductFlavors()) {
+            flavors.add(flavor.getName());
+        }
+        if (flavors.isEmpty()) {
+            flavors.add("");
+        }
+
+        File androidJar = getAndroidJar(project, extension);
+
+        for (String flavor : flavors) {
+            for (BuildType buildType : extension.getBuildTypes()) {
+
+                String name = flavor.isEmpty()
+                        ? buildType.getName()
+                        : flavor + capitalize(buildType.getName());
+                String dirName = flavor.isEmpty()
+                        ? buildType.getName()
+                        : flavor + "/" + buildType.getName();
+
+                JavaCompile compiler = project.getTasks().create(
+                        String.format("compile%sJavaWithJavac", capitalize(name)),
+                        JavaCompile.class);
+
+                AndroidSourceSet main = extension.getSourceSets().getByName("main");
+                compiler.setSource(main.getJava().getSrcDirs());
+                compiler.setClasspath(classpath);
+                compiler.setDestinationDir(new File(project.getBuildDir(),
+                        "intermediates/classes/" + dirName));
+                compiler.setSourceCompatibility(
+                        extension.getCompileOptions().getSourceCompatibility().toString());
+                compiler.setTargetCompatibility(
+                        extension.getCompileOptions().getTargetCompatibility().toString());
+
+                org.gradle.api.tasks.compile.CompileOptions options = compiler.getOptions();
+                options.setEncoding("UTF-8");
+                options.setBootstrapClasspath(project.files(androidJar));
+                options.setAnnotationProcessorPath(processorPath);
+                options.setAnnotationProcessorGeneratedSourcesDirectory(new File(
+                        project.getBuildDir(), "generated/source/apt/" + dirName));
+
+                extension.addVariant(new StubVariant(name, buildType, compiler));
+            }
+        }
+    }
+
+    /**
+     * Determine the classpath of the Java compilation from the specified configuration,
+     * replacing Android libraries with the classes jar within their archive.
+     */
+    private static FileCollection getJavaClasspath(final Project project,
+            final Configuration configuration) {
+
+        return project.files(new Callable<List<Object>>() {
+
+            @Override
+            public List<Object> call() {
+
+                List<Object> files = new ArrayList<>();
+                for (File file : configuration) {
+                    files.add(file.getName().endsWith(".aar")
+                            ? project.zipTree(file).matching(
+                                    new PatternSet().include("classes.jar"))
+                            : file);
+                }
+
+                return files;
+            }
+        });
+    }
+
+    /**
+     * Locate the {@code android.jar} of the compile SDK, within the SDK specified by
+     * {@code sdk.dir} in {@code local.properties}, or by {@code ANDROID_HOME}.
+     */
+    private static File getAndroidJar(Project project, BaseExtension extension) {
+
+        String sdkDir = System.getenv("ANDROID_HOME");
+
+        File localProperties = project.getRootProject().file("local.properties");
+        if (localProperties.isFile()) {
+            Properties properties = new Properties();
+            try (InputStream input = new FileInputStream(localProperties)) {
+                properties.load(input);
+            } catch (IOException exception) {
+                throw new GradleException("Unable to read " + localProperties, exception);
+            }
+            sdkDir = properties.getProperty("sdk.dir", sdkDir);
+        }
+
+        if (null == sdkDir) {
+            throw new GradleException("SDK location not found. Define sdk.dir in "
+                    + "local.properties, or the ANDROID_HOME environment variable.");
+        }
+
+        return new File(sdkDir, String.format("platforms/%s/android.jar",
+                extension.getCompileSdkVersion()));
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle;
+
+import com.android.build.gradle.api.BaseVariant;
+import com.android.build.gradle.api.LibraryVariant;
+
+import org.gradle.api.Project;
+import org.gradle.api.internal.DefaultDomainObjectSet;
+
+import javax.inject.Inject;
+
+/**
+ * Stub of the {@code android} extension of libraries.
+ */
+public class LibraryExtension extends BaseExtension {
+
+    private final DefaultDomainObjectSet<LibraryVariant> libraryVariants
+            = new DefaultDomainObjectSet<>(LibraryVariant.class);
+
+    @Inject
+    public LibraryExtension(Project project) {
+        super(project);
+    }
+
+    public DefaultDomainObjectSet<LibraryVariant> getLibraryVariants() {
+        return libraryVariants;
+    }
+
+    @Override
+    void addVariant(BaseVariant variant) {
+        libraryVariants.add((LibraryVariant) variant);
+    }
+}
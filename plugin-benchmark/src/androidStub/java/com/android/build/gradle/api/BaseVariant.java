@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle.api;
+
+import com.android.builder.model.BuildType;
+
+import org.gradle.api.tasks.compile.JavaCompile;
+
+/**
+ * Stub of a variant, i.e. a build type of a product flavor.
+ */
+public interface BaseVariant {
+
+    String getName();
+
+    BuildType getBuildType();
+
+    JavaCompile getJavaCompile();
+}
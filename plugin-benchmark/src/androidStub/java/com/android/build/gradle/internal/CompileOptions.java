@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle.internal;
+
+import org.gradle.api.JavaVersion;
+
+/**
+ * Stub of the Java compilation options of the {@code android} extension.
+ */
+public class CompileOptions {
+
+    private JavaVersion sourceCompatibility = JavaVersion.VERSION_1_7;
+    private JavaVersion targetCompatibility = JavaVersion.VERSION_1_7;
+
+    public JavaVersion getSourceCompatibility() {
+        return sourceCompatibility;
+    }
+
+    public void setSourceCompatibility(Object sourceCompatibility) {
+        this.sourceCompatibility = JavaVersion.toVersion(sourceCompatibility);
+    }
+
+    public JavaVersion getTargetCompatibility() {
+        return targetCompatibility;
+    }
+
+    public void setTargetCompatibility(Object targetCompatibility) {
+        this.targetCompatibility = JavaVersion.toVersion(targetCompatibility);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle.internal.api;
+
+import com.android.build.gradle.api.AndroidSourceDirectorySet;
+
+import org.gradle.api.Project;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stub of the directories of one type of sources, resolved relative to the project.
+ */
+public class DefaultAndroidSourceDirectorySet implements AndroidSourceDirectorySet {
+
+    private final String name;
+    private final Project project;
+    private final List<Object> srcDirs = new ArrayList<>();
+
+    public DefaultAndroidSourceDirectorySet(String name, Project project) {
+        this.name = name;
+        this.project = project;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Set<File> getSrcDirs() {
+        Set<File> files = new LinkedHashSet<>();
+        for (Object srcDir : srcDirs) {
+            files.add(project.file(srcDir));
+        }
+        return files;
+    }
+
+    @Override
+    public AndroidSourceDirectorySet srcDir(Object srcDir) {
+        srcDirs.add(srcDir);
+        return this;
+    }
+
+    @Override
+    public AndroidSourceDirectorySet setSrcDirs(Iterable<?> srcDirs) {
+        this.srcDirs.clear();
+        for (Object srcDir : srcDirs) {
+            this.srcDirs.add(srcDir);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle.internal.api;
+
+import com.android.build.gradle.api.AndroidSourceDirectorySet;
+import com.android.build.gradle.api.AndroidSourceSet;
+
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+
+/**
+ * Stub of a source set, whose Java sources are in {@code src/<name>/java} by default.
+ */
+public class DefaultAndroidSourceSet implements AndroidSourceSet {
+
+    private final String name;
+    private final AndroidSourceDirectorySet java;
+
+    public DefaultAndroidSourceSet(String name, Project project) {
+        this.name = name;
+        java = new DefaultAndroidSourceDirectorySet(name + " Java source", project);
+        java.srcDir(String.format("src/%s/java", name));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public AndroidSourceDirectorySet getJava() {
+        return java;
+    }
+
+    @Override
+    public AndroidSourceSet java(Action<AndroidSourceDirectorySet> action) {
+        action.execute(java);
+        return this;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle.internal.api;
+
+import com.android.build.gradle.api.ApplicationVariant;
+import com.android.build.gradle.api.LibraryVariant;
+import com.android.build.gradle.api.UnitTestVariant;
+import com.android.builder.model.BuildType;
+
+import org.gradle.api.tasks.compile.JavaCompile;
+
+/**
+ * Stub of a variant of an app or library, only compiling its main Java sources.
+ */
+public class StubVariant implements ApplicationVariant, LibraryVariant {
+
+    private final String name;
+    private final BuildType buildType;
+    private final JavaCompile javaCompile;
+
+    public StubVariant(String name, BuildType buildType, JavaCompile javaCompile) {
+        this.name = name;
+        this.buildType = buildType;
+        this.javaCompile = javaCompile;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public BuildType getBuildType() {
+        return buildType;
+    }
+
+    @Override
+    public JavaCompile getJavaCompile() {
+        return javaCompile;
+    }
+
+    /**
+     * @return {@code null}, as unit tests aren't compiled.
+     */
+    @Override
+    public UnitTestVariant getUnitTestVariant() {
+        return null;
+    }
+}
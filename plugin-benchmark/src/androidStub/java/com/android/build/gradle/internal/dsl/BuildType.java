@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.build.gradle.internal.dsl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stub of a build type, recording its ProGuard files.
+ */
+public class BuildType implements com.android.builder.model.BuildType {
+
+    private final String name;
+    private final List<Object> proguardFiles = new ArrayList<>();
+
+    public BuildType(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public List<Object> getProguardFiles() {
+        return proguardFiles;
+    }
+
+    public BuildType proguardFile(Object proguardFile) {
+        proguardFiles.add(proguardFile);
+        return this;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.gradle.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Benchmark timings stored in {@code baselines.properties}, against which measured timings
+ * are compared. A timing exceeding its baseline by more than the tolerance is a regression.
+ * Baselines depend on the machine, so they're recorded again when it changes.
+ */
+class Baselines {
+
+    private static final String FILE_PROPERTY = "groundcontrol.benchmark.baselines";
+    private static final String UPDATE_PROPERTY = "groundcontrol.benchmark.updateBaselines";
+    private static final String TOLERANCE_PROPERTY = "groundcontrol.benchmark.tolerance";
+
+    /** Differences below this duration, in milliseconds, are noise rather than regressions. */
+    private static final long MIN_REGRESSION = 100;
+
+    private final File file;
+    private final Properties baselines = new Properties();
+    private final Map<String, Long> measuredTimings = new TreeMap<>();
+    private final boolean update;
+    private final double tolerance;
+
+    Baselines() throws IOException {
+
+        file = new File(System.getProperty(FILE_PROPERTY, "baselines.properties"));
+        update = Boolean.getBoolean(UPDATE_PROPERTY);
+        tolerance = Double.parseDouble(System.getProperty(TOLERANCE_PROPERTY, "0.25"));
+
+        if (file.isFile()) {
+            try (InputStream input = Files.newInputStream(file.toPath())) {
+                baselines.load(input);
+            }
+        }
+    }
+
+    /**
+     * Compare the specified timing with its baseline, and print both.
+     *
+     * @param name name of the timing, e.g. {@code clean.weave}.
+     * @param timing measured timing, in milliseconds.
+     *
+     * @return a description of the regression, or {@code null} if the timing didn't regress,
+     * has no baseline, or the baselines are being recorded.
+     */
+    String compare(String name, long timing) {
+
+        measuredTimings.put(name, timing);
+
+        String baselineValue = baselines.getProperty(name);
+        if (null == baselineValue) {
+            System.out.println(String.format("%1$s: %2$d ms (no baseline)", name, timing));
+            return null;
+        }
+
+        long baseline = Long.parseLong(baselineValue.trim());
+        System.out.println(String.format("%1$s: %2$d ms (baseline %3$d ms)",
+                name, timing, baseline));
+
+        if (update
+                || timing - baseline < MIN_REGRESSION
+                || timing <= baseline * (1 + tolerance)) {
+            return null;
+        }
+
+        return String.format("%1$s regressed: %2$d ms, baseline %3$d ms (+%4$d%%)",
+                name, // 1
+                timing, // 2
+                baseline, // 3
+                Math.round(100.0 * (timing - baseline) / baseline) // 4
+        );
+    }
+
+    /**
+     * Record the measured timings as the new baselines, if requested with
+     * {@code -Dgroundcontrol.benchmark.updateBaselines=true}. Baselines of timings that
+     * weren't measured are kept.
+     */
+    void saveIfUpdating() throws IOException {
+
+        if (!update) {
+            return;
+        }
+
+        Map<String, String> timings = new TreeMap<>();
+        for (String name : new TreeSet<>(baselines.stringPropertyNames())) {
+            timings.put(name, baselines.getProperty(name));
+        }
+        for (Map.Entry<String, Long> timing : measuredTimings.entrySet()) {
+            timings.put(timing.getKey(), String.valueOf(timing.getValue()));
+        }
+
+        // Comments heading the file are kept.
+        List<String> lines = new ArrayList<>();
+        if (file.isFile()) {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    break;
+                }
+                lines.add(line);
+            }
+        }
+
+        for (Map.Entry<String, String> timing : timings.entrySet()) {
+            lines.add(timing.getKey() + "=" + timing.getValue());
+        }
+
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    }
+}
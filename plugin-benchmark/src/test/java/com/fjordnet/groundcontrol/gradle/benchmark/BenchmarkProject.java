@@ -0,0 +1,237 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.gradle.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Synthetic Android app built with the stub of the Android Gradle plugin and the Ground Control
+ * plugin. For each annotated activity, it contains a class calling the annotated method,
+ * and a class without any call to annotated methods.
+ */
+class BenchmarkProject {
+
+    static final String PACKAGE = "com.example.benchmark";
+
+    /** Build script classpath: the Ground Control plugin and the stub of the Android plugin. */
+    private static final String CLASSPATH_PROPERTY = "groundcontrol.benchmark.classpath";
+    private static final String SDK_DIR_PROPERTY = "groundcontrol.benchmark.sdkDir";
+
+    private final File projectDir;
+    private final int annotatedClasses;
+    private final int productFlavors;
+
+    /**
+     * @param productFlavors number of product flavors, each adding a debug and release
+     * variant, or 0 for the debug and release variants only.
+     */
+    BenchmarkProject(File projectDir, int annotatedClasses, int productFlavors)
+            throws IOException {
+
+        this.projectDir = projectDir;
+        this.annotatedClasses = annotatedClasses;
+        this.productFlavors = productFlavors;
+
+        writeBuildFiles();
+        for (int i = 0; i < annotatedClasses; i++) {
+            writeSources(i);
+        }
+    }
+
+    File getProjectDir() {
+        return projectDir;
+    }
+
+    /**
+     * @return the name of the task compiling and weaving the debug variant,
+     * or of the first flavor's debug variant.
+     */
+    String getCompileTask() {
+        return 0 == productFlavors
+                ? ":compileDebugJavaWithJavac"
+                : ":compileFlavor0DebugJavaWithJavac";
+    }
+
+    /**
+     * @return the woven class calling the annotated method of the specified activity,
+     * within the output of the compile task.
+     */
+    File getCallingClass(int index) {
+        return new File(projectDir, String.format("build/intermediates/classes/%1$s/%2$s/"
+                        + "Screen%3$dPresenter.class",
+                0 == productFlavors ? "debug" : "flavor0/debug", // 1
+                PACKAGE.replace('.', '/'), // 2
+                index // 3
+        ));
+    }
+
+    /**
+     * @return the timings recorded by the last build, in milliseconds, by name.
+     */
+    Properties readTimings() throws IOException {
+
+        Properties timings = new Properties();
+        try (InputStream input = Files.newInputStream(
+                new File(projectDir, "build/benchmark.properties").toPath())) {
+            timings.load(input);
+        }
+
+        return timings;
+    }
+
+    /**
+     * Change the source of one calling class, as a one-file change between builds.
+     */
+    void editCallingClass(int edit) throws IOException {
+        writeCallingClass(edit % annotatedClasses, edit);
+    }
+
+    private void writeBuildFiles() throws IOException {
+
+        write("settings.gradle", "gradle.ext.benchmarkStartTime = System.nanoTime()\n"
+                + "rootProject.name = 'benchmark'\n");
+
+        write("local.properties", String.format("sdk.dir=%s\n",
+                System.getProperty(SDK_DIR_PROPERTY, "").replace('\\', '/')));
+
+        try (InputStream input = getClass().getResourceAsStream("benchmark.gradle")) {
+            Files.copy(input, new File(projectDir, "benchmark.gradle").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        List<String> classpath = new ArrayList<>();
+        for (String entry : System.getProperty(CLASSPATH_PROPERTY).split(File.pathSeparator)) {
+            classpath.add(String.format("'%s'", entry.replace('\\', '/')));
+        }
+
+        StringBuilder flavors = new StringBuilder();
+        for (int i = 0; i < productFlavors; i++) {
+            flavors.append(String.format("        flavor%d {}\n", i));
+        }
+
+        write("build.gradle", String.format("buildscript {\n"
+                        + "    dependencies {\n"
+                        + "        classpath files(%1$s)\n"
+                        + "    }\n"
+                        + "}\n\n"
+                        + "apply plugin: 'com.android.application'\n"
+                        + "apply from: 'benchmark.gradle'\n"
+                        + "apply plugin: 'com.fjordnet.groundcontrol'\n\n"
+                        + "repositories {\n"
+                        + "    mavenLocal()\n"
+                        + "    mavenCentral()\n"
+                        + "    google()\n"
+                        + "}\n\n"
+                        + "android {\n"
+                        + "    compileSdkVersion 25\n"
+                        + "    productFlavors {\n"
+                        + "%2$s"
+                        + "    }\n"
+                        + "}\n",
+                join(classpath, ", "), // 1
+                flavors // 2
+        ));
+    }
+
+    private void writeSources(int index) throws IOException {
+
+        writeSource(String.format("Screen%dActivity", index), String.format("package %1$s;\n\n"
+                        + "import android.Manifest;\n"
+                        + "import android.app.Activity;\n\n"
+                        + "import com.fjordnet.groundcontrol.annotations.NeedsPermission;\n"
+                        + "import com.fjordnet.groundcontrol.annotations.OnPermissionDenied;\n\n"
+                        + "public class Screen%2$dActivity extends Activity {\n\n"
+                        + "    @NeedsPermission(Manifest.permission.CAMERA)\n"
+                        + "    public void capture() {\n"
+                        + "    }\n\n"
+                        + "    @OnPermissionDenied(Manifest.permission.CAMERA)\n"
+                        + "    void onCaptureDenied() {\n"
+                        + "    }\n"
+                        + "}\n",
+                PACKAGE, // 1
+                index // 2
+        ));
+
+        writeCallingClass(index, 0);
+
+        writeSource(String.format("Screen%dModel", index), String.format("package %1$s;\n\n"
+                        + "public class Screen%2$dModel {\n\n"
+                        + "    private final StringBuilder text = new StringBuilder();\n\n"
+                        + "    public String describe(int count) {\n"
+                        + "        for (int i = 0; i < count; i++) {\n"
+                        + "            text.append(i).append(',').append(toString());\n"
+                        + "        }\n"
+                        + "        return text.toString().trim();\n"
+                        + "    }\n"
+                        + "}\n",
+                PACKAGE, // 1
+                index // 2
+        ));
+    }
+
+    private void writeCallingClass(int index, int edit) throws IOException {
+
+        writeSource(String.format("Screen%dPresenter", index), String.format("package %1$s;\n\n"
+                        + "public class Screen%2$dPresenter {\n\n"
+                        + "    public int onCaptureClicked(Screen%2$dActivity activity) {\n"
+                        + "        activity.capture();\n"
+                        + "        return %3$d;\n"
+                        + "    }\n"
+                        + "}\n",
+                PACKAGE, // 1
+                index, // 2
+                edit // 3
+        ));
+    }
+
+    private void writeSource(String className, String source) throws IOException {
+        write(String.format("src/main/java/%1$s/%2$s.java", PACKAGE.replace('.', '/'),
+                className), source);
+    }
+
+    private void write(String path, String contents) throws IOException {
+
+        File file = new File(projectDir, path);
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String join(List<String> items, String delimiter) {
+
+        StringBuilder buffer = new StringBuilder();
+        for (String item : items) {
+            if (0 < buffer.length()) {
+                buffer.append(delimiter);
+            }
+            buffer.append(item);
+        }
+
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.gradle.benchmark;
+
+import com.google.common.truth.Truth;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Benchmark of the Ground Control plugin, building synthetic apps through Gradle TestKit.
+ * Each scenario is built several times, and the median of each timing is compared with
+ * its stored baseline. The builds also validate that calls to annotated methods are woven.
+ */
+public class PluginBenchmarkTest {
+
+    /** Number of annotated activities of the projects compiled and woven. */
+    private static final int ANNOTATED_CLASSES
+            = Integer.getInteger("groundcontrol.benchmark.classes", 50);
+
+    /** Largest number of variants of the projects configured. */
+    private static final int VARIANTS = Integer.getInteger("groundcontrol.benchmark.variants", 32);
+
+    /** Number of measured builds of each scenario, following a warm-up build. */
+    private static final int ITERATIONS
+            = Math.max(1, Integer.getInteger("groundcontrol.benchmark.iterations", 5));
+
+    private static Baselines baselines;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadBaselines() throws IOException {
+        baselines = new Baselines();
+    }
+
+    @AfterClass
+    public static void saveBaselines() throws IOException {
+        baselines.saveIfUpdating();
+    }
+
+    @Test
+    public void configurationByVariants() throws IOException {
+
+        List<String> regressions = new ArrayList<>();
+
+        for (int variants = 2; variants <= VARIANTS; variants *= 4) {
+
+            BenchmarkProject project = new BenchmarkProject(temporaryFolder.newFolder(), 1,
+                    variants / 2);
+
+            List<Long> durations = new ArrayList<>();
+            for (int i = 0; i <= ITERATIONS; i++) {
+                build(project, "help");
+                durations.add(getTiming(project, "configuration"));
+            }
+
+            compare(String.format("configuration.%dVariants", variants), durations,
+                    regressions);
+        }
+
+        assertNoRegressions(regressions);
+    }
+
+    @Test
+    public void cleanBuild() throws IOException {
+
+        BenchmarkProject project = newProject();
+        Map<String, List<Long>> timings = newTimings("compile", "weave");
+
+        for (int i = 0; i <= ITERATIONS; i++) {
+            BuildResult result = build(project, "clean", project.getCompileTask());
+            assertWoven(project, result, 0);
+            addTimings(project, timings);
+        }
+
+        assertNoRegressions(compare("clean", timings));
+    }
+
+    @Test
+    public void noOpBuild() throws IOException {
+
+        BenchmarkProject project = newProject();
+        build(project, project.getCompileTask());
+
+        List<Long> durations = new ArrayList<>();
+        for (int i = 0; i <= ITERATIONS; i++) {
+
+            long startTime = System.currentTimeMillis();
+            BuildResult result = build(project, project.getCompileTask());
+            durations.add(System.currentTimeMillis() - startTime);
+
+            // Weaving in place doesn't prevent the compilation from being up to date.
+            Truth.assertThat(result.task(project.getCompileTask()).getOutcome())
+                    .isEqualTo(TaskOutcome.UP_TO_DATE);
+        }
+
+        List<String> regressions = new ArrayList<>();
+        compare("noOp.build", durations, regressions);
+        assertNoRegressions(regressions);
+    }
+
+    @Test
+    public void incrementalBuild() throws IOException {
+
+        BenchmarkProject project = newProject();
+        build(project, project.getCompileTask());
+
+        Map<String, List<Long>> timings = newTimings("compile", "weave");
+
+        for (int i = 0; i <= ITERATIONS; i++) {
+            project.editCallingClass(i + 1);
+            BuildResult result = build(project, project.getCompileTask());
+            assertWoven(project, result, (i + 1) % ANNOTATED_CLASSES);
+            addTimings(project, timings);
+        }
+
+        assertNoRegressions(compare("incremental", timings));
+    }
+
+    private BenchmarkProject newProject() throws IOException {
+        return new BenchmarkProject(temporaryFolder.newFolder(), ANNOTATED_CLASSES, 0);
+    }
+
+    private BuildResult build(BenchmarkProject project, String... tasks) {
+        return GradleRunner.create()
+                .withProjectDir(project.getProjectDir())
+                .withArguments(tasks)
+                .build();
+    }
+
+    private void assertWoven(BenchmarkProject project, BuildResult result, int index)
+            throws IOException {
+
+        Truth.assertThat(result.task(project.getCompileTask()).getOutcome())
+                .isEqualTo(TaskOutcome.SUCCESS);
+
+        byte[] callingClass = Files.readAllBytes(project.getCallingClass(index).toPath());
+        Truth.assertThat(new String(callingClass, "ISO-8859-1")).contains("capture_aroundBody");
+    }
+
+    private static Map<String, List<Long>> newTimings(String... names) {
+
+        Map<String, List<Long>> timings = new LinkedHashMap<>();
+        for (String name : names) {
+            timings.put(name, new ArrayList<Long>());
+        }
+
+        return timings;
+    }
+
+    private static void addTimings(BenchmarkProject project, Map<String, List<Long>> timings)
+            throws IOException {
+
+        for (Map.Entry<String, List<Long>> timing : timings.entrySet()) {
+            timing.getValue().add(getTiming(project, timing.getKey()));
+        }
+    }
+
+    private static long getTiming(BenchmarkProject project, String name) throws IOException {
+        Properties timings = project.readTimings();
+        return Long.parseLong(timings.getProperty(name));
+    }
+
+    private static List<String> compare(String scenario, Map<String, List<Long>> timings) {
+
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, List<Long>> timing : timings.entrySet()) {
+            compare(scenario + "." + timing.getKey(), timing.getValue(), regressions);
+        }
+
+        return regressions;
+    }
+
+    /**
+     * Compare the median of the specified durations, ignoring the first one, which warms up
+     * the Gradle daemon and the compilers, with its baseline.
+     */
+    private static void compare(String name, List<Long> durations, List<String> regressions) {
+
+        List<Long> measured = new ArrayList<>(durations.subList(1, durations.size()));
+        Collections.sort(measured);
+
+        String regression = baselines.compare(name, measured.get(measured.size() / 2));
+        if (null != regression) {
+            regressions.add(regression);
+        }
+    }
+
+    private static void assertNoRegressions(List<String> regressions) {
+        Truth.assertWithMessage("Timings exceeding their baselines").that(regressions).isEmpty();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.gradle;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Build settings for Ground Control, configured through the {@code groundControl} block
+ * of the build script.
+ */
+public class GroundControlExtension {
+
+    private boolean checkHotCallSites = true;
+    private boolean failOnHotCallSites;
+    private Set<String> allowedHotCallSites = new LinkedHashSet<>();
+    private boolean mergeBaselineProfile = true;
+    private File baselineProfile;
+    private boolean weaveUnitTests = true;
+
+    /**
+     * @return {@code true} if woven classes are searched for calls to methods annotated with
+     * {@code NeedsPermission} made within loops or per-frame callbacks; {@code true} by default.
+     */
+    public boolean isCheckHotCallSites() {
+        return checkHotCallSites;
+    }
+
+    public void setCheckHotCallSites(boolean checkHotCallSites) {
+        this.checkHotCallSites = checkHotCallSites;
+    }
+
+    /**
+     * @return {@code true} if calls found within loops or per-frame callbacks fail the build,
+     * rather than being reported as warnings; {@code false} by default.
+     */
+    public boolean isFailOnHotCallSites() {
+        return failOnHotCallSites;
+    }
+
+    public void setFailOnHotCallSites(boolean failOnHotCallSites) {
+        this.failOnHotCallSites = failOnHotCallSites;
+    }
+
+    /**
+     * @return the methods in which calls to methods annotated with {@code NeedsPermission}
+     * are never reported, each specified by its fully qualified class name followed by
+     * its method name (e.g. {@code com.example.MapView.onDraw}), or classes in which no call
+     * is ever reported, each specified by its fully qualified name.
+     */
+    public Set<String> getAllowedHotCallSites() {
+        return allowedHotCallSites;
+    }
+
+    public void setAllowedHotCallSites(Iterable<String> allowedHotCallSites) {
+        this.allowedHotCallSites = new LinkedHashSet<>();
+        for (String allowedHotCallSite : allowedHotCallSites) {
+            this.allowedHotCallSites.add(allowedHotCallSite);
+        }
+    }
+
+    /**
+     * Add the specified methods or classes to those in which calls are never reported.
+     *
+     * @see #getAllowedHotCallSites()
+     */
+    public void allowHotCallSites(String... allowedHotCallSites) {
+        this.allowedHotCallSites.addAll(Arrays.asList(allowedHotCallSites));
+    }
+
+    /**
+     * @return {@code true} if the baseline profile rules generated for the aspects are merged
+     * into the module's baseline profile; {@code true} by default.
+     */
+    public boolean isMergeBaselineProfile() {
+        return mergeBaselineProfile;
+    }
+
+    public void setMergeBaselineProfile(boolean mergeBaselineProfile) {
+        this.mergeBaselineProfile = mergeBaselineProfile;
+    }
+
+    /**
+     * @return the baseline profile into which the generated rules are merged,
+     * or {@code null} for {@code src/main/baseline-prof.txt} within the module.
+     */
+    public File getBaselineProfile() {
+        return baselineProfile;
+    }
+
+    public void setBaselineProfile(File baselineProfile) {
+        this.baselineProfile = baselineProfile;
+    }
+
+    /**
+     * @return {@code true} if the classes of local unit tests are woven, so their calls to
+     * methods annotated with {@code NeedsPermission} are advised; {@code true} by default.
+     */
+    public boolean isWeaveUnitTests() {
+        return weaveUnitTests;
+    }
+
+    public void setWeaveUnitTests(boolean weaveUnitTests) {
+        this.weaveUnitTests = weaveUnitTests;
+    }
+}
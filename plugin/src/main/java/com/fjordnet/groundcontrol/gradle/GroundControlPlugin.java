@@ -23,27 +23,54 @@ import com.android.build.gradle.LibraryExtension;
 import com.android.build.gradle.LibraryPlugin;
 import com.android.build.gradle.api.AndroidSourceSet;
 import com.android.build.gradle.api.BaseVariant;
+import com.android.build.gradle.api.TestedVariant;
+import com.android.build.gradle.internal.dsl.BuildType;
 
 import org.aspectj.bridge.IMessage;
 import org.aspectj.bridge.MessageHandler;
 import org.aspectj.tools.ajc.Main;
 import org.gradle.api.Action;
 import org.gradle.api.DomainObjectSet;
+import org.gradle.api.GradleException;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
 import org.gradle.api.artifacts.dsl.DependencyHandler;
 import org.gradle.api.artifacts.dsl.RepositoryHandler;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 import org.gradle.api.plugins.PluginContainer;
 import org.gradle.api.tasks.compile.JavaCompile;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.Iterator;
-
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static org.aspectj.bridge.IMessage.DEBUG;
+import static org.aspectj.bridge.IMessage.ERROR;
 import static org.aspectj.bridge.IMessage.INFO;
 import static org.aspectj.bridge.IMessage.WARNING;
+import static org.aspectj.bridge.IMessage.WEAVEINFO;
 
 /**
  * Gradle plugin for Ground Control.
@@ -60,17 +87,50 @@ public class GroundControlPlugin implements Plugin<Project> {
     private static final String API = "api";
     private static final String IMPLEMENTATION = "implementation";
 
+    // Metadata published within woven libraries, read when weaving their consumers.
+    private static final String WOVEN_METADATA_PATH = "META-INF/groundcontrol/woven.properties";
+    private static final String METADATA_JOIN_POINT = "joinPoint";
+    private static final String METADATA_ASPECTS = "aspects";
+
+    private static final String OPTION_JOIN_POINT = "-Agroundcontrol.joinPoint=";
+    private static final String JOIN_POINT_CALL = "call";
+    private static final String JOIN_POINT_EXECUTION = "execution";
+    private static final String ASPECT_CLASS_SUFFIX = "GroundControlAspect.class";
+    private static final String ASPECT_SOURCE_SUFFIX = ".aj";
+
+    // Sources generated by annotation processors, if not specified for the compilation.
+    private static final String OPTION_GENERATED_SOURCES_DIR = "-s";
+    private static final String GENERATED_SOURCES_DIR = "generated/source/apt";
+
+    // Keep rules generated by the annotation processor within the class output.
+    private static final String KEEP_RULES_PATH = "META-INF/proguard";
+    private static final String KEEP_RULES_SUFFIX = "GroundControlAspect.pro";
+    private static final String KEEP_RULES_DIR = "intermediates/groundcontrol/proguard";
+
+    // Baseline profile rules generated by the annotation processor within the class output,
+    // merged into the module's baseline profile between the marker lines.
+    private static final String BASELINE_PROFILE_PATH = "META-INF/groundcontrol/baseline-prof";
+    private static final String BASELINE_PROFILE_DIR = "intermediates/groundcontrol/baseline-prof";
+    private static final String BASELINE_PROFILE = "src/main/baseline-prof.txt";
+    private static final String BASELINE_PROFILE_BEGIN = "# Begin Ground Control";
+    private static final String BASELINE_PROFILE_END = "# End Ground Control";
+
+    private static final String EXTENSION_NAME = "groundControl";
+
     @Override
     public void apply(final Project project) {
 
         // Verify the project is an Android app or library.
         PluginContainer plugins = project.getPlugins();
-        boolean hasAppPlugin = null != plugins.withType(AppPlugin.class);
-        boolean hasLibPlugin = null != plugins.withType(LibraryPlugin.class);
+        final boolean hasAppPlugin = plugins.hasPlugin(AppPlugin.class);
+        boolean hasLibPlugin = plugins.hasPlugin(LibraryPlugin.class);
         if (!hasAppPlugin && !hasLibPlugin) {
             throw new IllegalStateException("Android app or library plugin is required.");
         }
 
+        final GroundControlExtension extension = project.getExtensions()
+                .create(EXTENSION_NAME, GroundControlExtension.class);
+
         // Find variants.
         DomainObjectSet<? extends BaseVariant> variants;
         String dependencyType;
@@ -107,20 +167,96 @@ public class GroundControlPlugin implements Plugin<Project> {
         dependencies.add(dependencyType, String.format(libDependencyFormat, "annotations"));
         dependencies.add(dependencyType, String.format(libDependencyFormat, "ground-control"));
 
+        // Unlike libraries, whose consumers apply the keep rules published within them,
+        // apps ignore the keep rules generated within their own classes. Those rules are
+        // collected into a ProGuard file for each build type instead.
+        if (hasAppPlugin) {
+            android.getBuildTypes().all(new Action<BuildType>() {
+
+                @Override
+                public void execute(BuildType buildType) {
+                    buildType.proguardFile(getKeepRulesFile(project, buildType.getName()));
+                }
+            });
+        }
+
         // Execute ajc (aspect weaving) following Java compilation.
         variants.all(new Action<BaseVariant>() {
 
             @Override
             public void execute(BaseVariant variant) {
-                AjcAction ajcAction = new AjcAction(variant.getJavaCompile(), android,
-                        project.getLogger());
+                AjcAction ajcAction
+                        = new AjcAction(project, android, extension, !hasAppPlugin, false);
+                if (hasAppPlugin) {
+                    ajcAction.keepRulesFile
+                            = getKeepRulesFile(project, variant.getBuildType().getName());
+                }
+
+                weaveAfterJavaCompile(variant, ajcAction);
+
+                // Local unit tests run against the woven classes of the tested variant,
+                // while their own calls to annotated methods are advised by weaving the tests.
+                BaseVariant unitTestVariant = variant instanceof TestedVariant
+                        ? ((TestedVariant) variant).getUnitTestVariant()
+                        : null;
+                if (null != unitTestVariant && extension.isWeaveUnitTests()) {
+                    weaveAfterJavaCompile(unitTestVariant,
+                            new AjcAction(project, android, extension, false, true));
+                }
+            }
+        });
+    }
+
+    private static void weaveAfterJavaCompile(BaseVariant variant, final AjcAction ajcAction) {
 
-                variant.getJavaCompiler().doLast(ajcAction);
+        configureJavaCompile(variant, new Action<JavaCompile>() {
+
+            @Override
+            public void execute(JavaCompile compiler) {
+                compiler.doLast(ajcAction);
             }
         });
     }
 
+    /**
+     * Configure the Java compilation task of the specified variant. Versions of the Android
+     * plugin providing the task lazily (3.3 and later) have it configured through its provider,
+     * so it's only created when it runs. Those methods are looked up by name, since they don't
+     * exist in the Android plugin and Gradle versions this plugin is built against.
+     */
+    private static void configureJavaCompile(BaseVariant variant,
+            Action<JavaCompile> action) {
+
+        Method getProvider;
+        try {
+            getProvider = BaseVariant.class.getMethod("getJavaCompileProvider");
+        } catch (NoSuchMethodException exception) {
+            action.execute(variant.getJavaCompile());
+            return;
+        }
+
+        try {
+            Object provider = getProvider.invoke(variant);
+            getProvider.getReturnType().getMethod("configure", Action.class)
+                    .invoke(provider, action);
+        } catch (NoSuchMethodException
+                | IllegalAccessException
+                | InvocationTargetException exception) {
+            throw new GradleException(String.format("Unable to configure Java compilation of %s",
+                    variant.getName()), exception);
+        }
+    }
+
+    private static File getKeepRulesFile(Project project, String buildTypeName) {
+        return new File(project.getBuildDir(),
+                String.format("%1$s/%2$s.pro", KEEP_RULES_DIR, buildTypeName));
+    }
+
     private static <ItemType> String join(Iterable<ItemType> iterable) {
+        return join(iterable, File.pathSeparator);
+    }
+
+    private static <ItemType> String join(Iterable<ItemType> iterable, String delimiter) {
 
         Iterator<ItemType> iter = iterable.iterator();
         StringBuilder buffer = new StringBuilder();
@@ -128,55 +264,140 @@ public class GroundControlPlugin implements Plugin<Project> {
         if (iter.hasNext()) {
             buffer.append(iter.next());
             while (iter.hasNext()) {
-                buffer.append(File.pathSeparator).append(iter.next());
+                buffer.append(delimiter).append(iter.next());
             }
         }
 
         return buffer.toString();
     }
 
+    /**
+     * Weaves the classes compiled by the Java compilation task it's added to.
+     * The project, the {@code android} extension and the Ground Control extension are only read
+     * when the action is created, once the build script is evaluated. The action holds no
+     * reference to them, nor to the task, so it can be stored in Gradle's configuration cache.
+     */
     private static class AjcAction implements Action<Task> {
 
-        private JavaCompile compiler;
-        private BaseExtension android;
-        private Logger logger;
-
-        public AjcAction(JavaCompile compiler, BaseExtension android, Logger logger) {
-            this.compiler = compiler;
-            this.android = android;
-            this.logger = logger;
+        private static final Logger logger = Logging.getLogger(GroundControlPlugin.class);
+
+        private final FileCollection sourceDirs;
+        private final File buildDir;
+        private final String sourceCompatibility;
+        private final boolean library;
+        private final boolean unitTest;
+        private final boolean checkHotCallSites;
+        private final boolean failOnHotCallSites;
+        private final Set<String> allowedHotCallSites;
+
+        /** Baseline profile into which rules are merged, or {@code null} if they aren't. */
+        private final File baselineProfile;
+
+        /** ProGuard file collecting the keep rules of an app, or {@code null} for libraries. */
+        private File keepRulesFile;
+
+        /**
+         * @param unitTest {@code true} to weave the classes of local unit tests, advising their
+         * calls with the aspects of the tested classes. No aspect source is compiled, and
+         * neither are baseline profile rules merged nor hot call sites reported.
+         */
+        public AjcAction(Project project,
+                BaseExtension android,
+                GroundControlExtension extension,
+                boolean library,
+                boolean unitTest) {
+
+            // Read when the task runs, as other plugins may add source directories.
+            final AndroidSourceSet mainSourceSet = android.getSourceSets().findByName("main");
+            this.sourceDirs = unitTest
+                    ? project.files()
+                    : project.files(new Callable<Set<File>>() {
+
+                        @Override
+                        public Set<File> call() {
+                            return mainSourceSet.getJava().getSrcDirs();
+                        }
+                    });
+
+            this.buildDir = project.getBuildDir();
+            this.sourceCompatibility
+                    = android.getCompileOptions().getSourceCompatibility().toString();
+            this.library = library;
+            this.unitTest = unitTest;
+            this.checkHotCallSites = !unitTest && extension.isCheckHotCallSites();
+            this.failOnHotCallSites = extension.isFailOnHotCallSites();
+            this.allowedHotCallSites = new LinkedHashSet<>(extension.getAllowedHotCallSites());
+
+            if (unitTest || !extension.isMergeBaselineProfile()) {
+                this.baselineProfile = null;
+            } else if (null == extension.getBaselineProfile()) {
+                this.baselineProfile = project.file(BASELINE_PROFILE);
+            } else {
+                this.baselineProfile = extension.getBaselineProfile();
+            }
         }
 
         @Override
         public void execute(Task task) {
-            AndroidSourceSet mainSourceSet = android.getSourceSets().findByName("main");
-            String sourceDirs = join(mainSourceSet.getJava().getSrcDirs());
 
-            String buildDir = task.getProject().getBuildDir().toString();
+            JavaCompile compiler = (JavaCompile) task;
+
+            // Without any aspect to compile or to search for, ajc would only copy the classes.
+            List<File> aspectSources = findAspectSources(compiler);
+            List<File> aspectPath = getAspectPath(compiler.getClasspath().getFiles());
+            if (aspectSources.isEmpty() && aspectPath.isEmpty()) {
+                logger.info(String.format("Skipping weaving for %s: no aspects generated, "
+                        + "nor found on the classpath", task.getPath()));
+                skipWeaving(compiler);
+                return;
+            }
+
+            logger.info(String.format("Weaving %1$s: %2$d aspect source(s), "
+                            + "%3$d classpath entries with aspects",
+                    task.getPath(), // 1
+                    aspectSources.size(), // 2
+                    aspectPath.size() // 3
+            ));
 
             String destinationDir = compiler.getDestinationDir().toString();
             String inpath = destinationDir;
             String classpath = compiler.getClasspath().getAsPath();
+            String aspectpath = join(aspectPath);
             String bootClasspath = compiler.getOptions().getBootstrapClasspath().getAsPath();
 
-            String[] args = {
+            List<String> args = new ArrayList<>(Arrays.asList(
                     "-showWeaveInfo",
                     "-verbose",
-                    "-" + android.getCompileOptions().getSourceCompatibility(),
-                    "-sourceroots", sourceDirs + File.pathSeparator + buildDir,
+                    "-" + sourceCompatibility,
                     "-inpath", inpath,
-                    "-aspectpath", classpath,
                     "-d", destinationDir,
                     "-classpath", classpath,
                     "-bootclasspath", bootClasspath
-            };
+            ));
+
+            if (!unitTest) {
+                args.add("-sourceroots");
+                args.add(sourceDirs.getAsPath() + File.pathSeparator + buildDir);
+            }
+
+            if (!aspectpath.isEmpty()) {
+                args.add("-aspectpath");
+                args.add(aspectpath);
+            }
 
             MessageHandler handler = new MessageHandler(true);
 
-            new Main().run(args, handler);
+            new Main().run(args.toArray(new String[args.size()]), handler);
+
+            HotCallSiteDetector hotCallSiteDetector
+                    = new HotCallSiteDetector(allowedHotCallSites);
 
             for (IMessage message : handler.getMessages(null, true)) {
                 IMessage.Kind kind = message.getKind();
+                if (WEAVEINFO.equals(kind)) {
+                    hotCallSiteDetector.addWeaveInfo(message.getMessage());
+                }
+
                 if (WARNING.equals(kind)) {
                     logger.warn(message.getMessage(), message.getThrown());
                 } else if (INFO.equals(kind)) {
@@ -187,6 +408,436 @@ public class GroundControlPlugin implements Plugin<Project> {
                     logger.error(message.getMessage(), message.getThrown());
                 }
             }
+
+            // Always written, as the build type refers to the file even without any rules.
+            if (null != keepRulesFile) {
+                collectKeepRules(compiler.getDestinationDir());
+            }
+
+            if (0 < handler.numMessages(ERROR, true)) {
+                return;
+            }
+
+            if (null != baselineProfile) {
+                mergeBaselineProfile(compiler.getDestinationDir());
+            }
+
+            if (checkHotCallSites) {
+                reportHotCallSites(hotCallSiteDetector, compiler.getDestinationDir());
+            }
+
+            // Record that the library classes are woven, so consumers don't weave them again.
+            if (library) {
+                writeWovenMetadata(compiler);
+            }
+        }
+
+        /**
+         * Complete the compilation without weaving, still writing the outputs which
+         * the build, or consumers of a library, expect.
+         */
+        private void skipWeaving(JavaCompile compiler) {
+
+            if (null != keepRulesFile) {
+                collectKeepRules(compiler.getDestinationDir());
+            }
+
+            // Consumers then leave the library out of their aspect path.
+            if (library) {
+                writeWovenMetadata(compiler);
+            }
+        }
+
+        /**
+         * Find the aspect sources which ajc would compile, i.e. those generated by the
+         * annotation processor for the compilation and those within the source directories.
+         */
+        private List<File> findAspectSources(JavaCompile compiler) {
+
+            List<File> aspectSources = new ArrayList<>();
+            if (unitTest) {
+                return aspectSources;
+            }
+
+            File generatedSourcesDir = getGeneratedSourcesDir(compiler);
+            if (null != generatedSourcesDir) {
+                findAspectSources(generatedSourcesDir, aspectSources);
+            }
+
+            for (File sourceDir : sourceDirs) {
+                findAspectSources(sourceDir, aspectSources);
+            }
+
+            return aspectSources;
+        }
+
+        private static void findAspectSources(File dir, List<File> aspectSources) {
+
+            File[] files = dir.listFiles();
+            if (null == files) {
+                return;
+            }
+
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    findAspectSources(file, aspectSources);
+                } else if (file.getName().endsWith(ASPECT_SOURCE_SUFFIX)) {
+                    aspectSources.add(file);
+                }
+            }
+        }
+
+        /**
+         * Determine the directory into which the annotation processor generates sources,
+         * set either through the compile options or through the {@code -s} compiler argument,
+         * depending on the version of the Android plugin.
+         */
+        private File getGeneratedSourcesDir(JavaCompile compiler) {
+
+            File generatedSourcesDir
+                    = compiler.getOptions().getAnnotationProcessorGeneratedSourcesDirectory();
+            if (null != generatedSourcesDir) {
+                return generatedSourcesDir;
+            }
+
+            Iterator<String> compilerArgs = compiler.getOptions().getCompilerArgs().iterator();
+            while (compilerArgs.hasNext()) {
+                if (OPTION_GENERATED_SOURCES_DIR.equals(compilerArgs.next())
+                        && compilerArgs.hasNext()) {
+                    return new File(compilerArgs.next());
+                }
+            }
+
+            // Unknown; search all generated sources.
+            return new File(buildDir, GENERATED_SOURCES_DIR);
+        }
+
+        /**
+         * Collect the keep rules generated for the compiled classes into the ProGuard file
+         * of the build type. The rules of other variants with the same build type are kept,
+         * as they only refer to classes which exist in those variants.
+         */
+        private void collectKeepRules(File destinationDir) {
+
+            String keepRulesPath = keepRulesFile.getPath();
+            File collectedRulesDir
+                    = new File(keepRulesPath.substring(0, keepRulesPath.lastIndexOf('.')));
+            if (!collectedRulesDir.isDirectory() && !collectedRulesDir.mkdirs()) {
+                logger.warn(String.format("Unable to create %s", collectedRulesDir));
+                return;
+            }
+
+            try {
+
+                File[] generatedRules = new File(destinationDir, KEEP_RULES_PATH).listFiles();
+                if (null != generatedRules) {
+                    for (File rules : generatedRules) {
+                        if (rules.getName().endsWith(KEEP_RULES_SUFFIX)) {
+                            Files.copy(rules.toPath(),
+                                    new File(collectedRulesDir, rules.getName()).toPath(),
+                                    REPLACE_EXISTING);
+                        }
+                    }
+                }
+
+                File[] collectedRules = collectedRulesDir.listFiles();
+                Arrays.sort(collectedRules);
+
+                try (OutputStream output = new FileOutputStream(keepRulesFile)) {
+                    for (File rules : collectedRules) {
+                        Files.copy(rules.toPath(), output);
+                    }
+                }
+
+            } catch (IOException exception) {
+                logger.warn(String.format("Unable to write %s", keepRulesFile), exception);
+            }
+        }
+
+        /**
+         * Merge the baseline profile rules generated for the compiled classes into the
+         * module's baseline profile, so the generated classes and woven members are compiled
+         * ahead of time on install. As with keep rules, the rules of other variants are kept.
+         * The profile is only written when its contents change, leaving rules outside of
+         * the Ground Control section untouched.
+         */
+        private void mergeBaselineProfile(File destinationDir) {
+
+            File collectedRulesDir = new File(buildDir, BASELINE_PROFILE_DIR);
+            if (!collectedRulesDir.isDirectory() && !collectedRulesDir.mkdirs()) {
+                logger.warn(String.format("Unable to create %s", collectedRulesDir));
+                return;
+            }
+
+            File profileFile = baselineProfile;
+
+            try {
+
+                File[] generatedRules
+                        = new File(destinationDir, BASELINE_PROFILE_PATH).listFiles();
+                if (null != generatedRules) {
+                    for (File rules : generatedRules) {
+                        Files.copy(rules.toPath(),
+                                new File(collectedRulesDir, rules.getName()).toPath(),
+                                REPLACE_EXISTING);
+                    }
+                }
+
+                // Rules of all aspects, without duplicates.
+                File[] collectedRules = collectedRulesDir.listFiles();
+                Arrays.sort(collectedRules);
+
+                Set<String> rules = new LinkedHashSet<>();
+                for (File rulesFile : collectedRules) {
+                    for (String rule : Files.readAllLines(rulesFile.toPath(), UTF_8)) {
+                        if (!rule.trim().isEmpty() && !rule.startsWith("#")) {
+                            rules.add(rule);
+                        }
+                    }
+                }
+
+                List<String> profile = profileFile.isFile()
+                        ? Files.readAllLines(profileFile.toPath(), UTF_8)
+                        : new ArrayList<String>();
+                List<String> mergedProfile = new ArrayList<>();
+
+                boolean inSection = false;
+                for (String line : profile) {
+                    if (BASELINE_PROFILE_BEGIN.equals(line)) {
+                        inSection = true;
+                    } else if (BASELINE_PROFILE_END.equals(line)) {
+                        inSection = false;
+                    } else if (!inSection) {
+                        mergedProfile.add(line);
+                    }
+                }
+
+                if (!rules.isEmpty()) {
+                    mergedProfile.add(BASELINE_PROFILE_BEGIN);
+                    mergedProfile.addAll(rules);
+                    mergedProfile.add(BASELINE_PROFILE_END);
+                }
+
+                if (mergedProfile.equals(profile)) {
+                    return;
+                }
+
+                File profileDir = profileFile.getParentFile();
+                if (!profileDir.isDirectory() && !profileDir.mkdirs()) {
+                    logger.warn(String.format("Unable to create %s", profileDir));
+                    return;
+                }
+
+                Files.write(profileFile.toPath(), mergedProfile, UTF_8);
+
+            } catch (IOException exception) {
+                logger.warn(String.format("Unable to write %s", profileFile), exception);
+            }
+        }
+
+        /**
+         * Report the calls to methods annotated with NeedsPermission made within loops
+         * or per-frame callbacks, which check permissions again on every iteration or frame.
+         */
+        private void reportHotCallSites(HotCallSiteDetector hotCallSiteDetector,
+                File destinationDir) {
+
+            List<String> hotCallSites;
+            try {
+                hotCallSites = hotCallSiteDetector.findHotCallSites(destinationDir);
+            } catch (IOException exception) {
+                logger.warn("Unable to search woven classes for hot call sites", exception);
+                return;
+            }
+
+            for (String hotCallSite : hotCallSites) {
+                logger.warn(hotCallSite);
+            }
+
+            if (hotCallSites.isEmpty() || !failOnHotCallSites) {
+                return;
+            }
+
+            throw new GradleException(String.format("%1$d call(s) to methods annotated with "
+                            + "@NeedsPermission made within loops or per-frame callbacks. "
+                            + "Move them out, or add the calling methods to %2$s.%3$s.",
+                    hotCallSites.size(), // 1
+                    EXTENSION_NAME, // 2
+                    "allowedHotCallSites" // 3
+            ));
+        }
+
+        /**
+         * Determine the classpath entries that ajc must search for aspects, i.e. those
+         * containing Ground Control aspects. Libraries woven at execution join points are
+         * left out, since their aspects cannot advise any other classes; they remain on the
+         * classpath. Libraries woven at call join points are kept if they contain aspects,
+         * as those advise calls made by consumers. Other entries are searched for aspects
+         * by class name.
+         */
+        private List<File> getAspectPath(Set<File> classpath) {
+
+            List<File> aspectPath = new ArrayList<>();
+
+            for (File entry : classpath) {
+
+                Properties metadata = readWovenMetadata(entry);
+                if (null == metadata) {
+                    if (containsAspects(entry)) {
+                        aspectPath.add(entry);
+                    }
+                    continue;
+                }
+
+                if (JOIN_POINT_EXECUTION.equals(metadata.getProperty(METADATA_JOIN_POINT))) {
+                    logger.info(String.format("Skipping woven library %s", entry));
+                } else if (metadata.getProperty(METADATA_ASPECTS, "").isEmpty()) {
+                    logger.info(String.format("Skipping woven library %s without aspects",
+                            entry));
+                } else {
+                    aspectPath.add(entry);
+                }
+            }
+
+            return aspectPath;
+        }
+
+        /**
+         * Determine whether the specified classpath entry, without woven metadata,
+         * contains Ground Control aspects. Only the names of its entries are read.
+         */
+        private boolean containsAspects(File classpathEntry) {
+
+            if (!classpathEntry.exists()) {
+                return false;
+            }
+
+            if (classpathEntry.isDirectory()) {
+                return !findAspects(classpathEntry, "").isEmpty();
+            }
+
+            try (JarFile jar = new JarFile(classpathEntry)) {
+
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    if (entries.nextElement().getName().endsWith(ASPECT_CLASS_SUFFIX)) {
+                        return true;
+                    }
+                }
+
+                return false;
+
+            } catch (IOException exception) {
+                // Not a readable archive; let ajc search it as usual.
+                logger.debug(String.format("Unable to search %s for aspects", classpathEntry),
+                        exception);
+                return true;
+            }
+        }
+
+        private Properties readWovenMetadata(File classpathEntry) {
+
+            if (!classpathEntry.exists()) {
+                return null;
+            }
+
+            try {
+
+                if (classpathEntry.isDirectory()) {
+
+                    File metadataFile = new File(classpathEntry, WOVEN_METADATA_PATH);
+                    if (!metadataFile.isFile()) {
+                        return null;
+                    }
+
+                    try (InputStream input = new FileInputStream(metadataFile)) {
+                        return loadProperties(input);
+                    }
+                }
+
+                try (JarFile jar = new JarFile(classpathEntry)) {
+
+                    JarEntry metadataEntry = jar.getJarEntry(WOVEN_METADATA_PATH);
+                    if (null == metadataEntry) {
+                        return null;
+                    }
+
+                    try (InputStream input = jar.getInputStream(metadataEntry)) {
+                        return loadProperties(input);
+                    }
+                }
+
+            } catch (IOException exception) {
+                // Not a readable archive; let ajc search it as usual.
+                logger.debug(String.format("Unable to read woven metadata from %s",
+                        classpathEntry), exception);
+                return null;
+            }
+        }
+
+        private void writeWovenMetadata(JavaCompile compiler) {
+
+            File destinationDir = compiler.getDestinationDir();
+
+            Properties metadata = new Properties();
+            metadata.setProperty(METADATA_JOIN_POINT, getJoinPoint(compiler));
+            metadata.setProperty(METADATA_ASPECTS, join(findAspects(destinationDir, ""), ","));
+
+            File metadataFile = new File(destinationDir, WOVEN_METADATA_PATH);
+            File metadataDir = metadataFile.getParentFile();
+            if (!metadataDir.isDirectory() && !metadataDir.mkdirs()) {
+                logger.warn(String.format("Unable to create %s", metadataDir));
+                return;
+            }
+
+            try (OutputStream output = new FileOutputStream(metadataFile)) {
+                metadata.store(output, "Classes woven by Ground Control");
+            } catch (IOException exception) {
+                logger.warn(String.format("Unable to write %s", metadataFile), exception);
+            }
+        }
+
+        /**
+         * Determine the join points advised by the aspects generated for this compilation,
+         * as specified by the annotation processor option.
+         */
+        private static String getJoinPoint(JavaCompile compiler) {
+
+            for (String compilerArg : compiler.getOptions().getCompilerArgs()) {
+                if (compilerArg.startsWith(OPTION_JOIN_POINT)) {
+                    return compilerArg.substring(OPTION_JOIN_POINT.length());
+                }
+            }
+
+            return JOIN_POINT_CALL;
+        }
+
+        private List<String> findAspects(File dir, String packagePrefix) {
+
+            List<String> aspects = new ArrayList<>();
+
+            File[] files = dir.listFiles();
+            if (null == files) {
+                return aspects;
+            }
+
+            for (File file : files) {
+
+                String name = file.getName();
+                if (file.isDirectory()) {
+                    aspects.addAll(findAspects(file, packagePrefix + name + "."));
+                } else if (name.endsWith(ASPECT_CLASS_SUFFIX)) {
+                    aspects.add(packagePrefix + name.substring(0, name.lastIndexOf('.')));
+                }
+            }
+
+            return aspects;
+        }
+
+        private static Properties loadProperties(InputStream input) throws IOException {
+            Properties properties = new Properties();
+            properties.load(input);
+            return properties;
         }
     }
 }
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.gradle;
+
+import org.aspectj.apache.bcel.classfile.ClassParser;
+import org.aspectj.apache.bcel.classfile.Code;
+import org.aspectj.apache.bcel.classfile.ConstantPool;
+import org.aspectj.apache.bcel.classfile.JavaClass;
+import org.aspectj.apache.bcel.classfile.LineNumberTable;
+import org.aspectj.apache.bcel.classfile.Method;
+import org.aspectj.apache.bcel.generic.Instruction;
+import org.aspectj.apache.bcel.generic.InstructionBranch;
+import org.aspectj.apache.bcel.generic.InstructionHandle;
+import org.aspectj.apache.bcel.generic.InstructionList;
+import org.aspectj.apache.bcel.generic.InvokeInstruction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds calls to methods annotated with {@code NeedsPermission} that are made within loops
+ * or callbacks invoked for every frame, where every invocation checks permissions again.
+ * Advised methods are learned from the weave info reported by ajc, then the woven classes
+ * are searched for calls to them.
+ */
+class HotCallSiteDetector {
+
+    /** Weave info reported by ajc for each join point advised by a Ground Control aspect. */
+    private static final Pattern WEAVE_INFO = Pattern.compile("^Join point "
+            + "'method-(call|execution)\\(void ([\\w$.]+)\\.([\\w$]+)\\(.*\\)\\)' "
+            + "in Type '([\\w$.]+)'.* advised by around advice from '[\\w$.]+GroundControlAspect'");
+
+    /** Methods to which ajc inlines advice on calls, named after the called method. */
+    private static final Pattern INLINED_ADVICE
+            = Pattern.compile("^([\\w$]+)_aroundBody\\d+\\$advice$");
+
+    /** Methods generated by ajc when weaving, which contain the original or advised code. */
+    private static final Pattern WOVEN_BODY = Pattern.compile("_aroundBody\\d+(\\$advice)?$");
+
+    /**
+     * Names of framework callbacks invoked for every frame or every bound item
+     * while scrolling, e.g. View.onDraw and Choreographer.FrameCallback.doFrame.
+     */
+    private static final Set<String> PER_FRAME_METHODS = new HashSet<>(Arrays.asList(
+            "onDraw", "onDrawForeground", "dispatchDraw", "onBindViewHolder", "getView",
+            "doFrame", "onDrawFrame", "onAnimationUpdate"));
+
+    private final Set<String> allowedHotCallSites;
+
+    /** Names of methods whose calls are advised. */
+    private final Set<String> advisedCalls = new HashSet<>();
+
+    /** Classes containing advised calls. */
+    private final Set<String> callingClasses = new HashSet<>();
+
+    /** Fully qualified names of methods whose execution is advised. */
+    private final Set<String> advisedExecutions = new HashSet<>();
+
+    /**
+     * Names of the superclasses of the woven classes, by class name, for resolving calls
+     * to advised executions made through a subclass.
+     */
+    private final Map<String, String> superclassNames = new HashMap<>();
+
+    /**
+     * @param allowedHotCallSites fully qualified names of the methods, or classes,
+     * in which calls are never reported.
+     */
+    HotCallSiteDetector(Set<String> allowedHotCallSites) {
+        this.allowedHotCallSites = allowedHotCallSites;
+    }
+
+    /**
+     * Record the join point described by the specified weave info reported by ajc,
+     * if it is advised by a Ground Control aspect.
+     */
+    void addWeaveInfo(String weaveInfo) {
+
+        Matcher matcher = WEAVE_INFO.matcher(weaveInfo);
+        if (!matcher.find()) {
+            return;
+        }
+
+        if ("call".equals(matcher.group(1))) {
+            advisedCalls.add(matcher.group(3));
+            callingClasses.add(matcher.group(4));
+        } else {
+            advisedExecutions.add(matcher.group(2) + "." + matcher.group(3));
+        }
+    }
+
+    /**
+     * Search the woven classes in the specified directory for calls to advised methods
+     * made within loops or per-frame callbacks.
+     *
+     * @return a description of each call found.
+     */
+    List<String> findHotCallSites(File classesDir) throws IOException {
+
+        List<String> hotCallSites = new ArrayList<>();
+        if (advisedCalls.isEmpty() && advisedExecutions.isEmpty()) {
+            return hotCallSites;
+        }
+
+        List<JavaClass> javaClasses = new ArrayList<>();
+        for (File classFile : findClassFiles(classesDir, new ArrayList<File>())) {
+            JavaClass javaClass = new ClassParser(classFile.getPath()).parse();
+            javaClasses.add(javaClass);
+            superclassNames.put(javaClass.getClassName(), javaClass.getSuperclassName());
+        }
+
+        for (JavaClass javaClass : javaClasses) {
+
+            // Advised calls are only woven into the classes reported by ajc, whereas the calls
+            // to advised executions can be anywhere.
+            if (advisedExecutions.isEmpty()
+                    && !callingClasses.contains(javaClass.getClassName())) {
+                continue;
+            }
+
+            for (Method method : javaClass.getMethods()) {
+                if (!WOVEN_BODY.matcher(method.getName()).find()) {
+                    findHotCallSites(javaClass, method, hotCallSites);
+                }
+            }
+        }
+
+        return hotCallSites;
+    }
+
+    private void findHotCallSites(JavaClass javaClass, Method method, List<String> hotCallSites) {
+
+        Code code = method.getCode();
+        String className = javaClass.getClassName();
+        if (null == code
+                || allowedHotCallSites.contains(className)
+                || allowedHotCallSites.contains(className + "." + method.getName())) {
+            return;
+        }
+
+        ConstantPool constantPool = javaClass.getConstantPool();
+        InstructionHandle[] handles = new InstructionList(code.getCode()).getInstructionHandles();
+        boolean perFrame = PER_FRAME_METHODS.contains(method.getName());
+
+        for (InstructionHandle handle : handles) {
+
+            Instruction instruction = handle.getInstruction();
+            if (!(instruction instanceof InvokeInstruction)) {
+                continue;
+            }
+
+            InvokeInstruction invocation = (InvokeInstruction) instruction;
+            String calledMethod = getAdvisedMethod(invocation, constantPool);
+            if (null == calledMethod) {
+                continue;
+            }
+
+            boolean inLoop = isInLoop(handle, handles);
+            if (!perFrame && !inLoop) {
+                continue;
+            }
+
+            LineNumberTable lineNumbers = code.getLineNumberTable();
+            hotCallSites.add(String.format("%1$s.%2$s(%3$s:%4$d): %5$s, annotated with "
+                            + "@NeedsPermission, is called within %6$s; its permissions are "
+                            + "checked on every %7$s.",
+                    className, // 1
+                    method.getName(), // 2
+                    javaClass.getSourceFileName(), // 3
+                    null == lineNumbers ? 0 : lineNumbers.getSourceLine(handle.getPosition()), // 4
+                    calledMethod, // 5
+                    inLoop ? "a loop" : "a per-frame callback", // 6
+                    inLoop ? "iteration" : "frame" // 7
+            ));
+        }
+    }
+
+    /**
+     * @return the name of the advised method invoked by the specified instruction,
+     * or {@code null} if the invoked method isn't advised.
+     */
+    private String getAdvisedMethod(InvokeInstruction invocation, ConstantPool constantPool) {
+
+        String methodName = invocation.getMethodName(constantPool);
+
+        Matcher matcher = INLINED_ADVICE.matcher(methodName);
+        if (matcher.find() && advisedCalls.contains(matcher.group(1))) {
+            return matcher.group(1);
+        }
+
+        // The invoked class may be a subclass of the class declaring the advised method,
+        // e.g. when calling an inherited method through a reference to the subclass.
+        for (String className = invocation.getClassName(constantPool); null != className;
+                className = superclassNames.get(className)) {
+
+            if (advisedExecutions.contains(className + "." + methodName)) {
+                return methodName;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Determine whether the specified instruction is within a loop, i.e. whether a later
+     * instruction branches back to it or to any instruction before it.
+     */
+    private static boolean isInLoop(InstructionHandle handle, InstructionHandle[] handles) {
+
+        int position = handle.getPosition();
+
+        for (InstructionHandle branchHandle : handles) {
+
+            if (branchHandle.getPosition() < position
+                    || !(branchHandle.getInstruction() instanceof InstructionBranch)) {
+                continue;
+            }
+
+            InstructionHandle target = ((InstructionBranch) branchHandle.getInstruction())
+                    .getTarget();
+            if (null != target && target.getPosition() <= position) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static List<File> findClassFiles(File dir, List<File> classFiles) {
+
+        File[] files = dir.listFiles();
+        if (null == files) {
+            return classFiles;
+        }
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                findClassFiles(file, classFiles);
+            } else if (file.getName().endsWith(".class")) {
+                classFiles.add(file);
+            }
+        }
+
+        return classFiles;
+    }
+}
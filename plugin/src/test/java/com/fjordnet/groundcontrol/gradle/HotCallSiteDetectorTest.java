@@ -0,0 +1,165 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.gradle;
+
+import com.google.common.truth.Truth;
+
+import org.aspectj.bridge.IMessage;
+import org.aspectj.bridge.MessageHandler;
+import org.aspectj.tools.ajc.Main;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Unit test cases weaving an aspect into calls to, or the execution of, a gated method,
+ * validating that calls made within loops and per-frame callbacks are reported, and other
+ * calls aren't.
+ */
+public class HotCallSiteDetectorTest {
+
+    private static final String FIXTURE_PACKAGE = "com/fjordnet/sample/groundcontrol/";
+    private static final String FIXTURE_CLASS = "com.fjordnet.sample.groundcontrol.HotCallSites";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File wovenDir;
+    private List<String> weaveInfo;
+
+    @Before
+    public void setUp() throws IOException {
+
+        weave("HotCallSites.java", "HotCallSitesGroundControlAspect.aj");
+
+        // One call in each of the fixture's callers.
+        Truth.assertThat(weaveInfo).hasSize(3);
+    }
+
+    @Test
+    public void callsWithinLoopsAndPerFrameCallbacksFound() throws IOException {
+
+        List<String> hotCallSites = findHotCallSites(Collections.<String>emptySet());
+
+        Truth.assertThat(hotCallSites).hasSize(2);
+        Truth.assertThat(hotCallSites.get(0)).startsWith(FIXTURE_CLASS + ".locateEach(");
+        Truth.assertThat(hotCallSites.get(0)).contains(
+                "locate, annotated with @NeedsPermission, is called within a loop");
+        Truth.assertThat(hotCallSites.get(1)).startsWith(FIXTURE_CLASS + ".onDraw(");
+        Truth.assertThat(hotCallSites.get(1)).contains(
+                "locate, annotated with @NeedsPermission, is called within a per-frame callback");
+    }
+
+    @Test
+    public void callsThroughSubclassesFound() throws IOException {
+
+        weave("HotCallSitesParent.java", "HotCallSitesChild.java",
+                "HotCallSitesParentGroundControlAspect.aj");
+
+        // The execution of the method declared by the superclass.
+        Truth.assertThat(weaveInfo).hasSize(1);
+
+        List<String> hotCallSites = findHotCallSites(Collections.<String>emptySet());
+
+        Truth.assertThat(hotCallSites).hasSize(1);
+        Truth.assertThat(hotCallSites.get(0)).startsWith(FIXTURE_CLASS + "Child.locateEach(");
+        Truth.assertThat(hotCallSites.get(0)).contains(
+                "locate, annotated with @NeedsPermission, is called within a loop");
+    }
+
+    @Test
+    public void callAfterLoopNotFound() throws IOException {
+
+        for (String hotCallSite : findHotCallSites(Collections.<String>emptySet())) {
+            Truth.assertThat(hotCallSite).doesNotContain(".locateAfterLoop(");
+        }
+    }
+
+    @Test
+    public void allowedCallSitesNotFound() throws IOException {
+
+        Truth.assertThat(findHotCallSites(Collections.singleton(FIXTURE_CLASS))).isEmpty();
+        Truth.assertThat(findHotCallSites(Collections.singleton(FIXTURE_CLASS + ".onDraw")))
+                .hasSize(1);
+    }
+
+    @Test
+    public void noCallsFoundWithoutWeaveInfo() throws IOException {
+
+        Truth.assertThat(new HotCallSiteDetector(Collections.<String>emptySet())
+                .findHotCallSites(wovenDir)).isEmpty();
+    }
+
+    /**
+     * Weave the specified fixtures, recording the weave info reported by ajc.
+     */
+    private void weave(String... fileNames) throws IOException {
+
+        File sourcesDir = temporaryFolder.newFolder();
+        wovenDir = temporaryFolder.newFolder();
+
+        for (String fileName : fileNames) {
+
+            File sourceFile = new File(sourcesDir, fileName);
+            try (InputStream input = getClass().getClassLoader()
+                    .getResourceAsStream(FIXTURE_PACKAGE + fileName)) {
+                Files.copy(input, sourceFile.toPath());
+            }
+        }
+
+        String[] args = {
+                "-showWeaveInfo",
+                "-1.7",
+                "-sourceroots", sourcesDir.getPath(),
+                "-d", wovenDir.getPath(),
+                "-classpath", System.getProperty("java.class.path")
+        };
+
+        MessageHandler handler = new MessageHandler(true);
+        new Main().run(args, handler);
+
+        Truth.assertThat(handler.getMessages(IMessage.ERROR, true)).isEmpty();
+
+        weaveInfo = new ArrayList<>();
+        for (IMessage message : handler.getMessages(IMessage.WEAVEINFO, false)) {
+            weaveInfo.add(message.getMessage());
+        }
+    }
+
+    private List<String> findHotCallSites(Set<String> allowedHotCallSites)
+            throws IOException {
+
+        HotCallSiteDetector detector = new HotCallSiteDetector(allowedHotCallSites);
+        for (String message : weaveInfo) {
+            detector.addWeaveInfo(message);
+        }
+
+        List<String> hotCallSites = detector.findHotCallSites(wovenDir);
+        Collections.sort(hotCallSites);
+        return hotCallSites;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.sample.groundcontrol;
+
+/**
+ * Calls to a gated method declared by the superclass, made within a loop through a reference
+ * to the subclass.
+ */
+public class HotCallSitesChild extends HotCallSitesParent {
+
+    static void locateEach(HotCallSitesChild child, int count) {
+        for (int i = 0; i < count; i++) {
+            child.locate();
+        }
+    }
+}
@@ -18,14 +18,21 @@ package com.fjordnet.groundcontrol.annotations;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
 
 import javax.annotation.processing.Filer;
 import javax.annotation.processing.Messager;
@@ -50,8 +57,10 @@ import static com.fjordnet.groundcontrol.annotations.ProcessorUtils.join;
 import static com.fjordnet.groundcontrol.annotations.ProcessorUtils.stringifyParameters;
 import static java.lang.String.format;
 import static javax.lang.model.element.ElementKind.METHOD;
+import static javax.lang.model.element.ElementKind.PACKAGE;
 import static javax.lang.model.element.Modifier.ABSTRACT;
 import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.PUBLIC;
 import static javax.lang.model.element.Modifier.STATIC;
 import static javax.lang.model.type.TypeKind.ARRAY;
 import static javax.lang.model.type.TypeKind.BOOLEAN;
@@ -72,9 +81,9 @@ public class AspectGenerator {
     private static final String ALERT_DIALOG = "android.app.AlertDialog";
     private static final String BOOLEAN_TYPE = "java.lang.Boolean";
     private static final String BUNDLE = "android.os.Bundle";
+    private static final String CONTEXT = "android.content.Context";
     private static final String BYTE_TYPE = "java.lang.Byte";
-    private static final String DIALOG_INTERFACE = "android.content.DialogInterface";
-    private static final String DIALOG_ONCLICK_LISTENER = DIALOG_INTERFACE + ".OnClickListener";
+    private static final String WEAK_REFERENCE = "java.lang.ref.WeakReference";
     private static final String DOUBLE_TYPE = "java.lang.Double";
     private static final String FLOAT_TYPE = "java.lang.Float";
     private static final String FRAGMENT = "android.app.Fragment";
@@ -89,11 +98,16 @@ public class AspectGenerator {
 
     private static final String GROUND_CONTROL = "com.fjordnet.groundcontrol.GroundControl";
     private static final String RATIONALE = "com.fjordnet.groundcontrol.Rationale";
+    private static final String PERMISSION_SNAPSHOT
+            = "com.fjordnet.groundcontrol.PermissionSnapshot";
     private static final String ON_RATIONALE_ACKNOWLEDGED_LISTENER
             = "com.fjordnet.groundcontrol.OnRationaleAcknowledgedListener";
+    private static final String ON_RATIONALE_ACKNOWLEDGED_TARGET
+            = "com.fjordnet.groundcontrol.OnRationaleAcknowledgedListener.Target";
 
     // Android API constants.
     private static final String METHOD_GET_ACTIVITY = "getActivity";
+    private static final String METHOD_GET_CONTEXT = "getContext";
     private static final String METHOD_ON_REQUEST_PERMISSIONS_RESULT = "onRequestPermissionsResult";
     private static final String METHOD_REQUEST_PERMISSIONS = "requestPermissions";
     private static final String CONSTANT_PERMISSION_GRANTED
@@ -109,6 +123,13 @@ public class AspectGenerator {
     private static final String METHOD_GRANT = "grant";
     private static final String METHOD_DENY = "deny";
     private static final String METHOD_SET_TARGET_INSTANCE = "setTargetInstance";
+    private static final String METHOD_SHOW_RATIONALE = "showRationale";
+    private static final String METHOD_REQUEST = "request";
+
+    // Generated permission check helper classes, for check-only methods.
+    private static final String CLASS_PERMISSION_CHECK = "PermissionCheck";
+    private static final String FIELD_CHECKED_PERMISSIONS = "PERMISSIONS";
+    private static final String METHOD_IS_GRANTED = "isGranted";
 
     // Member variables for the intermediary class.
     private static final String FIELD_PENDING_PERMISSION = "__groundControlPendingPermission";
@@ -122,16 +143,25 @@ public class AspectGenerator {
     private static final String METHOD_SHOW_DEFAULT_RATIONALE_DIALOG
             = "__groundControlShowDefaultRationaleDialog";
     private static final String METHOD_CAN_HANDLE_REQUEST = "canHandleRequest";
+    private static final String METHOD_ON_CREATE_PERMISSIONS = "__groundControlOnCreatePermissions";
+    private static final String METHOD_REQUEST_ON_CREATE_PERMISSIONS
+            = "__groundControlRequestOnCreatePermissions";
 
     private static final String VAR_TARGET_INSTANCE = "targetInstance";
+    private static final String VAR_TARGET_REFERENCE = "targetReference";
     private static final String VAR_PERMISSIONS_ARRAY = "permissionsArray";
+    private static final String VAR_PERMISSION_SNAPSHOT = "permissionSnapshot";
     private static final String VAR_RATIONALE_ACK_LISTENER = "ackListener";
     private static final String VAR_REQUEST_CODE = "requestCode";
 
     // Ground Control API constants.
-    private static final String METHOD_FILTER_GRANTED_PERMISSIONS = "filterGrantedPermissions";
+    private static final String METHOD_EVALUATE_PERMISSIONS = "evaluatePermissions";
+    private static final String METHOD_RECORD_PERMISSIONS_RESULT = "recordPermissionsResult";
+    private static final String METHOD_HAS_CACHED_PERMISSIONS = "hasCachedPermissions";
+    private static final String FIELD_MISSING_PERMISSIONS = "missingPermissions";
     private static final String METHOD_CREATE_RATIONALE_DIALOG = "createPermissionRationaleDialog";
-    private static final String METHOD_ON_RATIONALE_ACKNOWLEDGED = "onRationaleAcknowledged";
+    private static final String METHOD_TARGET_ON_RATIONALE_ACKNOWLEDGED
+            = "__groundControlOnRationaleAcknowledged";
 
     // Keys for saving state.
     private static final String STATE_PENDING_PERMISSION
@@ -141,83 +171,459 @@ public class AspectGenerator {
     private static final String STATE_RATIONALE_PERMISSIONS
             = "__groundControl.state.rationalePermissions";
 
+    // Directory of consumer keep rules within the class output, read by R8 and ProGuard.
+    private static final String KEEP_RULES_DIR = "META-INF/proguard";
+
+    // Directory of baseline profile rules within the class output, merged by the plugin.
+    private static final String BASELINE_PROFILE_DIR = "META-INF/groundcontrol/baseline-prof";
+
+    // Bounds of request codes: above those commonly defined by developers, and within the
+    // lower 16 bits, the only ones available to the requests of support fragments.
+    private static final int MIN_REQUEST_CODE = 0x1000;
+    private static final int MAX_REQUEST_CODE = 0xFFFF;
+
     private final Elements elements;
     private final Types types;
     private final Filer filer;
     private final Messager messager;
+    private final boolean adviseExecution;
+
+    /** Finds the classes calling annotated methods, or {@code null} to advise all classes. */
+    private final CallSiteScanner callSiteScanner;
+
+    /** Collects the cost of processing each class, or {@code null} if not reported. */
+    private final GenerationStatistics statistics;
+
+    private final Map<Element, AnnotatedClass> annotatedClasses;
+
+    /** Classes whose methods annotated with NeedsPermission are all check-only. */
+    private final Map<Element, AnnotatedClass> checkOnlyClasses;
+
+    /** Methods annotated with NeedsPermission in all valid classes, in a stable order. */
+    private final List<ExecutableElement> gatedMethods;
 
     private int nextRequestCode;
 
-    public AspectGenerator(Elements elements, Types types, Filer filer, Messager messager) {
+    /** First and last request codes allocated to each hierarchy of the current compilation. */
+    private final List<int[]> allocatedRequestCodes = new ArrayList<>();
+
+    /**
+     * Methods, including constructors and advice, and inner classes written to the aspect
+     * being generated, counted where they're written for the statistics report.
+     */
+    private int writtenMethods;
+    private int writtenInnerClasses;
+
+    /**
+     * @param adviseExecution {@code true} to advise the execution of annotated methods,
+     * which weaves the advice once per method; {@code false} to advise calls to annotated
+     * methods, which weaves the advice at every call site.
+     * @param callSiteScanner scanner of the classes calling annotated methods, to which
+     * the advice on calls is scoped, or {@code null} to advise calls in all classes.
+     * @param statistics collector of the time spent on each class and the size of the code
+     * generated for it, or {@code null} to skip collecting them.
+     */
+    public AspectGenerator(Elements elements,
+            Types types,
+            Filer filer,
+            Messager messager,
+            boolean adviseExecution,
+            CallSiteScanner callSiteScanner,
+            GenerationStatistics statistics) {
+
         this.elements = elements;
         this.types = types;
         this.filer = filer;
         this.messager = messager;
+        this.adviseExecution = adviseExecution;
+        this.callSiteScanner = callSiteScanner;
+        this.statistics = statistics;
 
-        // For permission request code, use some number that will likely not conflict
-        // with other developer-defined request codes.
-        nextRequestCode = 0x1357;
+        annotatedClasses = new HashMap<>();
+        checkOnlyClasses = new HashMap<>();
+        gatedMethods = new ArrayList<>();
+    }
+
+    /**
+     * Derive the first of the request codes allocated to a class hierarchy from the name of
+     * its root class, so that hierarchies compiled separately, e.g. a library activity and
+     * its subclass in an app, get distinct request codes.
+     *
+     * @param rootClassName the qualified name of the root class of the hierarchy.
+     * @param count the number of request codes allocated to the hierarchy.
+     */
+    static int getFirstRequestCode(String rootClassName, int count) {
+
+        CRC32 checksum = new CRC32();
+        checksum.update(rootClassName.getBytes(StandardCharsets.UTF_8));
+
+        final int range = MAX_REQUEST_CODE - MIN_REQUEST_CODE + 1 - count;
+        return MIN_REQUEST_CODE + (int) (checksum.getValue() % range);
+    }
+
+    /**
+     * Validate the specified classes and group their annotated methods, then allocate
+     * request codes for each class hierarchy. Must be called before generating aspects
+     * for any of the specified classes.
+     *
+     * @param classElements classes containing methods annotated with Ground Control
+     * annotations.
+     */
+    public void prepareAspectsFor(Collection<? extends Element> classElements) {
+
+        annotatedClasses.clear();
+        checkOnlyClasses.clear();
+        gatedMethods.clear();
+
+        // Process classes in a stable order, so request codes are the same across builds.
+        List<Element> sortedClassElements = new ArrayList<>(classElements);
+        Collections.sort(sortedClassElements, new Comparator<Element>() {
+            @Override
+            public int compare(Element first, Element second) {
+                return first.asType().toString().compareTo(second.asType().toString());
+            }
+        });
+
+        for (Element classElement : sortedClassElements) {
+
+            final long startTime = System.nanoTime();
+            prepareAspectFor(classElement);
+
+            if (null != statistics) {
+                statistics.recordValidation(classElement, System.nanoTime() - startTime);
+            }
+        }
+
+        // Link each class to its closest ancestor which also has generated aspects.
+        for (AnnotatedClass annotatedClass : annotatedClasses.values()) {
+
+            Element ancestor = getParentClass(annotatedClass.classElement, types);
+            while (null != ancestor && !annotatedClasses.containsKey(ancestor)) {
+                ancestor = getParentClass(ancestor, types);
+            }
+
+            if (null != ancestor) {
+                annotatedClass.parent = annotatedClasses.get(ancestor);
+                annotatedClass.parent.subclasses.add(annotatedClass);
+            }
+        }
+
+        // Allocate a dense range of request codes for each class hierarchy,
+        // starting from the classes at the root of each hierarchy.
+        allocatedRequestCodes.clear();
+        for (Element classElement : sortedClassElements) {
+
+            AnnotatedClass annotatedClass = annotatedClasses.get(classElement);
+            if (null == annotatedClass || null != annotatedClass.root
+                    || null != annotatedClass.parent) {
+                continue;
+            }
+
+            List<GroupedAnnotatedMethodSet> hierarchyCallbackSets = new ArrayList<>();
+            annotatedClass.firstRequestCode = findFreeRequestCodes(
+                    ((TypeElement) classElement).getQualifiedName().toString(),
+                    countRequestCodes(annotatedClass)
+                            + (annotatedClass.hierarchyRequestsOnCreate() ? 1 : 0));
+            nextRequestCode = annotatedClass.firstRequestCode - 1;
+            allocateRequestCodes(annotatedClass, annotatedClass, hierarchyCallbackSets);
+
+            // A single request code is shared by the permissions requested on creation
+            // by any class in the hierarchy.
+            if (annotatedClass.hierarchyRequestsOnCreate()) {
+                annotatedClass.onCreateRequestCode = ++nextRequestCode;
+            }
+            annotatedClass.lastRequestCode = nextRequestCode;
+            annotatedClass.hierarchyFeatures = new GeneratedFeatures(hierarchyCallbackSets);
+            allocatedRequestCodes.add(new int[] {
+                    annotatedClass.firstRequestCode, annotatedClass.lastRequestCode});
+        }
+    }
+
+    /**
+     * @return the first of the specified number of consecutive request codes for the hierarchy
+     * rooted at the class of the specified name, derived from the name, then moved past the
+     * codes of other hierarchies of the same compilation.
+     */
+    private int findFreeRequestCodes(String rootClassName, int count) {
+
+        int firstRequestCode = getFirstRequestCode(rootClassName, count);
+
+        for (int attempt = 0; attempt <= allocatedRequestCodes.size(); attempt++) {
+
+            boolean overlaps = false;
+            for (int[] allocated : allocatedRequestCodes) {
+                if (firstRequestCode <= allocated[1]
+                        && allocated[0] <= firstRequestCode + count - 1) {
+                    firstRequestCode = allocated[1] + 1;
+                    overlaps = true;
+                }
+            }
+
+            if (firstRequestCode + count - 1 > MAX_REQUEST_CODE) {
+                firstRequestCode = MIN_REQUEST_CODE;
+                overlaps = true;
+            }
+
+            if (!overlaps) {
+                break;
+            }
+        }
+
+        return firstRequestCode;
+    }
+
+    /**
+     * @return the number of request codes needed by the callback sets of the specified class
+     * and its subclasses, excluding the code shared by requests made on creation.
+     */
+    private static int countRequestCodes(AnnotatedClass annotatedClass) {
+
+        int count = 0;
+        for (GroupedAnnotatedMethodSet callbackSet : annotatedClass.callbackSets) {
+            if (callbackSet.isInteractive()) {
+                count++;
+            }
+        }
+
+        for (AnnotatedClass subclass : annotatedClass.subclasses) {
+            count += countRequestCodes(subclass);
+        }
+        return count;
+    }
+
+    /**
+     * Validate the specified class and group its annotated methods, keeping it for generating
+     * its aspect if valid.
+     */
+    private void prepareAspectFor(Element classElement) {
+
+        // Error checking on class element. Classes which never prompt the user
+        // don't need to be activities or fragments.
+        if (isCheckOnlyClass(classElement)
+                ? !isValidCheckOnlyClass(classElement)
+                : !isValidContainingClass(classElement)) {
+            return;
+        }
+
+        // Find all methods annotated with Ground Control annotations and group them.
+        List<GroupedAnnotatedMethodSet> callbackSets = findAllAnnotatedCallbacks(classElement);
+
+        // Display warnings if there are any OnPermissionDenied or OnShowRationale callbacks
+        // that don't match permission requirement methods.
+        printUnmatchedAnnotationCallbackWarnings(callbackSets);
+
+        // Without any NeedsPermission methods, there's nothing to weave.
+        // Check-only methods don't need any of the state shared within hierarchies.
+        AnnotatedClass annotatedClass = new AnnotatedClass(classElement,
+                elements.getPackageOf(classElement), callbackSets);
+        for (GroupedAnnotatedMethodSet callbackSet : callbackSets) {
+            if (null != callbackSet.permissionGrantedCallback) {
+                gatedMethods.add(callbackSet.permissionGrantedCallback);
+            }
+        }
+
+        if (annotatedClass.features.hasInteractiveCallbacks) {
+            annotatedClasses.put(classElement, annotatedClass);
+            return;
+        }
+
+        if (annotatedClass.features.hasCheckOnlyCallbacks) {
+            checkOnlyClasses.put(classElement, annotatedClass);
+        }
+        printRequestPermissionsOnCreateWarning(classElement);
     }
 
     public void generateAspectFor(Element classElement)
             throws IOException {
 
-        // Error checking on class element.
-        if (!isValidContainingClass(classElement)) {
+        // Classes failing validation, or without any methods annotated with NeedsPermission,
+        // have nothing to weave.
+        final boolean interactive = annotatedClasses.containsKey(classElement);
+        final AnnotatedClass annotatedClass = interactive
+                ? annotatedClasses.get(classElement)
+                : checkOnlyClasses.get(classElement);
+        if (null == annotatedClass) {
             return;
         }
 
+        final long startTime = System.nanoTime();
         String packageName = elements.getPackageOf(classElement).getQualifiedName().toString();
-        String className = classElement.getSimpleName().toString();
-        String aspectName = className + "GroundControlAspect";
 
         FileObject aspectFile = filer.createResource(StandardLocation.SOURCE_OUTPUT,
-                packageName, format("%s.aj", aspectName));
+                packageName, format("%s.aj", getAspectName(classElement)));
 
+        // The characters and lines of the aspect are only counted when reported.
         Writer writer = aspectFile.openWriter();
+        final GenerationStatistics.CodeCounter counter = null == statistics
+                ? null
+                : new GenerationStatistics.CodeCounter(writer);
+        if (null != counter) {
+            writer = counter;
+        }
+        int lifecycleOverrides = 0;
+        writtenMethods = 0;
+        writtenInnerClasses = 0;
 
         // Package.
         writer.write(format("package %s;\n\n", packageName));
 
         // Aspect declaration.
-        writer.write(format("public aspect %s {\n\n", aspectName));
+        writer.write(format("public aspect %s {\n\n", getAspectName(classElement)));
 
-        // PermissionCallback interface, for handling results from permission requests.
-        writePermissionCallbackInterface(classElement, writer, "\t");
+        // Classes which never prompt the user only need the advice checking permissions.
+        if (interactive) {
 
-        // Find all methods annotated with Ground Control annotations and group them.
-        List<GroupedAnnotatedMethodSet> callbackSets = findAllAnnotatedCallbacks(classElement);
+            // PermissionCallback interface, for handling results from permission requests.
+            // Shared by all classes in the same hierarchy.
+            if (annotatedClass.isRoot()) {
+                writePermissionCallbackInterface(annotatedClass, writer, "\t");
+            }
 
-        // Intermediate class.
-        writeGroundControlledClass(classElement, callbackSets, writer, "\t");
+            // Intermediate class.
+            lifecycleOverrides = writeGroundControlledClass(annotatedClass, writer, "\t");
 
-        // Declare parents.
-        writer.write(format("\tdeclare parents: %s extends %s;\n\n",
-                classElement.asType(), getIntermediaryClassName(classElement)));
+            // Declare parents.
+            writer.write(format("\tdeclare parents: %s extends %s;\n\n",
+                    classElement.asType(), getIntermediaryClassName(classElement)));
+        }
 
         // Generate advice for each callback set.
-        for (GroupedAnnotatedMethodSet callbackSet : callbackSets) {
-            writeAdviceFor(callbackSet, writer, "\t");
+        for (GroupedAnnotatedMethodSet callbackSet : annotatedClass.callbackSets) {
+            writeAdviceFor(annotatedClass, callbackSet, writer, "\t");
         }
 
-        // Display warnings if there are any OnPermissionDenied or OnShowRationale callbacks
-        // that don't match permission requirement methods.
-        printUnmatchedAnnotationCallbackWarnings(callbackSets);
-
         // End aspect.
         writer.write("}\n");
 
         writer.close();
+
+        if (interactive) {
+            writeKeepRules(annotatedClass);
+        }
+
+        writeBaselineProfileRules(annotatedClass);
+
+        if (null != statistics) {
+            statistics.recordGeneration(classElement, System.nanoTime() - startTime,
+                    annotatedClass.callbackSets.size(), lifecycleOverrides, writtenMethods,
+                    writtenInnerClasses, counter);
+        }
+    }
+
+    /**
+     * Write the keep rules for the members of the generated classes which are only reached
+     * reflectively, i.e. the creators of the permission callbacks, read when unparcelling
+     * saved state. The rules are written to the class output, so they're published within
+     * libraries and applied by R8 or ProGuard when shrinking their consumers.
+     */
+    private void writeKeepRules(AnnotatedClass annotatedClass) throws IOException {
+
+        final Element classElement = annotatedClass.classElement;
+        final String qualifiedAspectName = getQualifiedAspectName(classElement);
+
+        FileObject rulesFile = filer.createResource(StandardLocation.CLASS_OUTPUT, "",
+                format("%1$s/%2$s.pro", KEEP_RULES_DIR, qualifiedAspectName));
+
+        Writer writer = rulesFile.openWriter();
+        writer.write(format("# Generated by Ground Control for %s.\n", classElement.asType()));
+
+        for (GroupedAnnotatedMethodSet callbackSet : annotatedClass.callbackSets) {
+
+            if (!callbackSet.isInteractive()) {
+                continue;
+            }
+
+            writer.write(format("-keepclassmembers class %1$s$%2$s {\n"
+                            + "    public static final %3$s CREATOR;\n"
+                            + "}\n",
+                    qualifiedAspectName, // 1
+                    getCallbackClassNameFor(callbackSet.permissionGrantedCallback), // 2
+                    PARCELABLE_CREATOR.replace(".Creator", "$Creator") // 3
+            ));
+        }
+
+        writer.close();
+    }
+
+    /**
+     * Write the baseline profile rules for the generated classes and the members woven by ajc,
+     * all of which run on the first interaction with a screen. The plugin merges the rules
+     * into the module's baseline profile, so these paths are compiled ahead of time on install
+     * rather than interpreted.
+     */
+    private void writeBaselineProfileRules(AnnotatedClass annotatedClass) throws IOException {
+
+        final Element classElement = annotatedClass.classElement;
+        final String qualifiedAspectName = getQualifiedAspectName(classElement);
+        final String aspectDescriptor = qualifiedAspectName.replace('.', '/');
+        final String classDescriptor = elements.getBinaryName((TypeElement) classElement)
+                .toString().replace('.', '/');
+
+        FileObject rulesFile = filer.createResource(StandardLocation.CLASS_OUTPUT, "",
+                format("%1$s/%2$s.txt", BASELINE_PROFILE_DIR, qualifiedAspectName));
+
+        Writer writer = rulesFile.openWriter();
+        writer.write(format("# Generated by Ground Control for %s.\n", classElement.asType()));
+
+        // The aspect, and the intermediary, callback and check classes nested within it.
+        writer.write(format("L%1$s;\n"
+                        + "HSPL%1$s;->**(**)**\n"
+                        + "L%1$s$*;\n"
+                        + "HSPL%1$s$*;->**(**)**\n",
+                aspectDescriptor));
+
+        // Annotated methods, and the methods to which ajc moves their original bodies and
+        // inlines the advice. Calls are woven within the calling classes, which may be
+        // anywhere in the module.
+        for (GroupedAnnotatedMethodSet callbackSet : annotatedClass.callbackSets) {
+
+            if (null == callbackSet.permissionGrantedCallback) {
+                continue;
+            }
+
+            writer.write(format("HSPL%1$s;->%2$s(**)**\n"
+                            + "HSPL%3$s;->%2$s_aroundBody*(**)**\n",
+                    classDescriptor, // 1
+                    callbackSet.permissionGrantedCallback.getSimpleName(), // 2
+                    adviseExecution ? classDescriptor : "**" // 3
+            ));
+        }
+
+        writer.close();
+    }
+
+    private void allocateRequestCodes(AnnotatedClass annotatedClass,
+            AnnotatedClass root,
+            List<GroupedAnnotatedMethodSet> hierarchyCallbackSets) {
+
+        annotatedClass.root = root;
+        hierarchyCallbackSets.addAll(annotatedClass.callbackSets);
+
+        // Only callback sets with a NeedsPermission method prompting the user
+        // ever issue requests.
+        for (GroupedAnnotatedMethodSet callbackSet : annotatedClass.callbackSets) {
+            if (callbackSet.isInteractive()) {
+                callbackSet.requestCode = ++nextRequestCode;
+            }
+        }
+
+        for (AnnotatedClass subclass : annotatedClass.subclasses) {
+            allocateRequestCodes(subclass, root, hierarchyCallbackSets);
+        }
     }
 
-    private void writePermissionCallbackInterface(Element classElement, Writer writer, String tabs)
+    private void writePermissionCallbackInterface(AnnotatedClass annotatedClass,
+            Writer writer,
+            String tabs)
             throws IOException {
 
-        writer.write(format("%1$sinterface %2$s extends %6$s {\n"
+        writer.write(format("%1$s%10$sinterface %2$s extends %6$s {\n"
                 + "%1$s\tint %3$s();\n"
                 + "%1$s\tvoid %4$s();\n"
                 + "%1$s\tvoid %5$s();\n"
                 + "%1$s\tvoid %7$s(%8$s %9$s);\n"
+                + (!annotatedClass.hierarchyFeatures.restartsRationales ? ""
+                        : "%1$s\tvoid %11$s(%12$s %13$s);\n")
                 + "%1$s}\n\n",
 
                 tabs, // 1
@@ -227,82 +633,146 @@ public class AspectGenerator {
                 METHOD_DENY, // 5
                 PARCELABLE, // 6
                 METHOD_SET_TARGET_INSTANCE, // 7
-                getIntermediaryClassName(classElement), // 8
-                VAR_TARGET_INSTANCE // 9
+                getIntermediaryClassName(annotatedClass.classElement), // 8
+                VAR_TARGET_INSTANCE, // 9
+                annotatedClass.isSharedAcrossPackages() ? "public " : "", // 10
+                METHOD_SHOW_RATIONALE, // 11
+                ON_RATIONALE_ACKNOWLEDGED_LISTENER, // 12
+                VAR_RATIONALE_ACK_LISTENER // 13
         ));
+
+        writtenInnerClasses++;
+        writtenMethods += annotatedClass.hierarchyFeatures.restartsRationales ? 5 : 4;
     }
 
-    private void writeGroundControlledClass(Element classElement,
-            List<GroupedAnnotatedMethodSet> callbackSets,
+    /**
+     * @return the number of life cycle methods overridden by the written class.
+     */
+    private int writeGroundControlledClass(AnnotatedClass annotatedClass,
             Writer writer,
             String tabs)
             throws IOException {
 
+        final Element classElement = annotatedClass.classElement;
+        final List<GroupedAnnotatedMethodSet> callbackSets = annotatedClass.callbackSets;
+        final GeneratedFeatures hierarchyFeatures = annotatedClass.root.hierarchyFeatures;
         Element parentClass = getParentClass(classElement, types);
 
-        writer.write(format("%1$spublic static abstract class %2$s%3$s {\n\n",
+        // Rationale acknowledged listeners hand their permissions back to the root of the
+        // hierarchy, which requests them.
+        writer.write(format("%1$spublic static abstract class %2$s%3$s%4$s {\n\n",
                 tabs, // 1
                 getIntermediaryClassName(classElement), // 2
                 null == parentClass // 3
                         ? ""
-                        : format(" extends %s", parentClass.asType())));
+                        : format(" extends %s", parentClass.asType()),
+                !annotatedClass.isRoot() || !hierarchyFeatures.showsRationales // 4
+                        ? ""
+                        : format(" implements %s", ON_RATIONALE_ACKNOWLEDGED_TARGET)));
+        writtenInnerClasses++;
+
+        // State and its handling is shared by the whole class hierarchy,
+        // so it's only generated in the intermediary class at the root of the hierarchy.
+        int lifecycleOverrides = 0;
+        if (annotatedClass.isRoot()) {
 
-        writeFields(writer, tabs + "\t");
+            writeFields(annotatedClass, writer, tabs + "\t");
 
-        // Override of onRequestPermissionsResult, which will invoke the appropriate callback
-        // from the pending permission handler.
-        writeOnRequestPermissionsResult(writer, tabs + "\t");
+            // Override of onRequestPermissionsResult, which will invoke the appropriate
+            // callback from the pending permission handler.
+            writeOnRequestPermissionsResult(classElement, writer, tabs + "\t");
 
-        // Override life cycle methods to manage state across configuration changes.
-        writeOverrideLifeCycleMethods(classElement, writer, tabs + "\t");
+            // Override life cycle methods to manage state across configuration changes.
+            lifecycleOverrides = writeOverrideLifeCycleMethods(annotatedClass, writer,
+                    tabs + "\t");
+        }
 
         // Methods replicating the annotated methods in the target class,
         // so they're accessible from the advice.
         writeReplicatedCallbackMethods(callbackSets, writer, tabs + "\t");
 
-        // Primary method for showing the appropriate rationale
-        // for the specified permissions request.
-        writeRestartRationaleMethod(callbackSets, classElement, writer, tabs + "\t");
+        if (annotatedClass.isRoot() && hierarchyFeatures.showsRationales) {
+
+            // Method requesting the permissions of an acknowledged rationale,
+            // shared by all rationales of the hierarchy.
+            writeOnRationaleAcknowledgedMethod(hierarchyFeatures, parentClass, writer,
+                    tabs + "\t");
+        }
+
+        if (annotatedClass.isRoot() && hierarchyFeatures.restartsRationales) {
+
+            // Primary method for showing the appropriate rationale
+            // for the specified permissions request.
+            writeRestartRationaleMethod(writer, tabs + "\t");
+        }
 
         // Enumerated helper methods for showing specific rationales.
         // Used by the primary show rationale method.
         writeShowDefaultRationaleHelperMethods(callbackSets, classElement, writer, tabs + "\t");
 
-        // Helper method for showing a simple rationale dialog.
-        writeShowDefaultRationaleDialog(classElement, writer, tabs + "\t");
+        if (annotatedClass.isRoot() && hierarchyFeatures.usesDefaultRationale) {
+
+            // Helper method for showing a simple rationale dialog.
+            writeShowDefaultRationaleDialog(classElement, writer, tabs + "\t");
+        }
+
+        if (annotatedClass.isRoot()) {
 
-        // Helper method for determining whether a specific request code
-        // can be handled by this intermediary class.
-        writeCanHandleRequest(callbackSets, writer, tabs + "\t");
+            // Helper method for determining whether a specific request code
+            // can be handled by this class hierarchy.
+            writeCanHandleRequest(annotatedClass, writer, tabs + "\t");
+        }
+
+        if (0 != annotatedClass.root.onCreateRequestCode) {
+
+            // Permissions to request when first created, overridden by each class
+            // requesting them, and the helper method requesting them in a single batch.
+            writeOnCreatePermissionsMethods(annotatedClass, writer, tabs + "\t");
+        }
 
         // End class.
         writer.write(tabs + "}\n\n");
+
+        return lifecycleOverrides;
     }
 
-    private void writeFields(Writer writer, String tabs) throws IOException {
+    private void writeFields(AnnotatedClass annotatedClass, Writer writer, String tabs)
+            throws IOException {
+
+        final GeneratedFeatures features = annotatedClass.hierarchyFeatures;
+
+        // Fields are accessed by advice of all classes in the hierarchy.
+        final String visibility = annotatedClass.isSharedAcrossPackages() ? "public" : "protected";
 
         // Pending permission, which is the callback handler for when the permission is granted.
-        writer.write(format("%3$sprotected %1$s %2$s;\n\n",
-                INTERFACE_PERMISSION_CALLBACK, FIELD_PENDING_PERMISSION, tabs));
+        writer.write(format("%3$s%4$s %1$s %2$s;\n\n",
+                INTERFACE_PERMISSION_CALLBACK, FIELD_PENDING_PERMISSION, tabs, visibility));
 
         // Request code for the current permissions request, if any.
         // Together with the permissions array, this determines if a rationale needs to be
         // shown again after a configuration change.
-        writer.write(format("%2$sprotected int %1$s;\n\n",
-                FIELD_CURRENT_REQUEST_CODE, tabs));
+        writer.write(format("%2$s%3$s int %1$s;\n\n",
+                FIELD_CURRENT_REQUEST_CODE, tabs, visibility));
 
         // Permissions for the currently displaying rationale, if any. May be null.
         // Together with the current request code, this determines if a rationale needs to be
         // shown again after a configuration change.
-        writer.write(format("%2$sprotected String[] %1$s;\n\n",
-                FIELD_RATIONALE_PERMISSIONS, tabs));
+        if (features.restartsRationales) {
+            writer.write(format("%2$s%3$s String[] %1$s;\n\n",
+                    FIELD_RATIONALE_PERMISSIONS, tabs, visibility));
+        }
 
         // Currently displaying rationale dialog. May be null.
-        writer.write(format("%3$sprivate %1$s %2$s;\n\n",
-                ALERT_DIALOG, FIELD_RATIONALE_DIALOG, tabs));
+        if (features.usesDefaultRationale) {
+            writer.write(format("%3$sprivate %1$s %2$s;\n\n",
+                    ALERT_DIALOG, FIELD_RATIONALE_DIALOG, tabs));
+        }
     }
 
-    private void writeOnRequestPermissionsResult(Writer writer, String tabs) throws IOException {
+    private void writeOnRequestPermissionsResult(Element classElement,
+            Writer writer,
+            String tabs)
+            throws IOException {
 
         // Method implementation.
         writer.write(format("%1$s@Override public void %2$s("
@@ -315,11 +785,15 @@ public class AspectGenerator {
                 + "%1$s\t\treturn;\n"
                 + "%1$s\t}\n\n"
 
+                // Record the result, from which permanently denied permissions are inferred.
+                + "%1$s\t%13$s.%14$s(%15$s, %3$s, %4$s, %5$s);\n\n"
+
                 // Check that there's a handler for the pending permission.
                 + "%1$s\tif (null == %6$s || %3$s != %6$s.%7$s()) { return; }\n"
 
                 // Invoke the appropriate callback method on the pending permission handler.
-                + "%1$s\tif (%8$s(%4$s, %5$s)) { %6$s.%9$s(); } else { %6$s.%10$s(); }\n"
+                // The user answered, however long ago the request was made.
+                + "%1$s\tif (%8$s(%4$s, %5$s)) { %6$s.%9$s(); } else { %6$s.%10$s(); }\n\n"
 
                 // Clear pending permission and request code.
                 + "%1$s\t%6$s = null;\n"
@@ -338,8 +812,12 @@ public class AspectGenerator {
                 METHOD_GRANT, // 9
                 METHOD_DENY, // 10
                 METHOD_CAN_HANDLE_REQUEST, // 11
-                FIELD_CURRENT_REQUEST_CODE // 12
+                FIELD_CURRENT_REQUEST_CODE, // 12
+                GROUND_CONTROL, // 13
+                METHOD_RECORD_PERMISSIONS_RESULT, // 14
+                isActivityClass(classElement) ? "this" : METHOD_GET_ACTIVITY + "()" // 15
         ));
+        writtenMethods++;
 
         // Write helper method for reading grant results.
         writeWasGranted(writer, tabs);
@@ -359,24 +837,50 @@ public class AspectGenerator {
                 CALLBACK_PARAM_GRANT_RESULTS,
                 CONSTANT_PERMISSION_GRANTED
         ));
+        writtenMethods++;
     }
 
-    private void writeOverrideLifeCycleMethods(Element classElement, Writer writer, String tabs)
+    /**
+     * @return the number of life cycle methods overridden, each of which is only overridden
+     * if the class has it.
+     */
+    private int writeOverrideLifeCycleMethods(AnnotatedClass annotatedClass,
+            Writer writer,
+            String tabs)
             throws IOException {
 
+        final Element classElement = annotatedClass.classElement;
+        final GeneratedFeatures features = annotatedClass.hierarchyFeatures;
+        int overrides = 0;
+
         // Restore state and re-display rationale, if previously shown.
-        writeOverrideCreationMethod(classElement, writer, tabs);
+        // Otherwise, request the permissions needed on creation, if any.
+        if (writeOverrideCreationMethod(annotatedClass, writer, tabs)) {
+            overrides++;
+        }
 
-        // Dismiss the currently displayed rationale dialog in onDestroy, if applicable.
-        writeOverrideDestroyMethod(classElement, writer, tabs);
+        // Release the pending permission callback in onDestroy, and dismiss the currently
+        // displayed rationale dialog, if applicable.
+        if (writeOverrideDestroyMethod(classElement, features, writer, tabs)) {
+            overrides++;
+        }
 
         // Save state of currently displayed rationale and permission callback.
-        writeOverrideSaveStateMethod(classElement, writer, tabs);
+        if (writeOverrideSaveStateMethod(classElement, features, writer, tabs)) {
+            overrides++;
+        }
+
+        return overrides;
     }
 
-    private void writeOverrideCreationMethod(Element classElement, Writer writer, String tabs)
+    private boolean writeOverrideCreationMethod(AnnotatedClass annotatedClass,
+            Writer writer,
+            String tabs)
             throws IOException {
 
+        final Element classElement = annotatedClass.classElement;
+        final GeneratedFeatures features = annotatedClass.hierarchyFeatures;
+
         // Find the appropriate creation method to override.
         final ExecutableElement creationMethod = findMethod(
                 isActivityClass(classElement) ? "onPostCreate" : "onActivityCreated",
@@ -387,31 +891,35 @@ public class AspectGenerator {
                 elements.getTypeElement(BUNDLE).asType());
 
         if (null == creationMethod) {
-            return;
+            return false;
         }
 
         writer.write(format("%1$s@Override %13$s void %9$s(%2$s %3$s) {\n"
                 + "%1$s\tsuper.%9$s(%3$s);\n"
-                + "%1$s\tif (null == %3$s) { return; }\n\n"
+                + (0 == annotatedClass.onCreateRequestCode
+                        ? "%1$s\tif (null == %3$s) { return; }\n\n"
+                        : "%1$s\tif (null == %3$s) {\n"
+                        + "%1$s\t\t%16$s();\n"
+                        + "%1$s\t\treturn;\n"
+                        + "%1$s\t}\n\n")
 
                 // Do nothing if the request code cannot be handled by this class.
                 + "%1$s\tint %15$s = %3$s.getInt(\"%5$s\");\n"
                 + "%1$s\tif (!%14$s(%15$s)) { return; }\n"
 
-                // Restore request code.
-                + "%1$s\t%4$s = %15$s;\n\n"
-
-                // Restore pending permission callback.
+                // Restore request code and pending permission callback, however long ago the
+                // request was made, as the result is delivered once the user answers.
+                + "%1$s\t%4$s = %15$s;\n"
                 + "%1$s\t%10$s = %3$s.getParcelable(\"%11$s\");\n"
-                + "%1$s\tif (null != %10$s) { %10$s.%12$s(this); }\n\n"
+                + "%1$s\tif (null != %10$s) { %10$s.%12$s(this); }\n"
 
                 // Restore permissions for rationale and request code.
-                + "%1$s\t%6$s = %3$s.getStringArray(\"%7$s\");\n"
-
                 // If rationale was previously displaying, show it again.
-                + "%1$s\tif (null != %6$s) {\n"
-                + "%1$s\t\t%8$s(%6$s, %4$s);\n"
-                + "%1$s\t}\n"
+                + (!features.restartsRationales ? "" : "\n"
+                        + "%1$s\t%6$s = %3$s.getStringArray(\"%7$s\");\n"
+                        + "%1$s\tif (null != %6$s) {\n"
+                        + "%1$s\t\t%8$s(%6$s, %4$s);\n"
+                        + "%1$s\t}\n")
 
                 + "%1$s}\n\n",
 
@@ -429,36 +937,56 @@ public class AspectGenerator {
                 METHOD_SET_TARGET_INSTANCE, // 12
                 join(creationMethod.getModifiers(), " "), // 13
                 METHOD_CAN_HANDLE_REQUEST, // 14
-                "requestCode" // 15
+                "requestCode", // 15
+                METHOD_REQUEST_ON_CREATE_PERMISSIONS // 16
         ));
+        writtenMethods++;
+
+        return true;
     }
 
-    private void writeOverrideDestroyMethod(Element classElement, Writer writer, String tabs)
+    private boolean writeOverrideDestroyMethod(Element classElement,
+            GeneratedFeatures features,
+            Writer writer,
+            String tabs)
             throws IOException {
 
         // Find the appropriate destroy method to override.
         ExecutableElement destroyMethod = findMethod("onDestroy", types.getNoType(VOID),
                 classElement, elements, types);
         if (null == destroyMethod) {
-            return;
+            return false;
         }
 
+        // State needed by a recreated instance has already been saved by now, so the
+        // pending permission callback and its captured arguments can be released.
         writer.write(format("%1$s@Override %3$s void %4$s() {\n"
                 + "%1$s\tsuper.%4$s();\n"
-                + "%1$s\tif (null != %2$s && %2$s.isShowing()) {\n"
-                + "%1$s\t\t%2$s.dismiss();\n"
-                + "%1$s\t\t%2$s = null;\n"
-                + "%1$s\t}\n"
+                + "%1$s\t%5$s = null;\n"
+                + (!features.restartsRationales ? "" : "%1$s\t%6$s = null;\n")
+                + (!features.usesDefaultRationale ? "" : "\n"
+                        + "%1$s\tif (null != %2$s && %2$s.isShowing()) {\n"
+                        + "%1$s\t\t%2$s.dismiss();\n"
+                        + "%1$s\t\t%2$s = null;\n"
+                        + "%1$s\t}\n")
                 + "%1$s}\n\n",
 
                 tabs, // 1
                 FIELD_RATIONALE_DIALOG, // 2
                 join(destroyMethod.getModifiers(), " "), // 3
-                destroyMethod.getSimpleName() // 4
+                destroyMethod.getSimpleName(), // 4
+                FIELD_PENDING_PERMISSION, // 5
+                FIELD_RATIONALE_PERMISSIONS // 6
         ));
+        writtenMethods++;
+
+        return true;
     }
 
-    private void writeOverrideSaveStateMethod(Element classElement, Writer writer, String tabs)
+    private boolean writeOverrideSaveStateMethod(Element classElement,
+            GeneratedFeatures features,
+            Writer writer,
+            String tabs)
             throws IOException {
 
         // Find the appropriate creation method to override.
@@ -466,7 +994,7 @@ public class AspectGenerator {
                 types.getNoType(VOID), classElement, elements, types,
                 elements.getTypeElement(BUNDLE).asType());
         if (null == saveMethod) {
-            return;
+            return false;
         }
 
         writer.write(format("%1$s@Override %10$s void %11$s(%2$s %3$s) {\n"
@@ -474,7 +1002,8 @@ public class AspectGenerator {
                 + "%1$s\tif (!%12$s(%5$s)) { return; }\n\n"
                 + "%1$s\t%3$s.putParcelable(\"%8$s\", %9$s);\n"
                 + "%1$s\t%3$s.putInt(\"%4$s\", %5$s);\n"
-                + "%1$s\t%3$s.putStringArray(\"%6$s\", %7$s);\n"
+                + (!features.restartsRationales ? ""
+                        : "%1$s\t%3$s.putStringArray(\"%6$s\", %7$s);\n")
                 + "%1$s}\n\n",
 
                 tabs, // 1
@@ -490,6 +1019,9 @@ public class AspectGenerator {
                 saveMethod.getSimpleName(), // 11
                 METHOD_CAN_HANDLE_REQUEST // 12
         ));
+        writtenMethods++;
+
+        return true;
     }
 
     private void writeReplicatedCallbackMethods(List<GroupedAnnotatedMethodSet> callbackSets,
@@ -505,9 +1037,14 @@ public class AspectGenerator {
 
         for (GroupedAnnotatedMethodSet callbackSet : callbackSets) {
 
+            // Callbacks without a matching NeedsPermission method are never invoked,
+            // and those of check-only methods are invoked directly by the advice.
+            if (!callbackSet.isInteractive()) {
+                continue;
+            }
+
             // Permission granted callback.
-            if (null != callbackSet.permissionGrantedCallback
-                    && !writtenMethods.contains(callbackSet.permissionGrantedCallback)) {
+            if (!writtenMethods.contains(callbackSet.permissionGrantedCallback)) {
 
                 writeReplicatedCallbackMethod(callbackSet.permissionGrantedCallback, writer, tabs);
                 writtenMethods.add(callbackSet.permissionGrantedCallback);
@@ -548,92 +1085,77 @@ public class AspectGenerator {
                 callback.getSimpleName(), // 3
                 stringifyParameters(callback) // 4
         ));
+        writtenMethods++;
     }
 
-    private void writeRestartRationaleMethod(
-            List<GroupedAnnotatedMethodSet> callbackSets,
-            Element classElement,
+    private void writeOnRationaleAcknowledgedMethod(GeneratedFeatures features,
+            Element parentClass,
             Writer writer,
             String tabs)
             throws IOException {
 
-        // Method signature.
-        writer.write(format("%1$sprotected void %2$s(final String[] %3$s, final int %4$s) {\n",
-                tabs, METHOD_RESTART_RATIONALE, VAR_PERMISSIONS_ARRAY, VAR_REQUEST_CODE));
-
-        // Activity instance.
-        String varActivity = "activity";
-        writer.write(format("%1$s\tfinal %2$s %3$s = %4$s;\n",
-                tabs, ACTIVITY, varActivity,
-                isActivityClass(classElement) ? "this" : METHOD_GET_ACTIVITY + "()"));
+        // Requests for other hierarchies are handed to the parent class, when it also handles
+        // acknowledged rationales, e.g. as woven in a library. Others, e.g. a listener of
+        // a fragment invoked with its activity, could not be handled, so they're ignored.
+        // Otherwise the rationale is no longer displaying, and its permissions are requested
+        // for the pending callback.
+        final TypeElement targetType = elements.getTypeElement(ON_RATIONALE_ACKNOWLEDGED_TARGET);
+        final boolean parentIsTarget = null != parentClass
+                && null != targetType
+                && types.isAssignable(parentClass.asType(), targetType.asType());
 
-        // Rationale acknowledged listener.
         writer.write(format(
-                "%1$s\t%2$s %3$s = new %2$s(%9$s, %10$s) {\n"
-                + "%1$s\t\t@Override public void %4$s(%12$s %13$s) {\n"
-                + "%1$s\t\t\t%5$s(%6$s.%7$s(%8$s, %9$s), %10$s);\n"
-                + "%1$s\t\t\t%11$s = null;\n"
-                + "%1$s\t\t}\n"
-                + "%1$s\t};\n\n",
+                "%1$s@Override public void %2$s(String[] %3$s, int %4$s) {\n"
+                + (parentIsTarget
+                        ? "%1$s\tif (!%5$s(%4$s)) {\n"
+                        + "%1$s\t\tsuper.%2$s(%3$s, %4$s);\n"
+                        + "%1$s\t\treturn;\n"
+                        + "%1$s\t}\n"
+                        : "%1$s\tif (!%5$s(%4$s)) { return; }\n")
+                + (!features.restartsRationales ? "" : "%1$s\t%6$s = null;\n")
+                + "%1$s\t%7$s.%8$s(this, %3$s, %4$s);\n"
+                + "%1$s}\n\n",
 
                 tabs, // 1
-                ON_RATIONALE_ACKNOWLEDGED_LISTENER, // 2
-                VAR_RATIONALE_ACK_LISTENER, // 3
-                METHOD_ON_RATIONALE_ACKNOWLEDGED, // 4
-                METHOD_REQUEST_PERMISSIONS, // 5
-                GROUND_CONTROL, // 6
-                METHOD_FILTER_GRANTED_PERMISSIONS, // 7
-                varActivity, // 8
-                VAR_PERMISSIONS_ARRAY, // 9
-                VAR_REQUEST_CODE, // 10
-                FIELD_RATIONALE_PERMISSIONS, // 11
-                getTopLevelType(classElement), // 12
-                VAR_TARGET_INSTANCE // 13
+                METHOD_TARGET_ON_RATIONALE_ACKNOWLEDGED, // 2
+                VAR_PERMISSIONS_ARRAY, // 3
+                VAR_REQUEST_CODE, // 4
+                METHOD_CAN_HANDLE_REQUEST, // 5
+                FIELD_RATIONALE_PERMISSIONS, // 6
+                GROUND_CONTROL, // 7
+                METHOD_REQUEST_PERMISSIONS // 8
         ));
+        writtenMethods++;
+    }
 
-        // Switch statement for every request code for which a rationale might be shown.
-        StringBuilder builder = new StringBuilder();
-
-        // Iterate through each callback set and call the appropriate rationale method,
-        // if appropriate.
-        String showRationaleMethodName;
-        for (GroupedAnnotatedMethodSet callbackSet : callbackSets) {
-
-            showRationaleMethodName = callbackSet.getShowRationaleMethodName();
-            if (null == showRationaleMethodName) {
-                continue;
-            }
-
-            // Check if Ground Control should handle restarts,
-            // i.e. display the rationale on activity / fragment restart.
-            if (!callbackSet.handleRestarts()) {
-                continue;
-            }
+    private void writeRestartRationaleMethod(Writer writer, String tabs) throws IOException {
 
-            builder.append(format(Locale.ENGLISH,
-                    "%1$s\t\tcase %2$d:\n"
-                    + "%1$s\t\t\t%3$s(%4$s); break;\n",
+        // Method signature.
+        writer.write(format("%1$sprotected void %2$s(final String[] %3$s, final int %4$s) {\n",
+                tabs, METHOD_RESTART_RATIONALE, VAR_PERMISSIONS_ARRAY, VAR_REQUEST_CODE));
 
-                    tabs, // 1
-                    callbackSet.requestCode, // 2
-                    showRationaleMethodName, // 3
-                    VAR_RATIONALE_ACK_LISTENER // 4
-            ));
-        }
+        // Rationale acknowledged listener. The permissions were found missing
+        // when the rationale was first shown, so they are requested as is.
+        writer.write(format("%1$s\t%2$s %3$s = new %2$s(%4$s, %5$s);\n\n",
+                tabs, // 1
+                ON_RATIONALE_ACKNOWLEDGED_LISTENER, // 2
+                VAR_RATIONALE_ACK_LISTENER, // 3
+                VAR_PERMISSIONS_ARRAY, // 4
+                VAR_REQUEST_CODE // 5
+        ));
 
-        String switchBody = builder.toString();
-        if (!switchBody.isEmpty()) {
-            writer.write(format("%1$s\tswitch (%2$s) {\n"
-                    + "%3$s"
-                    + "%1$s\t}\n",
-                    tabs, // 1
-                    VAR_REQUEST_CODE, // 2
-                    switchBody // 3
-            ));
-        }
+        // The pending permission callback knows which rationale belongs to its request,
+        // regardless of which class in the hierarchy declares it.
+        writer.write(format("%1$s\tif (null != %2$s) { %2$s.%3$s(%4$s); }\n",
+                tabs, // 1
+                FIELD_PENDING_PERMISSION, // 2
+                METHOD_SHOW_RATIONALE, // 3
+                VAR_RATIONALE_ACK_LISTENER // 4
+        ));
 
         // End method.
         writer.write(tabs + "}\n\n");
+        writtenMethods++;
     }
 
     private void writeShowDefaultRationaleHelperMethods(
@@ -663,97 +1185,384 @@ public class AspectGenerator {
                     + "%1$s\t%5$s(new %6$s(%7$s.getString(%8$d), %7$s), %4$s);\n"
                     + "%1$s}\n\n",
 
-                    tabs, // 1
-                    rationaleCallbackName, // 2
-                    ON_RATIONALE_ACKNOWLEDGED_LISTENER, // 3
-                    VAR_RATIONALE_ACK_LISTENER, // 4
-                    METHOD_SHOW_DEFAULT_RATIONALE_DIALOG, // 5
-                    RATIONALE, // 6
-                    isActivityClass(classElement) ? "this" : METHOD_GET_ACTIVITY + "()", // 7
-                    callbackSet.permissionGrantedCallback.getAnnotation(NeedsPermission.class) // 8
-                            .rationaleResourceId()
-            ));
+                    tabs, // 1
+                    rationaleCallbackName, // 2
+                    ON_RATIONALE_ACKNOWLEDGED_LISTENER, // 3
+                    VAR_RATIONALE_ACK_LISTENER, // 4
+                    METHOD_SHOW_DEFAULT_RATIONALE_DIALOG, // 5
+                    RATIONALE, // 6
+                    isActivityClass(classElement) ? "this" : METHOD_GET_ACTIVITY + "()", // 7
+                    callbackSet.permissionGrantedCallback.getAnnotation(NeedsPermission.class) // 8
+                            .rationaleResourceId()
+            ));
+            writtenMethods++;
+        }
+    }
+
+    private void writeShowDefaultRationaleDialog(Element classElement, Writer writer, String tabs)
+            throws IOException {
+
+        // The dialog hands the listener back to this instance when acknowledged.
+        writer.write(format("%1$sprotected void %2$s(%3$s %4$s, %5$s %6$s) {\n"
+                + "%1$s\t%10$s = %8$s.%9$s(%7$s, %4$s, %6$s, this);\n"
+                + "%1$s\t%10$s.show();\n"
+                + "%1$s}\n\n",
+
+                tabs, // 1
+                METHOD_SHOW_DEFAULT_RATIONALE_DIALOG, // 2
+                RATIONALE, // 3
+                "rationale", // 4
+                ON_RATIONALE_ACKNOWLEDGED_LISTENER, // 5
+                VAR_RATIONALE_ACK_LISTENER, // 6
+                isActivityClass(classElement) ? "this" : METHOD_GET_ACTIVITY + "()", // 7
+                GROUND_CONTROL, // 8
+                METHOD_CREATE_RATIONALE_DIALOG, // 9
+                FIELD_RATIONALE_DIALOG // 10
+        ));
+        writtenMethods++;
+    }
+
+    private void writeCanHandleRequest(AnnotatedClass annotatedClass,
+            Writer writer,
+            String tabs) throws IOException {
+
+        // Request codes are allocated as a single dense range for the whole hierarchy.
+        String varRequestCode = "requestCode";
+        writer.write(format(Locale.ENGLISH, "%1$sprivate static boolean %2$s(int %3$s) {\n"
+                + "%1$s\treturn %4$d <= %3$s && %3$s <= %5$d;\n"
+                + "%1$s}\n\n",
+
+                tabs, // 1
+                METHOD_CAN_HANDLE_REQUEST, // 2
+                varRequestCode, // 3
+                annotatedClass.firstRequestCode, // 4
+                annotatedClass.lastRequestCode // 5
+        ));
+        writtenMethods++;
+    }
+
+    private void writeOnCreatePermissionsMethods(AnnotatedClass annotatedClass,
+            Writer writer,
+            String tabs) throws IOException {
+
+        final boolean requestsOnCreate = annotatedClass.requestsOnCreate();
+
+        // Classes not requesting permissions on creation, or whose ancestors already
+        // request the same permissions, inherit the implementation.
+        if (!annotatedClass.isRoot()
+                && (!requestsOnCreate || (annotatedClass.parent.requestsOnCreate()
+                        && annotatedClass.getOnCreatePermissions()
+                                .equals(annotatedClass.parent.getOnCreatePermissions())))) {
+            return;
+        }
+
+        writer.write(format("%1$s%2$sprotected String[] %3$s() { return %4$s; }\n\n",
+                tabs, // 1
+                annotatedClass.isRoot() ? "" : "@Override ", // 2
+                METHOD_ON_CREATE_PERMISSIONS, // 3
+                !requestsOnCreate // 4
+                        ? "null"
+                        : format("new String[] {%s}",
+                                join(annotatedClass.getOnCreatePermissions(), ", ",
+                                        permission -> format("\"%s\"", permission)))
+        ));
+        writtenMethods++;
+
+        if (!annotatedClass.isRoot()) {
+            return;
+        }
+
+        // Permissions needing a rationale are left to the annotated methods,
+        // which show the rationale before requesting them, as are permanently denied ones.
+        // No callback is pending for this request, so its result is simply consumed.
+        writer.write(format(Locale.ENGLISH, "%1$sprivate void %2$s() {\n"
+                + "%1$s\tfinal String[] %4$s = %3$s();\n"
+                + "%1$s\tif (null == %4$s) { return; }\n\n"
+                + "%1$s\tfinal %5$s %6$s = %7$s.%8$s(%9$s, %4$s);\n"
+                + "%1$s\tif (%6$s.isGranted() || %6$s.shouldShowRationale()\n"
+                + "%1$s\t\t\t|| %6$s.isPermanentlyDenied()) { return; }\n\n"
+                + "%1$s\t%10$s = %11$d;\n"
+                + "%1$s\t%7$s.%12$s(this, %6$s.%13$s, %11$d);\n"
+                + "%1$s}\n\n",
+
+                tabs, // 1
+                METHOD_REQUEST_ON_CREATE_PERMISSIONS, // 2
+                METHOD_ON_CREATE_PERMISSIONS, // 3
+                VAR_PERMISSIONS_ARRAY, // 4
+                PERMISSION_SNAPSHOT, // 5
+                VAR_PERMISSION_SNAPSHOT, // 6
+                GROUND_CONTROL, // 7
+                METHOD_EVALUATE_PERMISSIONS, // 8
+                isActivityClass(annotatedClass.classElement) // 9
+                        ? "this"
+                        : METHOD_GET_ACTIVITY + "()",
+                FIELD_CURRENT_REQUEST_CODE, // 10
+                annotatedClass.onCreateRequestCode, // 11
+                METHOD_REQUEST_PERMISSIONS, // 12
+                FIELD_MISSING_PERMISSIONS // 13
+        ));
+        writtenMethods++;
+    }
+
+    private void writeAdviceFor(AnnotatedClass annotatedClass,
+            GroupedAnnotatedMethodSet callbackSet,
+            Writer writer,
+            String tabs) throws IOException {
+
+        ExecutableElement grantedCallback = callbackSet.permissionGrantedCallback;
+        if (null == grantedCallback) {
+            return;
+        }
+
+        final String targetInstanceType = grantedCallback.getEnclosingElement().asType().toString();
+        final String parameterList = stringifyParameters(grantedCallback);
+        final String permissionCallbackClass = getCallbackClassNameFor(grantedCallback);
+
+        final List<? extends VariableElement> paramElements
+                = ((ExecutableElement) grantedCallback).getParameters();
+        final String methodArgs = join(paramElements, ", ",
+                elem -> elem.getSimpleName().toString());
+
+        final String joinPoint = generateJoinPoint(grantedCallback)
+                + generateElidedCallers(grantedCallback);
+
+        if (callbackSet.isCheckOnly()) {
+            writeCheckOnlyAdviceFor(callbackSet, joinPoint, writer, tabs);
+            return;
+        }
+
+        final Set<String> permissionsSet = getPermissionsSet(grantedCallback);
+
+        // When advising calls, the permission callback invokes the method without
+        // going through the advice again. An advised execution cannot be bypassed,
+        // but permissions are granted by then, so the advice simply proceeds.
+        final String bindTarget = adviseExecution
+                ? format("this(%s)", VAR_TARGET_INSTANCE)
+                : format("target(%1$s) && !within(%2$s)",
+                        VAR_TARGET_INSTANCE, permissionCallbackClass);
+
+        // Advice around calls to, or execution of, the annotated method.
+        writer.write(format("%1$svoid around(final %2$s %3$s%6$s%5$s):\n"
+                + "%1$s\t%4$s && args(%7$s) && %14$s {\n\n"
+
+                // Evaluate the permissions once, for both checking and requesting them.
+                + "%1$s\tfinal %15$s %11$s = %13$s.%16$s(%3$s%10$s,\n"
+                + "%1$s\t\t\tnew String[] {%12$s});\n"
+
+                // If the permissions were already granted,
+                // proceed with the method execution.
+                + "%1$s\tif (%11$s.isGranted()) {\n"
+                + "%1$s\t\tproceed(%3$s%6$s%7$s);\n"
+                + "%1$s\t\treturn;\n"
+                + "%1$s\t}\n\n"
+
+                // Request permissions through the permission callback handler, so the
+                // advice only refers to public members and is always inlined by ajc.
+                + "%1$s\tnew %9$s(%3$s%6$s%7$s).%8$s(%11$s);\n"
+
+                + "%1$s}\n\n",
+
+                tabs, // 1
+                targetInstanceType, // 2
+                VAR_TARGET_INSTANCE, // 3
+                joinPoint, // 4
+                parameterList, // 5
+                paramElements.isEmpty() ? "" : ", ", // 6
+                methodArgs, // 7
+                METHOD_REQUEST, // 8
+                permissionCallbackClass, // 9
+                isActivityClass(grantedCallback.getEnclosingElement()) // 10
+                        ? ""
+                        : "." + METHOD_GET_ACTIVITY + "()",
+                VAR_PERMISSION_SNAPSHOT, // 11
+                join(permissionsSet, ", ", permission -> format("\"%s\"", permission)), // 12
+                GROUND_CONTROL, // 13
+                bindTarget, // 14
+                PERMISSION_SNAPSHOT, // 15
+                METHOD_EVALUATE_PERMISSIONS // 16
+        ));
+        writtenMethods++;
+
+        // Permission callback handler implementation for this method.
+        writePermissionCallback(annotatedClass, callbackSet, writer, tabs);
+    }
+
+    private void writeCheckOnlyAdviceFor(GroupedAnnotatedMethodSet callbackSet,
+            String joinPoint,
+            Writer writer,
+            String tabs) throws IOException {
+
+        final ExecutableElement grantedCallback = callbackSet.permissionGrantedCallback;
+        final Element classElement = grantedCallback.getEnclosingElement();
+        final String targetInstanceType = classElement.asType().toString();
+        final String permissionCheckClass = getPermissionCheckClassNameFor(grantedCallback);
+
+        final List<? extends VariableElement> paramElements = grantedCallback.getParameters();
+        final String methodArgs = join(paramElements, ", ",
+                elem -> elem.getSimpleName().toString());
+
+        // Advice around calls to, or execution of, the annotated method. The user is never
+        // prompted, so there's no callback which could invoke the method again.
+        writer.write(format("%1$svoid around(final %2$s %3$s%6$s%5$s):\n"
+                + "%1$s\t%4$s && args(%7$s) && %8$s(%3$s) {\n\n"
+                + "%1$s\tif (%9$s.%10$s(%3$s)) {\n"
+                + "%1$s\t\tproceed(%3$s%6$s%7$s);\n"
+                + "%1$s\t\treturn;\n"
+                + "%1$s\t}\n\n"
+                + "%1$s\t%9$s.%11$s(%3$s);\n"
+                + "%1$s}\n\n",
+
+                tabs, // 1
+                targetInstanceType, // 2
+                VAR_TARGET_INSTANCE, // 3
+                joinPoint, // 4
+                stringifyParameters(grantedCallback), // 5
+                paramElements.isEmpty() ? "" : ", ", // 6
+                methodArgs, // 7
+                adviseExecution ? "this" : "target", // 8
+                permissionCheckClass, // 9
+                METHOD_IS_GRANTED, // 10
+                METHOD_DENY // 11
+        ));
+        writtenMethods++;
+
+        // Helper class checking the permissions and invoking the denied callback, so the
+        // advice only refers to public members and is always inlined by ajc.
+        // Permissions are only revoked by killing the app process, so granted permissions
+        // are cached for the lifetime of the process.
+        final String contextAccessor = isContextClass(classElement)
+                ? VAR_TARGET_INSTANCE
+                : format("%1$s.%2$s()", VAR_TARGET_INSTANCE, METHOD_GET_CONTEXT);
+
+        writer.write(format("%1$spublic static class %2$s {\n\n"
+                + "%1$s\tprivate static final String[] %3$s = {%4$s};\n\n"
+                + "%1$s\tpublic static boolean %5$s(%6$s %7$s) {\n"
+                + "%1$s\t\tfinal %8$s context = %9$s;\n"
+                + "%1$s\t\treturn null != context && %10$s.%11$s(context, %3$s);\n"
+                + "%1$s\t}\n\n"
+                + "%1$s\tpublic static void %12$s(%6$s %7$s) { %13$s }\n"
+                + "%1$s}\n\n",
+
+                tabs, // 1
+                permissionCheckClass, // 2
+                FIELD_CHECKED_PERMISSIONS, // 3
+                join(getPermissionsSet(grantedCallback), ", ", // 4
+                        permission -> format("\"%s\"", permission)),
+                METHOD_IS_GRANTED, // 5
+                targetInstanceType, // 6
+                VAR_TARGET_INSTANCE, // 7
+                CONTEXT, // 8
+                contextAccessor, // 9
+                GROUND_CONTROL, // 10
+                METHOD_HAS_CACHED_PERMISSIONS, // 11
+                METHOD_DENY, // 12
+                null == callbackSet.permissionDeniedCallback // 13
+                        ? ""
+                        : format("%1$s.%2$s();", VAR_TARGET_INSTANCE,
+                                callbackSet.permissionDeniedCallback.getSimpleName())
+        ));
+        writtenInnerClasses++;
+        writtenMethods += 2;
+    }
+
+    /**
+     * Generate the pointcut matching the calls to, or the execution of, the specified method.
+     */
+    private String generateJoinPoint(ExecutableElement grantedCallback) {
+
+        // Execution join points are woven once into the annotated method,
+        // rather than at every call site.
+        if (adviseExecution) {
+            return generateSignaturePointcut(grantedCallback, "execution");
         }
+
+        return generateSignaturePointcut(grantedCallback, "call")
+                + generateCallSiteScope(grantedCallback);
     }
 
-    private void writeShowDefaultRationaleDialog(Element classElement, Writer writer, String tabs)
-            throws IOException {
+    /**
+     * Generate the pointcut restricting the calls to the specified method to those made
+     * within the classes of the compilation known to call it. Unlike the signature and
+     * bindings of the call, which ajc matches against every join point, {@code within}
+     * lets ajc reject all other classes up front.
+     *
+     * @return the pointcut, starting with the conjunction operator,
+     * or an empty string if calls are advised in all classes.
+     */
+    private String generateCallSiteScope(ExecutableElement grantedCallback) {
 
-        writer.write(format("%1$sprivate void %2$s(final %3$s %4$s,\n"
-                + "%1$s\t\tfinal %5$s %6$s) {\n"
+        if (null == callSiteScanner) {
+            return "";
+        }
 
-                + "%1$s\t%12$s = %8$s.%9$s(%7$s, %4$s,\n"
-                + "%1$s\t\tnew %10$s() {\n"
-                + "%1$s\t\t\t@Override public void onClick(%11$s dialog, int buttonId) {\n"
-                + "%1$s\t\t\t\t%6$s.%13$s(%14$s);\n"
-                + "%1$s\t\t\t}\n"
-                + "%1$s\t\t});\n"
-                + "%1$s\t%12$s.show();\n"
+        Set<String> callingClasses = callSiteScanner.getCallingClasses(grantedCallback);
 
-                + "%1$s}\n\n",
+        // A method that is never called still needs a valid pointcut, which matches nothing
+        // within its own class.
+        if (callingClasses.isEmpty()) {
+            callingClasses.add(((TypeElement) grantedCallback.getEnclosingElement())
+                    .getQualifiedName().toString());
+        }
 
-                tabs, // 1
-                METHOD_SHOW_DEFAULT_RATIONALE_DIALOG, // 2
-                RATIONALE, // 3
-                "rationale", // 4
-                ON_RATIONALE_ACKNOWLEDGED_LISTENER, // 5
-                VAR_RATIONALE_ACK_LISTENER, // 6
-                isActivityClass(classElement) ? "this" : METHOD_GET_ACTIVITY + "()", // 7
-                GROUND_CONTROL, // 8
-                METHOD_CREATE_RATIONALE_DIALOG, // 9
-                DIALOG_ONCLICK_LISTENER, // 10
-                DIALOG_INTERFACE, // 11
-                FIELD_RATIONALE_DIALOG, // 12
-                METHOD_ON_RATIONALE_ACKNOWLEDGED, // 13
-                getIntermediaryClassName(classElement) + ".this" // 14
-        ));
+        return format(" && within(%s)", join(callingClasses, " || "));
     }
 
-    private void writeCanHandleRequest(List<GroupedAnnotatedMethodSet> callbackSets,
-            Writer writer,
-            String tabs) throws IOException {
+    /**
+     * Generate the pointcut excluding calls to the specified method made from within
+     * methods annotated with NeedsPermission whose permissions include all of its own.
+     * Those methods only ever run once their permissions are granted, so checking again
+     * would only cost more permission lookups. Calls are matched statically by ajc,
+     * so nothing is evaluated at runtime.
+     *
+     * @return the pointcut, starting with the conjunction operator,
+     * or an empty string if there's no call which can skip the permission check.
+     */
+    private String generateElidedCallers(ExecutableElement grantedCallback) {
+
+        // An advised execution doesn't know its caller without tracking the control flow
+        // at runtime, which would cost more than the permission check itself.
+        // When call sites are scoped to the compilation, the callers themselves may be called
+        // from other compilations without their permissions being checked, so they can't
+        // vouch for the permissions of the methods they call.
+        if (adviseExecution || null != callSiteScanner) {
+            return "";
+        }
 
-        String varRequestCode = "requestCode";
-        writer.write(format("%1$sprivate static boolean %2$s(int %3$s) {\n"
-                + "%1$s\tswitch (%3$s) {\n"
-                + "%4$s\n"
-                + "%1$s\t}\n"
-                + "%1$s\treturn false;\n"
-                + "%1$s}\n\n",
+        final Set<String> permissionsSet = getPermissionsSet(grantedCallback);
+        final Element packageElement = elements.getPackageOf(grantedCallback);
 
-                tabs, // 1
-                METHOD_CAN_HANDLE_REQUEST, // 2
-                varRequestCode, // 3
-                join(callbackSets, "\n", // 4
-                        set -> format(Locale.US, "%1$s\t\tcase %2$d: return %3$b;",
-                                tabs, set.requestCode, null != set.permissionGrantedCallback))
-        ));
-    }
+        StringBuilder elidedCallers = new StringBuilder();
+        for (ExecutableElement caller : gatedMethods) {
 
-    private void writeAdviceFor(GroupedAnnotatedMethodSet callbackSet,
-            Writer writer,
-            String tabs) throws IOException {
+            // The aspect must be able to refer to the caller's class.
+            if (!getPermissionsSet(caller).containsAll(permissionsSet)
+                    || !isAccessibleFrom(caller.getEnclosingElement(), packageElement)) {
+                continue;
+            }
 
-        ExecutableElement grantedCallback = callbackSet.permissionGrantedCallback;
-        if (null == grantedCallback) {
-            return;
+            elidedCallers.append(format(" && !%s",
+                    generateSignaturePointcut(caller, "withincode")));
         }
 
-        final String targetInstanceType = grantedCallback.getEnclosingElement().asType().toString();
-        final String methodName = grantedCallback.getSimpleName().toString();
-        final String parameterList = stringifyParameters(grantedCallback);
-        final String permissionCallbackClass = getCallbackClassNameFor(grantedCallback);
+        return elidedCallers.toString();
+    }
 
-        final List<? extends VariableElement> paramElements
-                = ((ExecutableElement) grantedCallback).getParameters();
-        final String methodArgs = join(paramElements, ", ",
-                elem -> elem.getSimpleName().toString());
+    /**
+     * Generate the pointcut of the specified kind (e.g. call) matching the signature
+     * of the specified method.
+     */
+    private String generateSignaturePointcut(ExecutableElement method, String joinPointKind) {
+
+        final String targetInstanceType = method.getEnclosingElement().asType().toString();
+        final String methodName = method.getSimpleName().toString();
+        final List<? extends VariableElement> paramElements = method.getParameters();
 
         // Join point definition.
-        String joinPoint = format("call(void %1$s.%2$s(%3$s))",
+        String joinPoint = format("%4$s(void %1$s.%2$s(%3$s))",
                 targetInstanceType, // 1
                 methodName, // 2
-                join(paramElements, ", ", elem -> elem.asType().toString()) // 3
+                join(paramElements, ", ", elem -> elem.asType().toString()), // 3
+                joinPointKind // 4
         );
 
         // If the last parameter is a varargs (e.g. String...), it will need to be
@@ -763,69 +1572,23 @@ public class AspectGenerator {
                 : paramElements.get(paramElements.size() - 1);
         if (null != lastParam && ARRAY == lastParam.asType().getKind()) {
             joinPoint = format(
-                    "(%1$s || call(void %2$s.%3$s(%4$s, %5$s...)))",
+                    "(%1$s || %6$s(void %2$s.%3$s(%4$s%5$s...)))",
                     joinPoint, // 1
                     targetInstanceType, // 2
                     methodName, // 3
                     join(paramElements.subList(0, paramElements.size() - 1), // 4
-                            ", ",
-                            param -> param.asType().toString()),
-                    ((ArrayType) lastParam.asType()).getComponentType() // 5
+                            "",
+                            param -> param.asType() + ", "),
+                    ((ArrayType) lastParam.asType()).getComponentType(), // 5
+                    joinPointKind // 6
             );
         }
 
-        final Set<String> permissionsSet = getPermissionsSet(grantedCallback);
-
-        // Advice around calls to the annotated method.
-        writer.write(format("%1$svoid around(final %2$s %3$s%6$s%5$s):\n"
-                + "%1$s\t%4$s && args(%7$s) && target(%3$s) "
-                + "&& !within(%9$s) {\n\n"
-
-                // Permissions array as a local variable.
-                + "%1$s\tfinal String[] %11$s = new String[] {%12$s};\n"
-
-                // If the permissions were already granted,
-                // proceed with the method execution.
-                + "%1$s\tif (%13$s.hasPermissions(%3$s%10$s, %11$s)) {\n"
-                + "%1$s\t\tproceed(%3$s%6$s%7$s);\n"
-                + "%1$s\t\treturn;\n"
-                + "%1$s\t}\n\n"
-
-                // Set the pending permission callback handler.
-                + "%1$s\t%3$s.%8$s = new %9$s(%3$s%6$s%7$s);\n"
-
-                // Set request code.
-                + "%1$s\t%3$s.%14$s = %15$d;\n\n"
-
-                // Handle showing of rationale, if applicable.
-                + generateRationaleCode(callbackSet, tabs + "\t")
-
-                + "%1$s}\n\n",
-
-                tabs, // 1
-                targetInstanceType, // 2
-                VAR_TARGET_INSTANCE, // 3
-                joinPoint, // 4
-                parameterList, // 5
-                paramElements.isEmpty() ? "" : ", ", // 6
-                methodArgs, // 7
-                FIELD_PENDING_PERMISSION, // 8
-                permissionCallbackClass, // 9
-                isActivityClass(grantedCallback.getEnclosingElement()) // 10
-                        ? ""
-                        : "." + METHOD_GET_ACTIVITY + "()",
-                VAR_PERMISSIONS_ARRAY, // 11
-                join(permissionsSet, ", ", permission -> format("\"%s\"", permission)), // 12
-                GROUND_CONTROL, // 13
-                FIELD_CURRENT_REQUEST_CODE, // 14
-                callbackSet.requestCode // 15
-        ));
-
-        // Permission callback handler implementation for this method.
-        writePermissionCallback(callbackSet, writer, tabs);
+        return joinPoint;
     }
 
-    private void writePermissionCallback(GroupedAnnotatedMethodSet callbackSet,
+    private void writePermissionCallback(AnnotatedClass annotatedClass,
+            GroupedAnnotatedMethodSet callbackSet,
             Writer writer,
             String tabs)
             throws IOException {
@@ -835,13 +1598,28 @@ public class AspectGenerator {
         final Element classElement = grantedCallback.getEnclosingElement();
         final String intermediaryClassName = getIntermediaryClassName(classElement);
 
-        // Class declaration.
-        writer.write(format("%1$sstatic class %2$s implements %3$s {\n\n",
-                tabs, callbackClassName, INTERFACE_PERMISSION_CALLBACK));
-
-        // Reference back to class instance as the intermediary type.
-        writer.write(format("%1$s\tprivate %2$s %3$s;\n",
-                tabs, intermediaryClassName, VAR_TARGET_INSTANCE));
+        // The callback interface and the intermediary class holding the pending permission
+        // are declared in the aspect of the class at the root of the hierarchy.
+        final Element rootClassElement = annotatedClass.root.classElement;
+        final String callbackInterfaceName = annotatedClass.isRoot()
+                ? INTERFACE_PERMISSION_CALLBACK
+                : format("%s.%s", getQualifiedAspectName(rootClassElement),
+                        INTERFACE_PERMISSION_CALLBACK);
+        final String rootIntermediaryClassName = annotatedClass.isRoot()
+                ? intermediaryClassName
+                : format("%s.%s", getQualifiedAspectName(rootClassElement),
+                        getIntermediaryClassName(rootClassElement));
+
+        // Class declaration. Public, as the advice instantiating it may be inlined
+        // into call sites in any package.
+        writer.write(format("%1$spublic static class %2$s implements %3$s {\n\n",
+                tabs, callbackClassName, callbackInterfaceName));
+        writtenInnerClasses++;
+
+        // Weak reference back to class instance as the intermediary type, so a callback
+        // retained beyond the life of the activity or fragment doesn't keep it reachable.
+        writer.write(format("%1$s\tprivate %2$s<%3$s> %4$s;\n",
+                tabs, WEAK_REFERENCE, intermediaryClassName, VAR_TARGET_REFERENCE));
 
         // Cached parameters as fields.
         final List<? extends VariableElement> parameters = grantedCallback.getParameters();
@@ -864,47 +1642,107 @@ public class AspectGenerator {
         ));
 
         // Initialize fields.
-        writer.write(format("%1$s\t\tthis.%2$s = %2$s;\n", tabs, VAR_TARGET_INSTANCE));
+        writer.write(format("%1$s\t\tthis.%2$s = new %3$s<%4$s>(%5$s);\n",
+                tabs, // 1
+                VAR_TARGET_REFERENCE, // 2
+                WEAK_REFERENCE, // 3
+                intermediaryClassName, // 4
+                VAR_TARGET_INSTANCE // 5
+        ));
         for (VariableElement param : parameters) {
             writer.write(format("%1$s\t\tthis.%2$s = %2$s;\n", tabs, param.getSimpleName()));
         }
 
         // End constructor.
         writer.write(format("%1$s\t}\n\n", tabs));
+        writtenMethods++;
+
+        // Request permissions, showing the rationale first if applicable.
+        writer.write(format(Locale.ENGLISH,
+                "%1$s\tpublic void %2$s(final %8$s %3$s) {\n"
+                + "%1$s\t\tfinal %9$s %4$s = %10$s.get();\n"
+                + "%1$s\t\tif (null == %4$s) { return; }\n\n"
+
+                // The platform would deny the request without asking the user.
+                + "%1$s\t\tif (%3$s.isPermanentlyDenied()) {\n"
+                + "%1$s\t\t\t%11$s();\n"
+                + "%1$s\t\t\treturn;\n"
+                + "%1$s\t\t}\n\n"
+
+                + "%1$s\t\t%4$s.%5$s = this;\n"
+                + "%1$s\t\t%4$s.%6$s = %7$d;\n\n"
+                + generateRationaleCode(callbackSet, tabs + "\t\t")
+                + "%1$s\t}\n\n",
+
+                tabs, // 1
+                METHOD_REQUEST, // 2
+                VAR_PERMISSION_SNAPSHOT, // 3
+                VAR_TARGET_INSTANCE, // 4
+                FIELD_PENDING_PERMISSION, // 5
+                FIELD_CURRENT_REQUEST_CODE, // 6
+                callbackSet.requestCode, // 7
+                PERMISSION_SNAPSHOT, // 8
+                intermediaryClassName, // 9
+                VAR_TARGET_REFERENCE, // 10
+                METHOD_DENY // 11
+        ));
+        writtenMethods++;
 
         // Implementation of getRequestCode.
         writer.write(format(Locale.ENGLISH,
                 "%1$s\t@Override public int %2$s() { return %3$d; }\n\n",
                 tabs, METHOD_GET_REQUEST_CODE, callbackSet.requestCode));
+        writtenMethods++;
 
         // Implementation of grant.
-        writer.write(format("%1$s\t@Override public void %2$s() { %3$s.%4$s(%5$s); }\n\n",
+        writer.write(format("%1$s\t@Override public void %2$s() { %3$s }\n\n",
                 tabs, METHOD_GRANT,
-                VAR_TARGET_INSTANCE,
-                grantedCallback.getSimpleName(),
-                join(parameters, ", ", param -> param.getSimpleName().toString())));
+                generateTargetInvocation(intermediaryClassName,
+                        grantedCallback.getSimpleName().toString(),
+                        join(parameters, ", ", param -> param.getSimpleName().toString()))));
+        writtenMethods++;
 
         // Implementation of deny.
         String callbackInvocation = null == callbackSet.permissionDeniedCallback
                 ? ""
-                : format("%1$s.%2$s();",
-                        VAR_TARGET_INSTANCE,
-                        callbackSet.permissionDeniedCallback.getSimpleName());
+                : generateTargetInvocation(intermediaryClassName,
+                        callbackSet.permissionDeniedCallback.getSimpleName().toString(), "");
 
         writer.write(format("%1$s\t@Override public void %2$s() { %3$s }\n\n",
                 tabs, METHOD_DENY, callbackInvocation));
+        writtenMethods++;
 
         // Setter for target instance (class containing annotated methods).
         writer.write(format(
-                "%1$s\t@Override public void %4$s(%2$s %3$s) {\n"
-                + "%1$s\t\tthis.%3$s = %3$s;\n"
+                "%1$s\t@Override public void %3$s(%4$s %2$s) {\n"
+                + "%1$s\t\tthis.%6$s = new %7$s<%8$s>(%5$s%2$s);\n"
                 + "%1$s\t}\n\n",
 
                 tabs, // 1
-                intermediaryClassName, // 2
-                VAR_TARGET_INSTANCE, // 3
-                METHOD_SET_TARGET_INSTANCE // 4
+                VAR_TARGET_INSTANCE, // 2
+                METHOD_SET_TARGET_INSTANCE, // 3
+                rootIntermediaryClassName, // 4
+                annotatedClass.isRoot() ? "" : format("(%s) ", intermediaryClassName), // 5
+                VAR_TARGET_REFERENCE, // 6
+                WEAK_REFERENCE, // 7
+                intermediaryClassName // 8
         ));
+        writtenMethods++;
+
+        // Implementation of showRationale, for showing the rationale again upon restarts.
+        if (annotatedClass.root.hierarchyFeatures.restartsRationales) {
+            writer.write(format("%1$s\t@Override public void %2$s(%3$s %4$s) { %5$s }\n\n",
+                    tabs, // 1
+                    METHOD_SHOW_RATIONALE, // 2
+                    ON_RATIONALE_ACKNOWLEDGED_LISTENER, // 3
+                    VAR_RATIONALE_ACK_LISTENER, // 4
+                    !callbackSet.restartsRationale() ? "" : generateTargetInvocation(
+                            intermediaryClassName,
+                            callbackSet.getShowRationaleMethodName(),
+                            VAR_RATIONALE_ACK_LISTENER)
+            ));
+            writtenMethods++;
+        }
 
         // Parcelable methods and Creator instance.
         writeParcelableImplementation(grantedCallback, callbackClassName, writer, tabs + "\t");
@@ -913,6 +1751,23 @@ public class AspectGenerator {
         writer.write(format("%1$s}\n\n", tabs));
     }
 
+    /**
+     * Generate code invoking the specified method on the target instance of a permission
+     * callback, if the target instance has not been garbage collected.
+     */
+    private String generateTargetInvocation(String intermediaryClassName,
+            String methodName,
+            String args) {
+
+        return format("final %1$s %2$s = %3$s.get(); if (null != %2$s) { %2$s.%4$s(%5$s); }",
+                intermediaryClassName, // 1
+                VAR_TARGET_INSTANCE, // 2
+                VAR_TARGET_REFERENCE, // 3
+                methodName, // 4
+                args // 5
+        );
+    }
+
     private void writeParcelableImplementation(ExecutableElement grantedCallback,
             String permissionCallbackClassName,
             Writer writer,
@@ -923,6 +1778,7 @@ public class AspectGenerator {
 
         // Parcelable method, describeContents.
         writer.write(tabs + "@Override public int describeContents() { return 0; }\n\n");
+        writtenMethods++;
 
         // Parcelable method, writeToParcel.
         final String varDestination = "dest";
@@ -985,6 +1841,7 @@ public class AspectGenerator {
 
         // End writeToParcel.
         writer.write(tabs + "}\n\n");
+        writtenMethods++;
 
         // Creator instance.
 
@@ -1048,6 +1905,10 @@ public class AspectGenerator {
                 varSource, // 5
                 constructorArgs.isEmpty() ? "" : ", " + join(constructorArgs, ", ") // 6
         ));
+
+        // Anonymous creator class, with its two methods.
+        writtenInnerClasses++;
+        writtenMethods += 2;
     }
 
     /**
@@ -1123,24 +1984,17 @@ public class AspectGenerator {
 
     private String generateRationaleCode(GroupedAnnotatedMethodSet callbackSet, String tabs) {
 
-        ExecutableElement grantedCallback = callbackSet.permissionGrantedCallback;
-        final Element classElement = grantedCallback.getEnclosingElement();
-
-        final String activity = VAR_TARGET_INSTANCE
-                + (isActivityClass(classElement)
-                ? ""
-                : "." + METHOD_GET_ACTIVITY + "()");
+        // Only request the permissions found missing when evaluating them.
+        final String missingPermissions = VAR_PERMISSION_SNAPSHOT + "." + FIELD_MISSING_PERMISSIONS;
 
         String requestPermissionsLine = format(Locale.ENGLISH,
-                "%1$s.%2$s(%3$s.%4$s(%5$s, %6$s), %7$d);\n",
+                "%5$s.%2$s(%1$s, %3$s, %4$d);\n",
 
                 VAR_TARGET_INSTANCE, // 1
                 METHOD_REQUEST_PERMISSIONS, // 2
-                GROUND_CONTROL, // 3
-                METHOD_FILTER_GRANTED_PERMISSIONS, // 4
-                activity, // 5
-                VAR_PERMISSIONS_ARRAY, // 6
-                callbackSet.requestCode // 7
+                missingPermissions, // 3
+                callbackSet.requestCode, // 4
+                GROUND_CONTROL // 5
         );
 
         final String rationaleMethodName = callbackSet.getShowRationaleMethodName();
@@ -1149,44 +2003,50 @@ public class AspectGenerator {
             return tabs + requestPermissionsLine;
         }
 
+        // Permissions for the displayed rationale are only tracked if the rationale
+        // needs to be shown again upon restarts.
+        final boolean restartsRationale = callbackSet.restartsRationale();
+
         return format(
                 // If rationale shouldn't be shown, proceed with requesting permissions.
-                "%1$sif (!%2$s.shouldShowRationale(%3$s, %4$s)) {\n"
-                + "%1$s\t%5$s"
+                "%1$sif (!%2$s.shouldShowRationale()) {\n"
+                + "%1$s\t%4$s"
                 + "%1$s\treturn;\n"
                 + "%1$s}\n\n"
 
-                // Initialize rationale acknowledgement listener.
-                + "%1$s%6$s %7$s = new %6$s(%4$s, %12$d) {\n"
-                + "%1$s\t@Override public void %8$s(%13$s %9$s) {\n"
-                + "%1$s\t\t%5$s"
-                + "%1$s\t\t((%14$s) %9$s).%11$s = null;\n"
-                + "%1$s\t}\n"
-                + "%1$s};\n"
+                // Initialize rationale acknowledgement listener, which hands the permissions
+                // it was created with back to the target instance, which requests them.
+                + "%1$s%6$s %7$s = new %6$s(%3$s, %10$d);\n"
 
                 // Save permissions for rationale.
-                + "%1$s%9$s.%11$s = %4$s;\n"
+                + (!restartsRationale ? "" : "%1$s%8$s.%9$s = %3$s;\n")
 
                 // Show rationale.
-                + "%1$s%9$s.%10$s(%7$s);\n",
+                + "%1$s%8$s.%5$s(%7$s);\n",
 
                 tabs, // 1
-                GROUND_CONTROL, // 2
-                activity, // 3
-                VAR_PERMISSIONS_ARRAY, // 4
-                requestPermissionsLine, // 5
+                VAR_PERMISSION_SNAPSHOT, // 2
+                missingPermissions, // 3
+                requestPermissionsLine, // 4
+                rationaleMethodName, // 5
                 ON_RATIONALE_ACKNOWLEDGED_LISTENER, // 6
                 VAR_RATIONALE_ACK_LISTENER, // 7
-                METHOD_ON_RATIONALE_ACKNOWLEDGED, // 8
-                VAR_TARGET_INSTANCE, // 9
-                rationaleMethodName, // 10
-                FIELD_RATIONALE_PERMISSIONS, // 11
-                callbackSet.requestCode, // 12
-                getTopLevelType(classElement), // 13
-                classElement.asType() // 14
+                VAR_TARGET_INSTANCE, // 8
+                FIELD_RATIONALE_PERMISSIONS, // 9
+                callbackSet.requestCode // 10
         );
     }
 
+    private String getAspectName(Element classElement) {
+        return classElement.getSimpleName() + "GroundControlAspect";
+    }
+
+    private String getQualifiedAspectName(Element classElement) {
+        return format("%s.%s",
+                elements.getPackageOf(classElement).getQualifiedName(),
+                getAspectName(classElement));
+    }
+
     private String getIntermediaryClassName(Element classElement) {
         Element parentClass = getParentClass(classElement, types);
         return format("GroundControlled%s",
@@ -1202,6 +2062,33 @@ public class AspectGenerator {
                 INTERFACE_PERMISSION_CALLBACK);
     }
 
+    private String getPermissionCheckClassNameFor(Element methodElement) {
+        final String methodName = methodElement.getSimpleName().toString();
+
+        return format("%s%s%s",
+                Character.toUpperCase(methodName.charAt(0)),
+                methodName.substring(1),
+                CLASS_PERMISSION_CHECK);
+    }
+
+    private boolean isAccessibleFrom(Element classElement, Element packageElement) {
+
+        if (packageElement.equals(elements.getPackageOf(classElement))) {
+            return true;
+        }
+
+        for (Element element = classElement;
+                PACKAGE != element.getKind();
+                element = element.getEnclosingElement()) {
+
+            if (!element.getModifiers().contains(PUBLIC)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     private HashSet<String> getPermissionsSet(ExecutableElement method) {
         NeedsPermission permissionAnnotation = method.getAnnotation(NeedsPermission.class);
         return new HashSet<>(Arrays.asList(permissionAnnotation.value()));
@@ -1235,6 +2122,78 @@ public class AspectGenerator {
         return types.isAssignable(classElement.asType(), activityType);
     }
 
+    private boolean isContextClass(Element classElement) {
+        TypeMirror contextType = elements.getTypeElement(CONTEXT).asType();
+        return types.isAssignable(classElement.asType(), contextType);
+    }
+
+    /**
+     * Whether all methods of the specified class annotated with {@link NeedsPermission}
+     * only check their permissions, without ever prompting the user.
+     *
+     * @return {@code true} if the class has check-only methods, and no other methods
+     * annotated with {@link NeedsPermission}.
+     */
+    private boolean isCheckOnlyClass(Element classElement) {
+
+        boolean hasCheckOnlyMethods = false;
+
+        for (Element element : classElement.getEnclosedElements()) {
+
+            NeedsPermission annotation = element.getAnnotation(NeedsPermission.class);
+            if (METHOD != element.getKind() || null == annotation) {
+                continue;
+            }
+
+            if (!annotation.checkOnly()) {
+                return false;
+            }
+            hasCheckOnlyMethods = true;
+        }
+
+        return hasCheckOnlyMethods;
+    }
+
+    private boolean isValidCheckOnlyClass(Element classElement) {
+
+        if (isContextClass(classElement)) {
+            return true;
+        }
+
+        // Find an accessible, parameterless getContext method returning a Context.
+        final TypeMirror contextType = elements.getTypeElement(CONTEXT).asType();
+        final Element packageElement = elements.getPackageOf(classElement);
+
+        for (Element member : elements.getAllMembers((TypeElement) classElement)) {
+
+            if (METHOD != member.getKind()
+                    || !METHOD_GET_CONTEXT.equals(member.getSimpleName().toString())) {
+                continue;
+            }
+
+            final ExecutableElement method = (ExecutableElement) member;
+            final Set<Modifier> modifiers = method.getModifiers();
+
+            if (method.getParameters().isEmpty()
+                    && !modifiers.contains(STATIC)
+                    && !modifiers.contains(PRIVATE)
+                    && types.isAssignable(method.getReturnType(), contextType)
+                    && (modifiers.contains(PUBLIC)
+                            || packageElement.equals(elements.getPackageOf(method)))) {
+
+                return true;
+            }
+        }
+
+        printClassValidationError(classElement,
+                format("only checking permissions must be a %1$s, or have or inherit an "
+                                + "accessible method %2$s() returning a %1$s",
+                        CONTEXT, // 1
+                        METHOD_GET_CONTEXT // 2
+                ));
+        return false;
+    }
+
     private boolean isValidContainingClass(Element classElement) {
 
         boolean isValid = true;
@@ -1428,6 +2387,24 @@ public class AspectGenerator {
         }
     }
 
+    private void printRequestPermissionsOnCreateWarning(Element classElement) {
+
+        final RequestPermissionsOnCreate annotation
+                = classElement.getAnnotation(RequestPermissionsOnCreate.class);
+        if (null == annotation || !annotation.usageWarnings()) {
+            return;
+        }
+
+        messager.printMessage(WARNING,
+                format("@%1$s on class %2$s has no effect without any method annotated with "
+                                + "@%3$s prompting for permissions",
+                        RequestPermissionsOnCreate.class.getSimpleName(), // 1
+                        classElement.getSimpleName(), // 2
+                        NeedsPermission.class.getSimpleName() // 3
+                ),
+                classElement);
+    }
+
     /**
      * Display a warning about annotating an inherited method, if the specified method
      * overrides a parent implementation. Annotating an overridden method may cause
@@ -1492,7 +2469,7 @@ public class AspectGenerator {
 
     private List<GroupedAnnotatedMethodSet> findAllAnnotatedCallbacks(Element classElement) {
 
-        Map<Set<String>, List<GroupedAnnotatedMethodSet>> methodSetsMap = new HashMap<>();
+        Map<Set<String>, List<GroupedAnnotatedMethodSet>> methodSetsMap = new LinkedHashMap<>();
         NeedsPermission needsPermissionAnnotation;
         OnPermissionDenied onPermissionDeniedAnnotation;
         OnShowRationale onShowRationaleAnnotation;
@@ -1543,7 +2520,6 @@ public class AspectGenerator {
                 }
 
                 methodSet.permissions = needsPermissionAnnotation.value();
-                methodSet.requestCode = ++nextRequestCode;
                 methodSet.permissionGrantedCallback = (ExecutableElement) element;
 
                 checkRationaleConflict(methodSet);
@@ -1561,7 +2537,6 @@ public class AspectGenerator {
                 if (null == methodSets) {
                     methodSet = new GroupedAnnotatedMethodSet();
                     methodSet.permissions = onPermissionDeniedAnnotation.value();
-                    methodSet.requestCode = ++nextRequestCode;
                     methodSets = new ArrayList<>();
                     methodSets.add(methodSet);
                     methodSetsMap.put(permissions, methodSets);
@@ -1594,7 +2569,6 @@ public class AspectGenerator {
                 if (null == methodSets) {
                     methodSet = new GroupedAnnotatedMethodSet();
                     methodSet.permissions = onShowRationaleAnnotation.value();
-                    methodSet.requestCode = ++nextRequestCode;
                     methodSets = new ArrayList<>();
                     methodSets.add(methodSet);
                     methodSetsMap.put(permissions, methodSets);
@@ -1652,8 +2626,30 @@ public class AspectGenerator {
         public ExecutableElement rationaleCallback;
         public int requestCode;
 
+        /**
+         * @return {@code true} if this set has a {@link NeedsPermission} method which only
+         * checks its permissions, without ever prompting the user.
+         */
+        public boolean isCheckOnly() {
+            return null != permissionGrantedCallback
+                    && permissionGrantedCallback.getAnnotation(NeedsPermission.class).checkOnly();
+        }
+
+        /**
+         * @return {@code true} if this set has a {@link NeedsPermission} method which prompts
+         * the user for its permissions when needed.
+         */
+        public boolean isInteractive() {
+            return null != permissionGrantedCallback && !isCheckOnly();
+        }
+
         public String getShowRationaleMethodName() {
 
+            // Rationales are never shown for check-only methods.
+            if (isCheckOnly()) {
+                return null;
+            }
+
             if (null != rationaleCallback) {
                 return rationaleCallback.getSimpleName().toString();
             }
@@ -1663,6 +2659,19 @@ public class AspectGenerator {
                     : "__groundControlShowRationale_" + permissionGrantedCallback.getSimpleName();
         }
 
+        /**
+         * Whether the rationale for this set of callbacks needs to be shown again
+         * upon activity or fragment restarts, which requires the intermediary class to
+         * track the permissions of the currently displaying rationale.
+         *
+         * @return {@code true} if the rationale needs to be shown again upon restarts.
+         */
+        public boolean restartsRationale() {
+            return null != permissionGrantedCallback
+                    && null != getShowRationaleMethodName()
+                    && handleRestarts();
+        }
+
         public boolean handleRestarts() {
 
             if (usesDefaultRationale()) {
@@ -1686,7 +2695,7 @@ public class AspectGenerator {
 
         private boolean usesDefaultRationale() {
 
-            if (null == permissionGrantedCallback) {
+            if (!isInteractive()) {
                 return false;
             }
 
@@ -1694,4 +2703,158 @@ public class AspectGenerator {
                     .rationaleResourceId();
         }
     }
+
+    /**
+     * Data container for a class containing methods annotated with Ground Control annotations,
+     * and its position within a hierarchy of such classes.
+     */
+    private static class AnnotatedClass {
+
+        public final Element classElement;
+        public final Element packageElement;
+        public final List<GroupedAnnotatedMethodSet> callbackSets;
+        public final GeneratedFeatures features;
+
+        /** Closest descendants which also contain annotated methods. */
+        public final List<AnnotatedClass> subclasses = new ArrayList<>();
+
+        /** Closest ancestor which also contains annotated methods, if any. */
+        public AnnotatedClass parent;
+
+        /** Class at the root of the hierarchy, which holds the shared state. */
+        public AnnotatedClass root;
+
+        // The following are only set on the class at the root of the hierarchy.
+        public GeneratedFeatures hierarchyFeatures;
+        public int firstRequestCode;
+        public int lastRequestCode;
+        public int onCreateRequestCode;
+
+        public AnnotatedClass(Element classElement,
+                Element packageElement,
+                List<GroupedAnnotatedMethodSet> callbackSets) {
+
+            this.classElement = classElement;
+            this.packageElement = packageElement;
+            this.callbackSets = callbackSets;
+            this.features = new GeneratedFeatures(callbackSets);
+        }
+
+        public boolean isRoot() {
+            return this == root;
+        }
+
+        /**
+         * Whether this class, or any of its ancestors, is annotated with
+         * {@link RequestPermissionsOnCreate}.
+         *
+         * @return {@code true} if permissions are requested when this class is first created.
+         */
+        public boolean requestsOnCreate() {
+            return null != classElement.getAnnotation(RequestPermissionsOnCreate.class)
+                    || (null != parent && parent.requestsOnCreate());
+        }
+
+        public boolean hierarchyRequestsOnCreate() {
+
+            if (requestsOnCreate()) {
+                return true;
+            }
+
+            for (AnnotatedClass subclass : subclasses) {
+                if (subclass.hierarchyRequestsOnCreate()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * The union of permissions needed by the methods annotated with {@link NeedsPermission}
+         * in this class and its ancestors, in a stable order.
+         *
+         * @return permissions to request when this class is first created.
+         */
+        public Set<String> getOnCreatePermissions() {
+
+            final Set<String> permissions = null == parent
+                    ? new TreeSet<String>()
+                    : parent.getOnCreatePermissions();
+
+            for (GroupedAnnotatedMethodSet callbackSet : callbackSets) {
+                if (callbackSet.isInteractive()) {
+                    permissions.addAll(Arrays.asList(callbackSet.permissions));
+                }
+            }
+            return permissions;
+        }
+
+        /**
+         * Whether any class in the hierarchy is in a different package than this class,
+         * in which case shared state must be publicly accessible to their aspects.
+         *
+         * @return {@code true} if the hierarchy spans multiple packages.
+         */
+        public boolean isSharedAcrossPackages() {
+            return hasSubclassOutside(packageElement);
+        }
+
+        private boolean hasSubclassOutside(Element packageElement) {
+
+            for (AnnotatedClass subclass : subclasses) {
+                if (!packageElement.equals(subclass.packageElement)
+                        || subclass.hasSubclassOutside(packageElement)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Data container describing which parts of the generated machinery are used by
+     * the callback sets of a class, so that unused fields, helper methods, and life cycle
+     * handling are not generated.
+     */
+    private static class GeneratedFeatures {
+
+        /** Whether any method annotated with {@link NeedsPermission} prompts the user. */
+        public final boolean hasInteractiveCallbacks;
+
+        /** Whether any method annotated with {@link NeedsPermission} only checks. */
+        public final boolean hasCheckOnlyCallbacks;
+
+        /** Whether any rationale needs to be shown again upon restarts. */
+        public final boolean restartsRationales;
+
+        /** Whether any rationale is shown before prompting the user. */
+        public final boolean showsRationales;
+
+        /** Whether any rationale is shown using the default rationale dialog. */
+        public final boolean usesDefaultRationale;
+
+        public GeneratedFeatures(List<GroupedAnnotatedMethodSet> callbackSets) {
+
+            boolean hasInteractiveCallbacks = false;
+            boolean hasCheckOnlyCallbacks = false;
+            boolean restartsRationales = false;
+            boolean showsRationales = false;
+            boolean usesDefaultRationale = false;
+
+            for (GroupedAnnotatedMethodSet callbackSet : callbackSets) {
+                hasInteractiveCallbacks |= callbackSet.isInteractive();
+                hasCheckOnlyCallbacks |= callbackSet.isCheckOnly();
+                restartsRationales |= callbackSet.restartsRationale();
+                showsRationales |= callbackSet.isInteractive()
+                        && null != callbackSet.getShowRationaleMethodName();
+                usesDefaultRationale |= callbackSet.usesDefaultRationale();
+            }
+
+            this.hasInteractiveCallbacks = hasInteractiveCallbacks;
+            this.hasCheckOnlyCallbacks = hasCheckOnlyCallbacks;
+            this.restartsRationales = restartsRationales;
+            this.showsRationales = showsRationales;
+            this.usesDefaultRationale = usesDefaultRationale;
+        }
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+
+/**
+ * Finds the classes of the compilation that call each method, so the pointcuts advising
+ * calls to annotated methods can be scoped to those classes. ajc then rejects every other
+ * class as a whole, without matching any of its join points.
+ * <p>
+ * Calls are matched on the methods javac resolves them to, so calling an unrelated method
+ * with the same name doesn't widen the scope. Calls javac can't resolve yet, e.g. to classes
+ * generated in a later round, are matched by method name, which may widen the scope but
+ * never misses a call.
+ * </p>
+ */
+class CallSiteScanner {
+
+    private final Trees trees;
+    private final Elements elements;
+
+    /** Qualified names of the top-level classes calling each resolved method. */
+    private final Map<ExecutableElement, Set<String>> callingClasses = new HashMap<>();
+
+    /** Qualified names of the top-level classes making unresolved calls, by method name. */
+    private final Map<String, Set<String>> unresolvedCallingClasses = new HashMap<>();
+
+    CallSiteScanner(Trees trees, Elements elements) {
+        this.trees = trees;
+        this.elements = elements;
+    }
+
+    /**
+     * Scan the source of the specified root elements of a round for method calls.
+     * Calls made within nested, local and anonymous classes are attributed to their
+     * top-level class, which {@code within} pointcuts also match.
+     */
+    void scan(Collection<? extends Element> rootElements) {
+
+        for (Element rootElement : rootElements) {
+
+            if (!(rootElement instanceof TypeElement)) {
+                continue;
+            }
+
+            final TreePath path = trees.getPath(rootElement);
+            if (null == path) {
+                continue;
+            }
+
+            final String className = ((TypeElement) rootElement).getQualifiedName().toString();
+
+            new TreePathScanner<Void, Void>() {
+
+                @Override
+                public Void visitMethodInvocation(MethodInvocationTree invocation, Void unused) {
+
+                    final Element method = trees.getElement(getCurrentPath());
+                    if (null != method && ElementKind.METHOD == method.getKind()) {
+                        addCallingClass(callingClasses, (ExecutableElement) method, className);
+                    } else {
+                        final String methodName = getMethodName(invocation.getMethodSelect());
+                        if (null != methodName) {
+                            addCallingClass(unresolvedCallingClasses, methodName, className);
+                        }
+                    }
+
+                    return super.visitMethodInvocation(invocation, unused);
+                }
+
+            }.scan(path, null);
+        }
+    }
+
+    /**
+     * @return the qualified names of the top-level classes calling the specified method,
+     * or a method overriding it, in a stable order.
+     */
+    Set<String> getCallingClasses(ExecutableElement method) {
+
+        final Set<String> classes = new TreeSet<>();
+
+        for (Map.Entry<ExecutableElement, Set<String>> entry : callingClasses.entrySet()) {
+
+            if (isCallTo(entry.getKey(), method)) {
+                classes.addAll(entry.getValue());
+            }
+        }
+
+        final Set<String> unresolvedClasses =
+                unresolvedCallingClasses.get(method.getSimpleName().toString());
+        if (null != unresolvedClasses) {
+            classes.addAll(unresolvedClasses);
+        }
+
+        return classes;
+    }
+
+    /**
+     * @return {@code true} if a call to the specified called method is a call to
+     * the specified method, which ajc also matches when the called method overrides it.
+     */
+    private boolean isCallTo(ExecutableElement calledMethod, ExecutableElement method) {
+
+        if (method.equals(calledMethod)) {
+            return true;
+        }
+
+        return method.getSimpleName().equals(calledMethod.getSimpleName())
+                && elements.overrides(calledMethod, method,
+                        (TypeElement) calledMethod.getEnclosingElement());
+    }
+
+    private static <K> void addCallingClass(Map<K, Set<String>> callingClasses,
+            K method,
+            String className) {
+
+        Set<String> classes = callingClasses.get(method);
+        if (null == classes) {
+            classes = new TreeSet<>();
+            callingClasses.put(method, classes);
+        }
+        classes.add(className);
+    }
+
+    private static String getMethodName(ExpressionTree methodSelect) {
+
+        if (methodSelect instanceof MemberSelectTree) {
+            return ((MemberSelectTree) methodSelect).getIdentifier().toString();
+        }
+
+        if (methodSelect instanceof IdentifierTree) {
+            return ((IdentifierTree) methodSelect).getName().toString();
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import static java.lang.String.format;
+
+/**
+ * Collects the cost of processing each annotated class across all rounds, and writes it as
+ * a CSV report to the source output, which is never packaged, so the generated code size of
+ * each module can be budgeted.
+ */
+class GenerationStatistics {
+
+    /** Name of the report within the source output. */
+    static final String REPORT_NAME = "groundcontrol-statistics.csv";
+
+    private static final String REPORT_HEADER = "class,validation_us,generation_us,"
+            + "callback_sets,generated_chars,generated_lines,generated_methods,"
+            + "inner_classes,lifecycle_overrides\n";
+
+    /** Statistics of each class, by qualified name, in a stable order. */
+    private final Map<String, ClassStatistics> classStatistics = new TreeMap<>();
+
+    /**
+     * Record the time spent validating the specified class and grouping its annotated methods.
+     */
+    void recordValidation(Element classElement, long nanos) {
+        getStatistics(classElement).validationNanos += nanos;
+    }
+
+    /**
+     * Record the time spent generating the aspect of the specified class, and its rules,
+     * and the size of the aspect: its methods and inner classes, as counted by the generator
+     * where it writes them, and its characters and lines, as counted by the specified counter.
+     */
+    void recordGeneration(Element classElement,
+            long nanos,
+            int callbackSets,
+            int lifecycleOverrides,
+            int methods,
+            int innerClasses,
+            CodeCounter counter) {
+
+        final ClassStatistics statistics = getStatistics(classElement);
+        statistics.generationNanos += nanos;
+        statistics.callbackSets += callbackSets;
+        statistics.lifecycleOverrides += lifecycleOverrides;
+        statistics.chars += counter.chars;
+        statistics.lines += counter.lines;
+        statistics.methods += methods;
+        statistics.innerClasses += innerClasses;
+    }
+
+    /**
+     * Write the report, with a line for each class processed during the compilation.
+     */
+    void write(Filer filer) throws IOException {
+
+        FileObject reportFile = filer.createResource(StandardLocation.SOURCE_OUTPUT, "",
+                REPORT_NAME);
+
+        Writer writer = reportFile.openWriter();
+        writer.write(REPORT_HEADER);
+
+        for (Map.Entry<String, ClassStatistics> entry : classStatistics.entrySet()) {
+
+            final ClassStatistics statistics = entry.getValue();
+            writer.write(format(Locale.ENGLISH, "%1$s,%2$d,%3$d,%4$d,%5$d,%6$d,%7$d,%8$d,%9$d\n",
+                    entry.getKey(), // 1
+                    TimeUnit.NANOSECONDS.toMicros(statistics.validationNanos), // 2
+                    TimeUnit.NANOSECONDS.toMicros(statistics.generationNanos), // 3
+                    statistics.callbackSets, // 4
+                    statistics.chars, // 5
+                    statistics.lines, // 6
+                    statistics.methods, // 7
+                    statistics.innerClasses, // 8
+                    statistics.lifecycleOverrides // 9
+            ));
+        }
+
+        writer.close();
+    }
+
+    private ClassStatistics getStatistics(Element classElement) {
+
+        final String className = ((TypeElement) classElement).getQualifiedName().toString();
+
+        ClassStatistics statistics = classStatistics.get(className);
+        if (null == statistics) {
+            statistics = new ClassStatistics();
+            classStatistics.put(className, statistics);
+        }
+        return statistics;
+    }
+
+    private static class ClassStatistics {
+        long validationNanos;
+        long generationNanos;
+        int callbackSets;
+        long chars;
+        int lines;
+        int methods;
+        int innerClasses;
+        int lifecycleOverrides;
+    }
+
+    /**
+     * Writer counting the characters and lines of the generated code written through it.
+     */
+    static class CodeCounter extends FilterWriter {
+
+        private long chars;
+        private int lines;
+
+        CodeCounter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            count((char) c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            super.write(buffer, offset, length);
+            for (int index = offset; index < offset + length; index++) {
+                count(buffer[index]);
+            }
+        }
+
+        @Override
+        public void write(String string, int offset, int length) throws IOException {
+            super.write(string, offset, length);
+            for (int index = offset; index < offset + length; index++) {
+                count(string.charAt(index));
+            }
+        }
+
+        private void count(char c) {
+            chars++;
+            if ('\n' == c) {
+                lines++;
+            }
+        }
+    }
+}
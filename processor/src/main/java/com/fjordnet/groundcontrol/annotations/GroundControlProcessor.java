@@ -16,8 +16,12 @@
 
 package com.fjordnet.groundcontrol.annotations;
 
+import com.sun.source.util.Trees;
+
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
@@ -35,14 +39,46 @@ import javax.lang.model.util.Types;
 
 import static javax.lang.model.element.ElementKind.CLASS;
 import static javax.tools.Diagnostic.Kind.ERROR;
+import static javax.tools.Diagnostic.Kind.WARNING;
 
 public class GroundControlProcessor extends AbstractProcessor {
 
+    /**
+     * Processor option selecting the join points advised by generated aspects,
+     * either {@value #JOIN_POINT_CALL} (default) or {@value #JOIN_POINT_EXECUTION}.
+     */
+    public static final String OPTION_JOIN_POINT = "groundcontrol.joinPoint";
+    public static final String JOIN_POINT_CALL = "call";
+    public static final String JOIN_POINT_EXECUTION = "execution";
+
+    /**
+     * Processor option selecting the classes in which calls to annotated methods are advised,
+     * either {@value #CALL_SITES_ANY} (default), or {@value #CALL_SITES_COMPILATION} to only
+     * advise the calls made by the classes of the compilation.
+     */
+    public static final String OPTION_CALL_SITES = "groundcontrol.callSites";
+    public static final String CALL_SITES_ANY = "any";
+    public static final String CALL_SITES_COMPILATION = "compilation";
+
+    /**
+     * Processor option enabling the statistics report, {@value #STATISTICS_ENABLED} or
+     * {@value #STATISTICS_DISABLED} (default). The report lists the processing time and
+     * the size of the generated code of each class, in {@code groundcontrol-statistics.csv}
+     * within the generated sources.
+     */
+    public static final String OPTION_STATISTICS = "groundcontrol.statistics";
+    public static final String STATISTICS_ENABLED = "true";
+    public static final String STATISTICS_DISABLED = "false";
+
     private Elements elementUtils;
     private Types typeUtils;
     private Filer filer;
     private Messager messager;
 
+    private AspectGenerator aspectGenerator;
+    private CallSiteScanner callSiteScanner;
+    private GenerationStatistics statistics;
+
     @Override
     public synchronized void init(ProcessingEnvironment environment) {
         super.init(environment);
@@ -51,6 +87,73 @@ public class GroundControlProcessor extends AbstractProcessor {
         typeUtils = environment.getTypeUtils();
         filer = environment.getFiler();
         messager = environment.getMessager();
+
+        final String joinPoint = environment.getOptions().get(OPTION_JOIN_POINT);
+        if (null != joinPoint
+                && !JOIN_POINT_CALL.equals(joinPoint)
+                && !JOIN_POINT_EXECUTION.equals(joinPoint)) {
+
+            messager.printMessage(ERROR, String.format(
+                    "Unsupported value \"%1$s\" for option %2$s, expected \"%3$s\" or \"%4$s\".",
+                    joinPoint, // 1
+                    OPTION_JOIN_POINT, // 2
+                    JOIN_POINT_CALL, // 3
+                    JOIN_POINT_EXECUTION // 4
+            ));
+        }
+
+        final String callSites = environment.getOptions().get(OPTION_CALL_SITES);
+        if (null != callSites
+                && !CALL_SITES_ANY.equals(callSites)
+                && !CALL_SITES_COMPILATION.equals(callSites)) {
+
+            messager.printMessage(ERROR, String.format(
+                    "Unsupported value \"%1$s\" for option %2$s, expected \"%3$s\" or \"%4$s\".",
+                    callSites, // 1
+                    OPTION_CALL_SITES, // 2
+                    CALL_SITES_ANY, // 3
+                    CALL_SITES_COMPILATION // 4
+            ));
+        }
+
+        // Call sites are found in the source trees, through the compiler tree API of javac.
+        // Other compilers, or environments wrapping that of javac, advise calls everywhere.
+        // Executions are always advised within the annotated classes.
+        if (CALL_SITES_COMPILATION.equals(callSites) && !JOIN_POINT_EXECUTION.equals(joinPoint)) {
+            try {
+                callSiteScanner = new CallSiteScanner(Trees.instance(environment),
+                        environment.getElementUtils());
+            } catch (IllegalArgumentException | NoClassDefFoundError exception) {
+                messager.printMessage(WARNING, String.format("Option %1$s=%2$s is only "
+                                + "supported by javac; calls are advised in all classes.",
+                        OPTION_CALL_SITES, // 1
+                        CALL_SITES_COMPILATION // 2
+                ));
+            }
+        }
+
+        final String statisticsOption = environment.getOptions().get(OPTION_STATISTICS);
+        if (null != statisticsOption
+                && !STATISTICS_ENABLED.equals(statisticsOption)
+                && !STATISTICS_DISABLED.equals(statisticsOption)) {
+
+            messager.printMessage(ERROR, String.format(
+                    "Unsupported value \"%1$s\" for option %2$s, expected \"%3$s\" or \"%4$s\".",
+                    statisticsOption, // 1
+                    OPTION_STATISTICS, // 2
+                    STATISTICS_ENABLED, // 3
+                    STATISTICS_DISABLED // 4
+            ));
+        }
+
+        // Collected across rounds, and reported once processing is over.
+        if (STATISTICS_ENABLED.equals(statisticsOption)) {
+            statistics = new GenerationStatistics();
+        }
+
+        // Shared across rounds, so request codes are never reused within a compilation.
+        aspectGenerator = new AspectGenerator(elementUtils, typeUtils, filer, messager,
+                JOIN_POINT_EXECUTION.equals(joinPoint), callSiteScanner, statistics);
     }
 
     @Override
@@ -67,6 +170,16 @@ public class GroundControlProcessor extends AbstractProcessor {
         annotatedElements.addAll(roundEnv.getElementsAnnotatedWith(OnPermissionDenied.class));
         annotatedElements.addAll(roundEnv.getElementsAnnotatedWith(OnShowRationale.class));
 
+        // Classes requesting permissions on creation are validated even without
+        // any annotated methods.
+        for (Element classElement
+                : roundEnv.getElementsAnnotatedWith(RequestPermissionsOnCreate.class)) {
+
+            if (CLASS.equals(classElement.getKind())) {
+                classElements.add(classElement);
+            }
+        }
+
         for (Element method : annotatedElements) {
 
             parent = method.getEnclosingElement();
@@ -77,8 +190,14 @@ public class GroundControlProcessor extends AbstractProcessor {
             classElements.add(parent);
         }
 
-        AspectGenerator aspectGenerator = new AspectGenerator(elementUtils, typeUtils, filer,
-                messager);
+        // Calls made by the classes of this round, including generated ones.
+        if (null != callSiteScanner) {
+            callSiteScanner.scan(roundEnv.getRootElements());
+        }
+
+        // Classes in the same hierarchy share request codes and state,
+        // so all classes must be known before generating any aspect.
+        aspectGenerator.prepareAspectsFor(classElements);
 
         for (Element classElement : classElements) {
 
@@ -94,6 +213,16 @@ public class GroundControlProcessor extends AbstractProcessor {
             }
         }
 
+        if (roundEnv.processingOver() && null != statistics) {
+            try {
+                statistics.write(filer);
+            } catch (IOException exception) {
+                messager.printMessage(WARNING, String.format(
+                        "Unable to write the statistics report due to exception: %s",
+                        exception));
+            }
+        }
+
         return true;
     }
 
@@ -103,9 +232,16 @@ public class GroundControlProcessor extends AbstractProcessor {
         annotations.add(NeedsPermission.class.getCanonicalName());
         annotations.add(OnPermissionDenied.class.getCanonicalName());
         annotations.add(OnShowRationale.class.getCanonicalName());
+        annotations.add(RequestPermissionsOnCreate.class.getCanonicalName());
         return annotations;
     }
 
+    @Override
+    public Set<String> getSupportedOptions() {
+        return new HashSet<>(Arrays.asList(OPTION_JOIN_POINT, OPTION_CALL_SITES,
+                OPTION_STATISTICS));
+    }
+
     @Override
     public SourceVersion getSupportedSourceVersion() {
         return SourceVersion.latestSupported();
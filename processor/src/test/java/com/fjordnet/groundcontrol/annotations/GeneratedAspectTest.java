@@ -0,0 +1,426 @@
+/*
+ * Copyright 2017-2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import com.google.common.truth.Truth;
+import com.google.testing.compile.Compilation;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import static java.lang.String.format;
+
+/**
+ * Unit test cases validating the contents of generated aspects.
+ */
+public class GeneratedAspectTest extends GroundControlTest {
+
+    private static final String RATIONALE_PERMISSIONS = "__groundControlRationalePermissions";
+    private static final String RESTART_RATIONALE = "__groundControlRestartRationale";
+    private static final String RATIONALE_DIALOG = "__groundControlRationaleDialog";
+    private static final String SHOW_DEFAULT_RATIONALE_DIALOG =
+            "__groundControlShowDefaultRationaleDialog";
+
+    @Test
+    public void minimalAspectWithoutRationale() throws IOException {
+
+        String aspect = generatedAspectFor("StorageManagerActivity");
+
+        Truth.assertThat(aspect).contains("onRequestPermissionsResult");
+        Truth.assertThat(aspect).contains("onPostCreate");
+        Truth.assertThat(aspect).contains("onSaveInstanceState");
+        Truth.assertThat(aspect).doesNotContain(".dismiss()");
+        Truth.assertThat(aspect).doesNotContain(RATIONALE_PERMISSIONS);
+        Truth.assertThat(aspect).doesNotContain(RESTART_RATIONALE);
+        Truth.assertThat(aspect).doesNotContain(RATIONALE_DIALOG);
+        Truth.assertThat(aspect).doesNotContain(SHOW_DEFAULT_RATIONALE_DIALOG);
+    }
+
+    @Test
+    public void customRationaleWithoutRestarts() throws IOException {
+
+        String aspect = generatedAspectFor("AllGroundControlAnnotations");
+
+        Truth.assertThat(aspect).contains("showSensorsRationale");
+        Truth.assertThat(aspect).doesNotContain(RATIONALE_PERMISSIONS);
+        Truth.assertThat(aspect).doesNotContain(RESTART_RATIONALE);
+        Truth.assertThat(aspect).doesNotContain(RATIONALE_DIALOG);
+    }
+
+    @Test
+    public void customRationaleWithRestarts() throws IOException {
+
+        String aspect = generatedAspectFor("RationaleHandleRestarts");
+
+        Truth.assertThat(aspect).contains(RATIONALE_PERMISSIONS);
+        Truth.assertThat(aspect).contains(RESTART_RATIONALE);
+        Truth.assertThat(aspect).doesNotContain(".dismiss()");
+        Truth.assertThat(aspect).doesNotContain(RATIONALE_DIALOG);
+    }
+
+    @Test
+    public void defaultRationale() throws IOException {
+
+        String aspect = generatedAspectFor("RationaleDefault");
+
+        Truth.assertThat(aspect).contains(RATIONALE_PERMISSIONS);
+        Truth.assertThat(aspect).contains(RESTART_RATIONALE);
+        Truth.assertThat(aspect).contains("onDestroy");
+        Truth.assertThat(aspect).contains(RATIONALE_DIALOG);
+        Truth.assertThat(aspect).contains(SHOW_DEFAULT_RATIONALE_DIALOG);
+    }
+
+    @Test
+    public void evaluatePermissionsOnce() throws IOException {
+
+        String aspect = generatedAspectFor("RationaleDefault");
+
+        Truth.assertThat(aspect).contains("GroundControl.evaluatePermissions(");
+        Truth.assertThat(aspect).contains("permissionSnapshot.shouldShowRationale()");
+        Truth.assertThat(aspect).contains("permissionSnapshot.missingPermissions");
+        Truth.assertThat(aspect).doesNotContain("GroundControl.hasPermissions(");
+        Truth.assertThat(aspect).doesNotContain("GroundControl.shouldShowRationale(");
+        Truth.assertThat(aspect).doesNotContain("filterGrantedPermissions");
+    }
+
+    @Test
+    public void requestPermissionsThroughBackend() throws IOException {
+
+        String aspect = generatedAspectFor("RationaleHandleRestarts");
+
+        // Requests made directly, and upon acknowledged rationales, including restarted ones.
+        Truth.assertThat(aspect).contains("GroundControl.requestPermissions(targetInstance, "
+                + "permissionSnapshot.missingPermissions, ");
+        Truth.assertThat(aspect).contains("GroundControl.requestPermissions(this, "
+                + "permissionsArray, requestCode);");
+        Truth.assertThat(aspect).doesNotContain("targetInstance.requestPermissions(");
+    }
+
+    @Test
+    public void rationaleListenersHandBackToHierarchyRoot() throws IOException {
+
+        String aspect = generatedAspectFor("RationaleDefault");
+
+        // Listeners are plain data, without a subclass for each rationale.
+        Truth.assertThat(aspect).contains("implements "
+                + "com.fjordnet.groundcontrol.OnRationaleAcknowledgedListener.Target");
+        Truth.assertThat(aspect).containsMatch("ackListener = "
+                + "new com\\.fjordnet\\.groundcontrol\\.OnRationaleAcknowledgedListener\\("
+                + "permissionSnapshot\\.missingPermissions, [0-9]+\\);");
+        Truth.assertThat(aspect)
+                .doesNotContainMatch("OnRationaleAcknowledgedListener\\(.*\\) \\{");
+        Truth.assertThat(aspect).doesNotContain("OnClickListener");
+
+        // Only the root of the hierarchy handles acknowledged rationales.
+        Truth.assertThat(aspect).contains("@Override public void "
+                + "__groundControlOnRationaleAcknowledged(String[] permissionsArray, "
+                + "int requestCode) {\n"
+                + "\t\t\tif (!canHandleRequest(requestCode)) { return; }\n");
+    }
+
+    @Test
+    public void permanentDenialsShortCircuited() throws IOException {
+
+        String aspect = generatedAspectFor("RationaleHandleRestarts");
+
+        Truth.assertThat(aspect).contains("GroundControl.recordPermissionsResult(getActivity(), "
+                + "requestCode, permissions, grantResults);");
+        Truth.assertThat(aspect).contains("if (permissionSnapshot.isPermanentlyDenied()) {\n"
+                + "\t\t\t\tdeny();\n"
+                + "\t\t\t\treturn;\n");
+    }
+
+    @Test
+    public void hierarchyRootHandlesAllRequestCodes() throws IOException {
+
+        String aspect = generatedAspectFor("HierarchyBaseFragment", "HierarchySubFragment");
+
+        // Request codes of both classes are allocated as a single range, derived from the name
+        // of the root class.
+        int firstRequestCode = AspectGenerator.getFirstRequestCode(
+                TEST_PACKAGE + ".HierarchyBaseFragment", 3);
+        Truth.assertThat(aspect).contains(format("return %1$d <= requestCode && "
+                + "requestCode <= %2$d;", firstRequestCode, firstRequestCode + 2));
+        Truth.assertThat(aspect).contains("onRequestPermissionsResult");
+        Truth.assertThat(aspect).contains("onActivityCreated");
+
+        // Default rationale used by the subclass is handled by the root.
+        Truth.assertThat(aspect).contains(SHOW_DEFAULT_RATIONALE_DIALOG);
+        Truth.assertThat(aspect).contains("onDestroy");
+    }
+
+    @Test
+    public void hierarchySubclassSharesRootState() throws IOException {
+
+        String aspect = generatedAspectFor("HierarchySubFragment", "HierarchyBaseFragment");
+
+        Truth.assertThat(aspect).contains("implements "
+                + TEST_PACKAGE + ".HierarchyBaseFragmentGroundControlAspect.PermissionCallback");
+        Truth.assertThat(aspect).doesNotContain("interface PermissionCallback");
+        Truth.assertThat(aspect).doesNotContain("onRequestPermissionsResult");
+        Truth.assertThat(aspect).doesNotContain("onActivityCreated");
+        Truth.assertThat(aspect).doesNotContain("onSaveInstanceState");
+        Truth.assertThat(aspect).doesNotContain("canHandleRequest");
+    }
+
+    @Test
+    public void adviseCallsByDefault() throws IOException {
+
+        String aspect = generatedAspectFor("ParamsStringVarArgsType");
+
+        Truth.assertThat(aspect).contains("call(void ");
+        Truth.assertThat(aspect).contains("target(targetInstance) && !within(");
+        Truth.assertThat(aspect).doesNotContain("execution(void ");
+    }
+
+    @Test
+    public void adviseExecutionWhenRequested() throws IOException {
+
+        String aspect = generatedAspectFor(
+                Collections.singletonList("-Agroundcontrol.joinPoint=execution"),
+                "ParamsStringVarArgsType");
+
+        Truth.assertThat(aspect).contains("execution(void ");
+        Truth.assertThat(aspect).contains("this(targetInstance)");
+        Truth.assertThat(aspect).doesNotContain("call(void ");
+        Truth.assertThat(aspect).doesNotContain("target(targetInstance)");
+    }
+
+    @Test
+    public void callSitesScopedWithinCallingClasses() throws IOException {
+
+        String aspect = generatedAspectFor(
+                Collections.singletonList("-Agroundcontrol.callSites=compilation"),
+                "WovenCallSites", "WovenCallSitesCaller");
+
+        Truth.assertThat(aspect).contains("call(void " + TEST_PACKAGE
+                + ".WovenCallSites.importContacts(int)) && within(" + TEST_PACKAGE
+                + ".WovenCallSites || " + TEST_PACKAGE + ".WovenCallSitesCaller)");
+        Truth.assertThat(aspect).contains("call(void " + TEST_PACKAGE
+                + ".WovenCallSites.captureMedia(boolean)) && within(" + TEST_PACKAGE
+                + ".WovenCallSites) && args(");
+    }
+
+    @Test
+    public void callSitesMatchedOnResolvedMethods() throws IOException {
+
+        String aspect = generatedAspectFor(
+                Collections.singletonList("-Agroundcontrol.callSites=compilation"),
+                "WovenCallSites", "WovenCallSitesCaller", "WovenCallSitesNamesake");
+
+        // Calls to an unrelated method with the same name don't widen the scope.
+        Truth.assertThat(aspect).contains("call(void " + TEST_PACKAGE
+                + ".WovenCallSites.importContacts(int)) && within(" + TEST_PACKAGE
+                + ".WovenCallSites || " + TEST_PACKAGE + ".WovenCallSitesCaller) && args(");
+    }
+
+    @Test
+    public void callSitesNotScopedWhenAdvisingExecution() throws IOException {
+
+        String aspect = generatedAspectFor(Arrays.asList("-Agroundcontrol.callSites=compilation",
+                "-Agroundcontrol.joinPoint=execution"), "WovenCallSites", "WovenCallSitesCaller");
+
+        Truth.assertThat(aspect).doesNotContain("within(");
+    }
+
+    @Test
+    public void nestedChecksElided() throws IOException {
+
+        String aspect = generatedAspectFor("NestedPermissionsActivity");
+
+        Truth.assertThat(aspect).contains("call(void " + TEST_PACKAGE
+                + ".NestedPermissionsActivity.takePicture()) && !withincode(void " + TEST_PACKAGE
+                + ".NestedPermissionsActivity.recordVideo())");
+        Truth.assertThat(aspect).contains("call(void " + TEST_PACKAGE
+                + ".NestedPermissionsActivity.importContacts()) && !withincode(void "
+                + TEST_PACKAGE + ".NestedPermissionsActivity.importContacts()) && args()");
+    }
+
+    @Test
+    public void nestedChecksKeptWhenScopingCallSites() throws IOException {
+
+        // Callers may be called from other compilations without checking their permissions.
+        String aspect = generatedAspectFor(
+                Collections.singletonList("-Agroundcontrol.callSites=compilation"),
+                "NestedPermissionsActivity");
+
+        Truth.assertThat(aspect).contains("call(void " + TEST_PACKAGE
+                + ".NestedPermissionsActivity.takePicture()) && within(");
+        Truth.assertThat(aspect).doesNotContain("withincode");
+    }
+
+    @Test
+    public void nestedChecksKeptWhenAdvisingExecution() throws IOException {
+
+        String aspect = generatedAspectFor(
+                Collections.singletonList("-Agroundcontrol.joinPoint=execution"),
+                "NestedPermissionsActivity");
+
+        Truth.assertThat(aspect).doesNotContain("withincode");
+    }
+
+    @Test
+    public void checkOnlyWithoutLifecycleHandling() throws IOException {
+
+        String aspect = generatedAspectFor("CheckOnlyPrefetcher");
+
+        Truth.assertThat(aspect).contains(
+                "PrefetchContactsPermissionCheck.isGranted(targetInstance)");
+        Truth.assertThat(aspect).contains("PrefetchContactsPermissionCheck.deny(targetInstance);");
+        Truth.assertThat(aspect).contains("GroundControl.hasCachedPermissions(context, ");
+        Truth.assertThat(aspect).contains("targetInstance.getContext()");
+        Truth.assertThat(aspect).contains("targetInstance.onContactsDenied();");
+        Truth.assertThat(aspect).doesNotContain("declare parents");
+        Truth.assertThat(aspect).doesNotContain("requestPermissions");
+        Truth.assertThat(aspect).doesNotContain("PermissionCallback");
+    }
+
+    @Test
+    public void checkOnlyAlongsidePrompts() throws IOException {
+
+        String aspect = generatedAspectFor("CheckOnlyMixedActivity");
+
+        // Only the method prompting the user is given a request code.
+        Truth.assertThat(aspect).contains("CaptureMediaPermissionCallback");
+        int requestCode = AspectGenerator.getFirstRequestCode(
+                TEST_PACKAGE + ".CheckOnlyMixedActivity", 1);
+        Truth.assertThat(aspect).contains(format("return %1$d <= requestCode && "
+                + "requestCode <= %1$d;", requestCode));
+        Truth.assertThat(aspect).contains("PrefetchContactsPermissionCheck.isGranted(");
+        Truth.assertThat(aspect).doesNotContain("PrefetchContactsPermissionCallback");
+        Truth.assertThat(aspect).doesNotContain(SHOW_DEFAULT_RATIONALE_DIALOG);
+    }
+
+    @Test
+    public void keepRulesForPermissionCallbackCreators() throws IOException {
+
+        String rules = generatedKeepRulesFor("CheckOnlyMixedActivity");
+
+        Truth.assertThat(rules).contains("-keepclassmembers class " + TEST_PACKAGE
+                + ".CheckOnlyMixedActivityGroundControlAspect$CaptureMediaPermissionCallback {\n"
+                + "    public static final android.os.Parcelable$Creator CREATOR;\n"
+                + "}\n");
+
+        // Check-only methods have nothing to parcel.
+        Truth.assertThat(rules).doesNotContain("PrefetchContacts");
+        Truth.assertThat(rules).doesNotContain("-keep ");
+        Truth.assertThat(rules).doesNotContain("GroundControlledActivity");
+    }
+
+    @Test
+    public void noKeepRulesForCheckOnlyClasses() throws IOException {
+        Truth.assertThat(generatedKeepRulesFor("CheckOnlyPrefetcher")).isNull();
+    }
+
+    @Test
+    public void noAspectWithoutGrantedCallbacks() throws IOException {
+        String aspect = generatedAspectFor("DeniedUnmatchedPermissionsNoGrantedCallback");
+        Truth.assertThat(aspect).isNull();
+    }
+
+    @Test
+    public void statisticsReportedWhenRequested() throws IOException {
+
+        Compilation compilation = compile(
+                Collections.singletonList("-Agroundcontrol.statistics=true"),
+                "StorageManagerActivity", "CheckOnlyPrefetcher");
+
+        String aspect = compilation.generatedFile(StandardLocation.SOURCE_OUTPUT, TEST_PACKAGE,
+                "StorageManagerActivityGroundControlAspect.aj").get()
+                .getCharContent(true).toString();
+        String[] lines = generatedStatistics(compilation).split("\n");
+
+        Truth.assertThat(lines).hasLength(3);
+        Truth.assertThat(lines[0]).isEqualTo("class,validation_us,generation_us,"
+                + "callback_sets,generated_chars,generated_lines,generated_methods,"
+                + "inner_classes,lifecycle_overrides");
+
+        // Classes are listed in a stable order.
+        Truth.assertThat(lines[1]).startsWith(TEST_PACKAGE + ".CheckOnlyPrefetcher,");
+        Truth.assertThat(lines[2]).startsWith(TEST_PACKAGE + ".StorageManagerActivity,");
+
+        // Inner classes are the interface, the intermediary, the permission callback and its
+        // creator. Life cycle overrides are onPostCreate, onDestroy and onSaveInstanceState.
+        String[] columns = lines[2].split(",");
+        Truth.assertThat(Arrays.asList(columns).subList(3, columns.length)).containsExactly(
+                "1",
+                String.valueOf(aspect.length()),
+                String.valueOf(aspect.split("\n").length),
+                String.valueOf(
+                        // Interface: getRequestCode, grant, deny and setTargetInstance.
+                        4
+                        // Intermediary: onRequestPermissionsResult, wasGranted, the life cycle
+                        // overrides, the replicated loadSettings, and canHandleRequest.
+                        + 2 + 3 + 1 + 1
+                        // Advice.
+                        + 1
+                        // Permission callback: constructor, request, the interface methods,
+                        // describeContents and writeToParcel, then those of its creator.
+                        + 1 + 1 + 4 + 2 + 2),
+                "4",
+                "3").inOrder();
+
+        // The check-only advice, and its helper class checking and denying permissions.
+        columns = lines[1].split(",");
+        Truth.assertThat(Arrays.asList(columns).subList(6, columns.length)).containsExactly(
+                String.valueOf(1 + 2),
+                "1",
+                "0").inOrder();
+    }
+
+    @Test
+    public void noStatisticsReportByDefault() throws IOException {
+        Compilation compilation = compile(Collections.emptyList(), "StorageManagerActivity");
+        Truth.assertThat(generatedStatistics(compilation)).isNull();
+    }
+
+    /**
+     * @return the statistics report of the specified compilation, or {@code null} if none
+     * was generated.
+     */
+    private String generatedStatistics(Compilation compilation) throws IOException {
+
+        Optional<JavaFileObject> report = compilation.generatedFile(
+                StandardLocation.SOURCE_OUTPUT, "", "groundcontrol-statistics.csv");
+
+        return report.isPresent() ? report.get().getCharContent(true).toString() : null;
+    }
+
+    /**
+     * Compile the specified test class, and retrieve the keep rules generated for it.
+     *
+     * @return the keep rules, or {@code null} if none were generated.
+     */
+    private String generatedKeepRulesFor(String testClassName) throws IOException {
+
+        Compilation compilation = compile(Collections.emptyList(), testClassName);
+
+        Optional<JavaFileObject> rules = compilation.generatedFile(
+                StandardLocation.CLASS_OUTPUT,
+                String.format("META-INF/proguard/%1$s.%2$sGroundControlAspect.pro",
+                        TEST_PACKAGE, testClassName));
+
+        return rules.isPresent() ? rules.get().getCharContent(true).toString() : null;
+    }
+}
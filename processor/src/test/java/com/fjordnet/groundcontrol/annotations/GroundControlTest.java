@@ -17,15 +17,30 @@
 package com.fjordnet.groundcontrol.annotations;
 
 import com.google.common.truth.Truth;
+import com.google.testing.compile.Compilation;
 import com.google.testing.compile.CompileTester;
+import com.google.testing.compile.Compiler;
 import com.google.testing.compile.JavaFileObjects;
 import com.google.testing.compile.JavaSourcesSubjectFactory;
 
+import org.aspectj.bridge.IMessage;
+import org.aspectj.bridge.MessageHandler;
+import org.aspectj.tools.ajc.Main;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
 
 /**
  * Provides helper methods for subclasses.
@@ -44,20 +59,166 @@ public abstract class GroundControlTest {
             "ensure this callback can be invoked with the appropriate arguments after a "
             + "configuration change";
 
+    protected static final String TEST_PACKAGE = "com.fjordnet.sample.groundcontrol";
+
     protected CompileTester assertThat(String... testClassNames) {
 
+        return Truth.assertAbout(JavaSourcesSubjectFactory.javaSources())
+                .that(getTestFiles(testClassNames))
+                .processedWith(new GroundControlProcessor());
+    }
+
+    /**
+     * Process the specified test classes and retrieve the contents of the aspect
+     * generated for the first of them.
+     *
+     * @param testClassNames names of the test classes to compile. The aspect generated for
+     * the first class is returned.
+     *
+     * @return the contents of the generated aspect, or {@code null} if no aspect was generated.
+     *
+     * @throws IOException if the generated aspect could not be read.
+     */
+    protected String generatedAspectFor(String... testClassNames) throws IOException {
+        return generatedAspectFor(Collections.emptyList(), testClassNames);
+    }
+
+    /**
+     * Process the specified test classes with the specified compiler options and retrieve
+     * the contents of the aspect generated for the first of them.
+     *
+     * @param options compiler options, e.g. annotation processor options.
+     * @param testClassNames names of the test classes to compile. The aspect generated for
+     * the first class is returned.
+     *
+     * @return the contents of the generated aspect, or {@code null} if no aspect was generated.
+     *
+     * @throws IOException if the generated aspect could not be read.
+     */
+    protected String generatedAspectFor(List<String> options, String... testClassNames)
+            throws IOException {
+
+        Compilation compilation = compile(options, testClassNames);
+
+        Optional<JavaFileObject> aspect = compilation.generatedFile(
+                StandardLocation.SOURCE_OUTPUT,
+                TEST_PACKAGE,
+                testClassNames[0] + "GroundControlAspect.aj");
+
+        return aspect.isPresent() ? aspect.get().getCharContent(true).toString() : null;
+    }
+
+    /**
+     * Compile the specified test classes with the Ground Control processor.
+     *
+     * @param options compiler options, e.g. annotation processor options.
+     * @param testClassNames names of the test classes to compile.
+     *
+     * @return the result of the compilation, including generated class files and aspects.
+     */
+    protected Compilation compile(List<String> options, String... testClassNames) {
+
+        return Compiler.javac()
+                .withProcessors(new GroundControlProcessor())
+                .withOptions(options)
+                .compile(getTestFiles(testClassNames));
+    }
+
+    /**
+     * Weave the aspects generated during the specified compilation into its class files,
+     * the same way the Ground Control plugin does.
+     *
+     * @param compilation successful compilation of test classes with the Ground Control
+     * processor.
+     * @param temporaryFolder folder in which to write the class files and aspects.
+     * @param classPath directories of classes woven beforehand which the compiled classes
+     * depend on, e.g. as a library.
+     *
+     * @return the directory containing the woven class files.
+     */
+    protected File weave(Compilation compilation,
+            TemporaryFolder temporaryFolder,
+            File... classPath)
+            throws IOException {
+
+        Truth.assertThat(compilation.status()).isEqualTo(Compilation.Status.SUCCESS);
+
+        File classesDir = temporaryFolder.newFolder();
+        File aspectsDir = temporaryFolder.newFolder();
+        File wovenDir = temporaryFolder.newFolder();
+
+        for (JavaFileObject generatedFile : compilation.generatedFiles()) {
+
+            // Generated files are located under a directory named after their location,
+            // e.g. /CLASS_OUTPUT/com/fjordnet/...
+            String path = generatedFile.toUri().getPath();
+            String relativePath = path.substring(path.indexOf('/', 1) + 1);
+
+            File outputDir;
+            if (JavaFileObject.Kind.CLASS == generatedFile.getKind()) {
+                outputDir = classesDir;
+            } else if (relativePath.endsWith(".aj")) {
+                outputDir = aspectsDir;
+            } else {
+                continue;
+            }
+
+            File outputFile = new File(outputDir, relativePath);
+            Truth.assertThat(outputFile.getParentFile().mkdirs() || outputFile.getParentFile()
+                    .isDirectory()).isTrue();
+
+            try (InputStream input = generatedFile.openInputStream();
+                 OutputStream output = Files.newOutputStream(outputFile.toPath())) {
+
+                byte[] buffer = new byte[4096];
+                int length;
+                while (-1 != (length = input.read(buffer))) {
+                    output.write(buffer, 0, length);
+                }
+            }
+        }
+
+        String[] args = {
+                "-1.8",
+                "-sourceroots", aspectsDir.getPath(),
+                "-inpath", classesDir.getPath(),
+                "-d", wovenDir.getPath(),
+                "-classpath", getClassPath(classPath)
+        };
+
+        MessageHandler handler = new MessageHandler(true);
+        new Main().run(args, handler);
+
+        Truth.assertThat(handler.getMessages(IMessage.ERROR, true)).isEmpty();
+
+        return wovenDir;
+    }
+
+    /**
+     * @return the class path of the tests, preceded by the specified directories.
+     */
+    protected String getClassPath(File... directories) {
+
+        StringBuilder classPath = new StringBuilder();
+        for (File directory : directories) {
+            classPath.append(directory.getPath()).append(File.pathSeparator);
+        }
+
+        return classPath.append(System.getProperty("java.class.path")).toString();
+    }
+
+    private List<JavaFileObject> getTestFiles(String... testClassNames) {
+
         List<JavaFileObject> testFiles = new ArrayList<>();
         URL source;
 
         for (String testClassName : testClassNames) {
-            source = getClass().getResource(
-                    String.format("/com/fjordnet/sample/groundcontrol/%s.java", testClassName));
+            source = getClass().getResource(String.format("/%s/%s.java",
+                    TEST_PACKAGE.replace('.', '/'), testClassName));
             Truth.assertThat(source).isNotNull();
             testFiles.add(JavaFileObjects.forResource(source));
         }
 
-        return Truth.assertAbout(JavaSourcesSubjectFactory.javaSources())
-                .that(testFiles)
-                .processedWith(new GroundControlProcessor());
+        return testFiles;
     }
 }
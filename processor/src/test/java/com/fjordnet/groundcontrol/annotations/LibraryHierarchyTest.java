@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import com.fjordnet.groundcontrol.lifecycle.LifecycleHarness;
+import com.fjordnet.groundcontrol.lifecycle.LifecycleSimulation;
+import com.google.common.truth.Truth;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Unit test cases running a woven activity whose parent was compiled and woven on its own,
+ * as in a library, validating that each root of a class hierarchy hands the requests of its
+ * woven parent back to it, and that request codes of both compilations differ.
+ */
+public class LibraryHierarchyTest extends GroundControlTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String READ_CONTACTS = "android.permission.READ_CONTACTS";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LifecycleSimulation activity;
+
+    @Before
+    public void setUp() throws Exception {
+
+        File libraryDir = weave(compile(Collections.emptyList(), "RationaleLibraryActivity"),
+                temporaryFolder);
+
+        File consumerDir = weave(
+                compile(Arrays.asList("-classpath", getClassPath(libraryDir)),
+                        "RationaleConsumerActivity"),
+                temporaryFolder,
+                libraryDir);
+
+        LifecycleHarness harness = new LifecycleHarness(Arrays.asList(consumerDir, libraryDir),
+                temporaryFolder.newFolder("stubs"));
+
+        activity = harness.simulate(TEST_PACKAGE + ".RationaleConsumerActivity");
+        activity.script(CAMERA, "GRANT");
+        activity.script(READ_CONTACTS, "GRANT");
+        activity.launch();
+    }
+
+    @Test
+    public void parentRationaleAcknowledgedThroughSubclass() throws Exception {
+
+        activity.scriptRationale(READ_CONTACTS, true);
+        activity.perform("onImportClicked");
+        Truth.assertThat(activity.getCount("rationaleCount")).isEqualTo(1);
+        Truth.assertThat(activity.getScriptedRequests()).isEmpty();
+
+        // The subclass can't handle the request code of its parent, which requests
+        // the permissions of its rationale.
+        activity.perform("acknowledgeRationale");
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("importedCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void requestCodesDifferAcrossCompilations() throws Exception {
+
+        int libraryRequestCode = AspectGenerator.getFirstRequestCode(
+                TEST_PACKAGE + ".RationaleLibraryActivity", 1);
+        int consumerRequestCode = AspectGenerator.getFirstRequestCode(
+                TEST_PACKAGE + ".RationaleConsumerActivity", 1);
+        Truth.assertThat(consumerRequestCode).isNotEqualTo(libraryRequestCode);
+
+        // The parent handles its own result, and the subclass its own.
+        activity.perform("onImportClicked");
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("importedCount")).isEqualTo(1);
+
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(1);
+        Truth.assertThat(activity.getCount("importedCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void subclassRationaleAcknowledged() throws Exception {
+
+        activity.scriptRationale(CAMERA, true);
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(1);
+        Truth.assertThat(activity.getScriptedRequests()).containsExactly(CAMERA);
+    }
+}
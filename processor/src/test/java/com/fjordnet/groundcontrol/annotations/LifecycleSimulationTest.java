@@ -0,0 +1,224 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import com.fjordnet.groundcontrol.lifecycle.LifecycleHarness;
+import com.fjordnet.groundcontrol.lifecycle.LifecycleSimulation;
+import com.google.common.truth.Truth;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit test cases running woven test classes through scripted lifecycles on the JVM,
+ * validating that permission results and rationales survive recreations of their instances.
+ */
+public class LifecycleSimulationTest extends GroundControlTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String READ_CONTACTS = "android.permission.READ_CONTACTS";
+
+    /** Number of cycles of the stress tests, configurable for benchmarking. */
+    private static final int CYCLES = Integer.getInteger("groundcontrol.lifecycle.cycles", 1000);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LifecycleHarness harness;
+
+    @Before
+    public void setUp() throws Exception {
+        harness = new LifecycleHarness(
+                weave(compile(Collections.emptyList(), "LifecycleActivity", "LifecycleFragment"),
+                        temporaryFolder),
+                temporaryFolder.newFolder("stubs"));
+    }
+
+    @Test
+    public void resultDeliveredAfterRecreation() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.launch();
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.getPendingRequestCount()).isEqualTo(1);
+
+        activity.recreate();
+        Truth.assertThat(activity.answer(true)).isTrue();
+
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(1);
+        Truth.assertThat(activity.getCount("capturedQuality")).isEqualTo(90);
+        Truth.assertThat(activity.getCount("deniedCount")).isEqualTo(0);
+    }
+
+    @Test
+    public void denialDeliveredAfterRecreation() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.launch();
+        activity.perform("onCaptureClicked");
+
+        activity.recreate();
+        activity.recreate();
+        Truth.assertThat(activity.answer(false)).isTrue();
+
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(0);
+        Truth.assertThat(activity.getCount("deniedCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void grantedPermissionsNotRequested() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.setPermissionState(CAMERA, true, false);
+        activity.launch();
+        activity.perform("onCaptureClicked");
+
+        Truth.assertThat(activity.getPendingRequestCount()).isEqualTo(0);
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void permanentDenialShortCircuited() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.launch();
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.answer(false)).isTrue();
+
+        // Denied again, with the user choosing not to be asked again.
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.denyPermanently()).isTrue();
+        Truth.assertThat(activity.getCount("deniedCount")).isEqualTo(2);
+
+        // Denied without requesting the permission, including after a recreation.
+        activity.recreate();
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.getPendingRequestCount()).isEqualTo(0);
+        Truth.assertThat(activity.getCount("deniedCount")).isEqualTo(1);
+
+        // Granted from the app settings.
+        activity.setPermissionState(CAMERA, true, false);
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(1);
+
+        // Revoked from the app settings, after which the user is asked again.
+        activity.setPermissionState(CAMERA, false, false);
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.getPendingRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void rationaleRestartedAfterRecreation() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.setPermissionState(READ_CONTACTS, false, true);
+        activity.launch();
+        activity.perform("onImportClicked");
+        Truth.assertThat(activity.getCount("rationaleCount")).isEqualTo(1);
+        Truth.assertThat(activity.getPendingRequestCount()).isEqualTo(0);
+
+        // The rationale is shown again by the new instance, whose listener requests
+        // the permissions once acknowledged.
+        activity.recreate();
+        Truth.assertThat(activity.getCount("rationaleCount")).isEqualTo(1);
+
+        activity.perform("acknowledgeRationale");
+        Truth.assertThat(activity.getPendingRequestCount()).isEqualTo(1);
+
+        activity.recreate();
+        Truth.assertThat(activity.getCount("rationaleCount")).isEqualTo(0);
+        Truth.assertThat(activity.answer(true)).isTrue();
+        Truth.assertThat(activity.getCount("importedCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void fragmentResultDeliveredAfterRecreation() throws Exception {
+
+        LifecycleSimulation fragment = simulate("LifecycleFragment");
+        fragment.launch();
+        fragment.perform("onCaptureClicked");
+
+        fragment.recreate();
+        Truth.assertThat(fragment.answer(true)).isTrue();
+
+        Truth.assertThat(fragment.getCount("capturedCount")).isEqualTo(1);
+        Truth.assertThat(fragment.getCount("capturedQuality")).isEqualTo(90);
+    }
+
+    @Test
+    public void activityResultsSurviveRepeatedRecreations() throws Exception {
+        assertResultsSurviveRepeatedRecreations("LifecycleActivity");
+    }
+
+    @Test
+    public void fragmentResultsSurviveRepeatedRecreations() throws Exception {
+        assertResultsSurviveRepeatedRecreations("LifecycleFragment");
+    }
+
+    /**
+     * Request permissions, rotate the component twice, then answer the request, for the
+     * configured number of cycles, alternating between grants and denials.
+     * The duration of the cycles is printed, for comparing the overhead of changes to the
+     * generated lifecycle code.
+     */
+    private void assertResultsSurviveRepeatedRecreations(String testClassName)
+            throws Exception {
+
+        LifecycleSimulation simulation = simulate(testClassName);
+        simulation.launch();
+
+        long startTime = System.nanoTime();
+
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+
+            boolean granted = 0 == cycle % 2;
+            simulation.setPermissionState(CAMERA, false, false);
+            simulation.perform("onCaptureClicked");
+
+            simulation.recreate();
+            simulation.recreate();
+            Truth.assertThat(simulation.answer(granted)).isTrue();
+
+            Truth.assertWithMessage("Cycle %s", cycle)
+                    .that(simulation.getCount(granted ? "capturedCount" : "deniedCount"))
+                    .isEqualTo(1);
+        }
+
+        long duration = System.nanoTime() - startTime;
+        simulation.destroy();
+
+        Truth.assertThat(simulation.getPendingRequestCount()).isEqualTo(0);
+
+        System.out.println(String.format("%1$s: %2$d cycles of 2 recreations in %3$d ms "
+                        + "(%4$d us per cycle), %5$d permission checks",
+                testClassName, // 1
+                CYCLES, // 2
+                TimeUnit.NANOSECONDS.toMillis(duration), // 3
+                TimeUnit.NANOSECONDS.toMicros(duration / Math.max(1, CYCLES)), // 4
+                simulation.getPermissionChecks() // 5
+        ));
+    }
+
+    private LifecycleSimulation simulate(String testClassName) throws Exception {
+        return harness.simulate(TEST_PACKAGE + "." + testClassName);
+    }
+}
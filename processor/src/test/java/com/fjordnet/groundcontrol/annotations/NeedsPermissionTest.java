@@ -48,6 +48,31 @@ public class NeedsPermissionTest extends GroundControlTest {
                 .withErrorContaining("must inherit from Activity or Fragment");
     }
 
+    @Test
+    public void successCheckOnlyWithContextAccessor() {
+        assertThat("CheckOnlyPrefetcher").compilesWithoutWarnings();
+    }
+
+    @Test
+    public void successCheckOnlyInContext() {
+        assertThat("CheckOnlyService").compilesWithoutWarnings();
+    }
+
+    @Test
+    public void successCheckOnlyInActivity() {
+        assertThat("CheckOnlyMixedActivity").compilesWithoutWarnings();
+    }
+
+    @Test
+    public void errorCheckOnlyWithoutContext() {
+
+        assertThat("CheckOnlyWithoutContext")
+                .failsToCompile()
+                .withWarningCount(0)
+                .withErrorCount(1)
+                .withErrorContaining("or have or inherit an accessible method getContext()");
+    }
+
     @Test
     public void errorPrivateMethod() {
 
@@ -117,6 +142,11 @@ public class NeedsPermissionTest extends GroundControlTest {
         assertThat("AnnotatedNonInheritedMethod", "LogWriterActivity").compilesWithoutWarnings();
     }
 
+    @Test
+    public void successAnnotatedClassHierarchy() {
+        assertThat("HierarchySubFragment", "HierarchyBaseFragment").compilesWithoutWarnings();
+    }
+
     @Test
     public void successAnnotatedAbstractMethod() {
         assertThat("LogWriterActivity").compilesWithoutWarnings();
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017-2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import com.fjordnet.groundcontrol.lifecycle.LifecycleHarness;
+import com.google.common.truth.Truth;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+/**
+ * Unit test cases loading woven test classes in the JVM, validating that pending permission
+ * callbacks don't retain the activity they were created for, that unanswered requests
+ * release the arguments captured by their callbacks once destroyed, and that answers are
+ * delivered however late they arrive.
+ */
+public class PendingCallbackRetentionTest extends GroundControlTest {
+
+    private static final String ACTIVITY_CLASS = TEST_PACKAGE + ".PendingCallbackActivity";
+    private static final String CALLBACK_CLASS = TEST_PACKAGE
+            + ".PendingCallbackActivityGroundControlAspect$UploadPhotoPermissionCallback";
+    private static final String INTERMEDIARY_CLASS = TEST_PACKAGE
+            + ".PendingCallbackActivityGroundControlAspect$GroundControlledActivity";
+
+    private static final String GROUND_CONTROL_CLASS = "com.fjordnet.groundcontrol.GroundControl";
+
+    private static final String[] PERMISSIONS = {"android.permission.CAMERA"};
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ClassLoader wovenClassLoader;
+
+    @Before
+    public void setUp() throws Exception {
+
+        File wovenDir = weave(compile(Collections.emptyList(), "PendingCallbackActivity"),
+                temporaryFolder);
+
+        // Results are recorded through the runtime, which needs functional Android classes.
+        wovenClassLoader = new LifecycleHarness(wovenDir, temporaryFolder.newFolder("stubs"))
+                .createClassLoader();
+    }
+
+    @Test
+    public void callbackDoesNotRetainTarget() throws Exception {
+
+        Object activity = newActivity();
+        Object callback = newCallback(activity, new byte[1024]);
+
+        WeakReference<Object> activityReference = new WeakReference<>(activity);
+        activity = null;
+        awaitCollection(activityReference);
+
+        Truth.assertThat(activityReference.get()).isNull();
+
+        // Results delivered after the target is gone are dropped.
+        callback.getClass().getMethod("deny").invoke(callback);
+        callback.getClass().getMethod("grant").invoke(callback);
+    }
+
+    @Test
+    public void unansweredRequestReleasesArgumentsOnDestroy() throws Exception {
+
+        Object activity = newActivity();
+        Object callback = newCallback(activity, new byte[1024]);
+        int requestCode = (int) callback.getClass().getMethod("getRequestCode").invoke(callback);
+
+        // Pending request, which the user never answered.
+        setIntermediaryField(activity, "__groundControlPendingPermission", callback);
+        setIntermediaryField(activity, "__groundControlCurrentRequestCode", requestCode);
+
+        WeakReference<Object> photoReference = new WeakReference<>(
+                getField(callback.getClass(), "photo").get(callback));
+        callback = null;
+
+        Method onDestroy = wovenClassLoader.loadClass(INTERMEDIARY_CLASS)
+                .getDeclaredMethod("onDestroy");
+        onDestroy.setAccessible(true);
+        onDestroy.invoke(activity);
+        awaitCollection(photoReference);
+
+        // The activity is still reachable, but no longer retains the captured argument.
+        Truth.assertThat(photoReference.get()).isNull();
+        Truth.assertThat(getIntermediaryField(activity, "__groundControlPendingPermission"))
+                .isNull();
+        Truth.assertThat(getField(activity.getClass(), "deniedCount").get(activity))
+                .isEqualTo(0);
+    }
+
+    @Test
+    public void answeredRequestInvokesCallback() throws Exception {
+
+        Object activity = newActivity();
+        Object callback = newCallback(activity, new byte[1024]);
+        int requestCode = (int) callback.getClass().getMethod("getRequestCode").invoke(callback);
+
+        setIntermediaryField(activity, "__groundControlPendingPermission", callback);
+        setIntermediaryField(activity, "__groundControlCurrentRequestCode", requestCode);
+
+        WeakReference<Object> photoReference = new WeakReference<>(
+                getField(callback.getClass(), "photo").get(callback));
+        callback = null;
+
+        activity.getClass()
+                .getMethod("onRequestPermissionsResult", int.class, String[].class, int[].class)
+                .invoke(activity, requestCode, PERMISSIONS, new int[] {-1});
+        awaitCollection(photoReference);
+
+        Truth.assertThat(getField(activity.getClass(), "deniedCount").get(activity))
+                .isEqualTo(1);
+        Truth.assertThat(getIntermediaryField(activity, "__groundControlPendingPermission"))
+                .isNull();
+        Truth.assertThat(photoReference.get()).isNull();
+    }
+
+    @Test
+    public void answerDeliveredAfterRequestExpiry() throws Exception {
+
+        Class<?> groundControl = wovenClassLoader.loadClass(GROUND_CONTROL_CLASS);
+        Method setRequestExpiry = groundControl.getMethod("setRequestExpiry", long.class);
+        setRequestExpiry.invoke(null, 1L);
+
+        try {
+            Object activity = newActivity();
+            Object callback = newCallback(activity, new byte[1024]);
+            int requestCode = (int) callback.getClass().getMethod("getRequestCode")
+                    .invoke(callback);
+
+            setIntermediaryField(activity, "__groundControlPendingPermission", callback);
+            setIntermediaryField(activity, "__groundControlCurrentRequestCode", requestCode);
+
+            // The user left the system dialog open well beyond the request expiry.
+            Thread.sleep(20);
+
+            activity.getClass()
+                    .getMethod("onRequestPermissionsResult",
+                            int.class, String[].class, int[].class)
+                    .invoke(activity, requestCode, PERMISSIONS, new int[] {-1});
+
+            Truth.assertThat(getField(activity.getClass(), "deniedCount").get(activity))
+                    .isEqualTo(1);
+
+        } finally {
+            setRequestExpiry.invoke(null,
+                    groundControl.getField("DEFAULT_REQUEST_EXPIRY").get(null));
+        }
+    }
+
+    /**
+     * Instantiate the woven test activity without running the constructors of the Android
+     * framework classes, which aren't functional on the JVM.
+     */
+    private Object newActivity() throws Exception {
+
+        Field unsafeField = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+        unsafeField.setAccessible(true);
+        Object unsafe = unsafeField.get(null);
+
+        return unsafe.getClass()
+                .getMethod("allocateInstance", Class.class)
+                .invoke(unsafe, wovenClassLoader.loadClass(ACTIVITY_CLASS));
+    }
+
+    private Object newCallback(Object activity, byte[] photo) throws Exception {
+        return wovenClassLoader.loadClass(CALLBACK_CLASS)
+                .getConstructor(wovenClassLoader.loadClass(INTERMEDIARY_CLASS), byte[].class)
+                .newInstance(activity, photo);
+    }
+
+    private Object getIntermediaryField(Object activity, String name) throws Exception {
+        return getField(wovenClassLoader.loadClass(INTERMEDIARY_CLASS), name).get(activity);
+    }
+
+    private void setIntermediaryField(Object activity, String name, Object value)
+            throws Exception {
+        getField(wovenClassLoader.loadClass(INTERMEDIARY_CLASS), name).set(activity, value);
+    }
+
+    private Field getField(Class<?> type, String name) throws Exception {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    /**
+     * Request garbage collection until the specified reference is cleared, or give up after
+     * a number of attempts.
+     */
+    private void awaitCollection(WeakReference<?> reference) throws InterruptedException {
+        for (int attempt = 0; attempt < 50 && null != reference.get(); attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+    }
+}
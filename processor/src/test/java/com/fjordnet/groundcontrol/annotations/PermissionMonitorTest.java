@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import com.fjordnet.groundcontrol.lifecycle.LifecycleHarness;
+import com.fjordnet.groundcontrol.lifecycle.LifecycleSimulation;
+import com.google.common.truth.Truth;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+
+/**
+ * Unit test cases running the permission monitor against the scripted permission backend,
+ * validating that subscribers are notified of exactly the changes to the permissions they
+ * observe, found when activities resume.
+ */
+public class PermissionMonitorTest extends GroundControlTest {
+
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String READ_CONTACTS = "android.permission.READ_CONTACTS";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LifecycleSimulation activity;
+
+    @Before
+    public void setUp() throws Exception {
+
+        LifecycleHarness harness = new LifecycleHarness(
+                weave(compile(Collections.emptyList(), "LifecycleActivity"), temporaryFolder),
+                temporaryFolder.newFolder("stubs"));
+
+        activity = harness.simulate(TEST_PACKAGE + ".LifecycleActivity");
+        activity.scriptGrant(CAMERA, false);
+        activity.launch();
+    }
+
+    @Test
+    public void lifecycleCallbacksRegisteredWhileSubscribed() throws Exception {
+
+        Truth.assertThat(activity.getActivityLifecycleCallbacksCount()).isEqualTo(0);
+
+        // Registered with the first subscriber only.
+        activity.subscribe("first", false, CAMERA);
+        Truth.assertThat(activity.getActivityLifecycleCallbacksCount()).isEqualTo(1);
+        activity.subscribe("second", false, READ_CONTACTS);
+        Truth.assertThat(activity.getActivityLifecycleCallbacksCount()).isEqualTo(1);
+
+        // Unregistered with the last subscriber only.
+        activity.unsubscribe("first");
+        Truth.assertThat(activity.getActivityLifecycleCallbacksCount()).isEqualTo(1);
+        activity.unsubscribe("second");
+        Truth.assertThat(activity.getActivityLifecycleCallbacksCount()).isEqualTo(0);
+
+        activity.subscribe("first", false, CAMERA);
+        Truth.assertThat(activity.getActivityLifecycleCallbacksCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void baselineEvaluatedOnSubscribe() throws Exception {
+
+        activity.scriptGrant(CAMERA, true);
+        activity.subscribe("first", false, CAMERA, READ_CONTACTS);
+        activity.resume();
+
+        // Permissions already observed keep their baseline for later subscribers.
+        activity.subscribe("second", false, CAMERA);
+        activity.resume();
+
+        Truth.assertThat(activity.getPermissionChanges("first")).isEmpty();
+        Truth.assertThat(activity.getPermissionChanges("second")).isEmpty();
+    }
+
+    @Test
+    public void changesFoundOnResume() throws Exception {
+
+        activity.subscribe("first", false, CAMERA, READ_CONTACTS);
+
+        activity.scriptGrant(CAMERA, true);
+        Truth.assertThat(activity.getPermissionChanges("first")).isEmpty();
+        activity.resume();
+        Truth.assertThat(activity.getPermissionChanges("first")).containsExactly("+" + CAMERA);
+
+        // Unchanged permissions aren't notified again.
+        activity.resume();
+        Truth.assertThat(activity.getPermissionChanges("first")).hasSize(1);
+
+        activity.scriptGrant(CAMERA, false);
+        activity.scriptGrant(READ_CONTACTS, true);
+        activity.resume();
+        Truth.assertThat(activity.getPermissionChanges("first")).containsExactly(
+                "+" + CAMERA,
+                "+" + READ_CONTACTS + " -" + CAMERA).inOrder();
+    }
+
+    @Test
+    public void changesFilteredPerSubscriber() throws Exception {
+
+        activity.subscribe("camera", false, CAMERA);
+        activity.subscribe("contacts", false, READ_CONTACTS);
+        activity.subscribe("both", false, READ_CONTACTS, CAMERA);
+
+        activity.scriptGrant(CAMERA, true);
+        activity.resume();
+
+        Truth.assertThat(activity.getPermissionChanges("camera")).containsExactly("+" + CAMERA);
+        Truth.assertThat(activity.getPermissionChanges("contacts")).isEmpty();
+        Truth.assertThat(activity.getPermissionChanges("both")).containsExactly("+" + CAMERA);
+
+        // Unsubscribed listeners are no longer notified.
+        activity.unsubscribe("camera");
+        activity.scriptGrant(CAMERA, false);
+        activity.resume();
+
+        Truth.assertThat(activity.getPermissionChanges("camera")).containsExactly("+" + CAMERA);
+        Truth.assertThat(activity.getPermissionChanges("both")).containsExactly(
+                "+" + CAMERA,
+                "-" + CAMERA).inOrder();
+    }
+
+    @Test
+    public void unsubscribedWhileNotified() throws Exception {
+
+        activity.subscribe("once", true, CAMERA);
+        activity.subscribe("always", false, CAMERA);
+
+        activity.scriptGrant(CAMERA, true);
+        activity.resume();
+
+        // Later subscribers are still notified of the same changes.
+        Truth.assertThat(activity.getPermissionChanges("once")).containsExactly("+" + CAMERA);
+        Truth.assertThat(activity.getPermissionChanges("always")).containsExactly("+" + CAMERA);
+        Truth.assertThat(activity.getActivityLifecycleCallbacksCount()).isEqualTo(1);
+
+        activity.scriptGrant(CAMERA, false);
+        activity.resume();
+
+        Truth.assertThat(activity.getPermissionChanges("once")).containsExactly("+" + CAMERA);
+        Truth.assertThat(activity.getPermissionChanges("always")).containsExactly(
+                "+" + CAMERA,
+                "-" + CAMERA).inOrder();
+    }
+
+    @Test
+    public void lastSubscriberUnsubscribedWhileNotified() throws Exception {
+
+        activity.subscribe("once", true, CAMERA);
+
+        activity.scriptGrant(CAMERA, true);
+        activity.resume();
+
+        Truth.assertThat(activity.getPermissionChanges("once")).containsExactly("+" + CAMERA);
+        Truth.assertThat(activity.getActivityLifecycleCallbacksCount()).isEqualTo(0);
+    }
+}
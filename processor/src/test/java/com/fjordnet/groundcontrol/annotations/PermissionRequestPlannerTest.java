@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import com.fjordnet.groundcontrol.lifecycle.LifecycleHarness;
+import com.fjordnet.groundcontrol.lifecycle.LifecycleSimulation;
+import com.google.common.truth.Truth;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+
+/**
+ * Unit test cases running woven test classes against the scripted permission backend,
+ * validating that permission requests are ordered by platform group, and that requests made
+ * while another request is outstanding are queued rather than cancelled.
+ */
+public class PermissionRequestPlannerTest extends GroundControlTest {
+
+    private static final String ACCESS_FINE_LOCATION = "android.permission.ACCESS_FINE_LOCATION";
+    private static final String ACCESS_COARSE_LOCATION =
+            "android.permission.ACCESS_COARSE_LOCATION";
+    private static final String READ_CONTACTS = "android.permission.READ_CONTACTS";
+    private static final String WRITE_CONTACTS = "android.permission.WRITE_CONTACTS";
+    private static final String CAMERA = "android.permission.CAMERA";
+
+    private static final String LOCATION = "android.permission-group.LOCATION";
+    private static final String CONTACTS = "android.permission-group.CONTACTS";
+    private static final String CAMERA_GROUP = "android.permission-group.CAMERA";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LifecycleSimulation activity;
+
+    @Before
+    public void setUp() throws Exception {
+
+        LifecycleHarness harness = new LifecycleHarness(
+                weave(compile(Collections.emptyList(), "PlannedRequestsActivity"),
+                        temporaryFolder),
+                temporaryFolder.newFolder("stubs"));
+
+        activity = harness.simulate(TEST_PACKAGE + ".PlannedRequestsActivity");
+        activity.script(ACCESS_FINE_LOCATION, "GRANT");
+        activity.script(ACCESS_COARSE_LOCATION, "GRANT");
+        activity.script(READ_CONTACTS, "GRANT");
+        activity.script(WRITE_CONTACTS, "GRANT");
+        activity.script(CAMERA, "GRANT");
+        activity.launch();
+    }
+
+    @Test
+    public void permissionsOrderedByGroup() throws Exception {
+
+        activity.perform("onCheckInClicked");
+
+        Truth.assertThat(activity.getPlannedGroups()).containsExactly(LOCATION, CONTACTS)
+                .inOrder();
+        Truth.assertThat(activity.getScriptedRequests()).containsExactly(
+                ACCESS_FINE_LOCATION,
+                ACCESS_COARSE_LOCATION,
+                READ_CONTACTS,
+                WRITE_CONTACTS).inOrder();
+
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("checkedInCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void requestQueuedWhileAnotherIsOutstanding() throws Exception {
+
+        activity.perform("onCheckInAndCaptureClicked");
+        Truth.assertThat(activity.getPlannedGroups()).containsExactly(LOCATION, CONTACTS)
+                .inOrder();
+
+        // The camera request is sent once the first request is answered, rather than
+        // cancelled by the platform. The activity only awaits its latest request.
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("checkedInCount")).isEqualTo(0);
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(0);
+        Truth.assertThat(activity.getPlannedGroups()).containsExactly(
+                LOCATION, CONTACTS, CAMERA_GROUP).inOrder();
+
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void queuedRequestSupersededByLaterRequest() throws Exception {
+
+        activity.perform("onCheckInClicked");
+        activity.perform("onCaptureClicked");
+        activity.perform("onCaptureClicked");
+
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(0);
+
+        Truth.assertThat(activity.getScriptedRequests()).containsExactly(
+                ACCESS_FINE_LOCATION,
+                ACCESS_COARSE_LOCATION,
+                READ_CONTACTS,
+                WRITE_CONTACTS,
+                CAMERA).inOrder();
+        Truth.assertThat(activity.getCount("checkedInCount")).isEqualTo(0);
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void resultsOnlyReleaseRequestsQueuedForTheirActivity() throws Exception {
+
+        LifecycleSimulation otherActivity = activity.simulateInSameProcess(
+                TEST_PACKAGE + ".PlannedRequestsActivity");
+        otherActivity.launch();
+
+        otherActivity.perform("onCaptureClicked");
+        activity.perform("onCheckInClicked");
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.getScriptedRequests()).hasSize(5);
+
+        // The result for the other activity leaves the camera request of this one queued.
+        Truth.assertThat(activity.answerNextScriptedRequest()).isTrue();
+        Truth.assertThat(otherActivity.getCount("capturedCount")).isEqualTo(1);
+        Truth.assertThat(activity.getScriptedRequests()).hasSize(5);
+
+        Truth.assertThat(activity.answerNextScriptedRequest()).isTrue();
+        Truth.assertThat(activity.getScriptedRequests()).hasSize(6);
+        Truth.assertThat(activity.answerNextScriptedRequest()).isTrue();
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void queuedRequestSentOnceOutstandingRequestExpires() throws Exception {
+
+        activity.setRequestExpiry(400);
+        activity.perform("onCheckInClicked");
+        Thread.sleep(250);
+        activity.perform("onCaptureClicked");
+
+        // The result of the first request never comes, and the queued camera request is sent
+        // upon the next request, which is queued in turn.
+        Thread.sleep(250);
+        activity.perform("onCheckInClicked");
+        Truth.assertThat(activity.getPlannedGroups()).containsExactly(
+                LOCATION, CONTACTS, CAMERA_GROUP).inOrder();
+
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(2);
+        Truth.assertThat(activity.getPlannedGroups()).containsExactly(
+                LOCATION, CONTACTS, CAMERA_GROUP, LOCATION, CONTACTS).inOrder();
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("checkedInCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void expiredQueuedRequestDropped() throws Exception {
+
+        activity.setRequestExpiry(200);
+        activity.perform("onCheckInAndCaptureClicked");
+        Thread.sleep(300);
+
+        activity.perform("onCheckInClicked");
+        Truth.assertThat(activity.getPlannedGroups()).containsExactly(
+                LOCATION, CONTACTS, LOCATION, CONTACTS).inOrder();
+        Truth.assertThat(activity.getScriptedRequests()).doesNotContain(CAMERA);
+    }
+
+    @Test
+    public void queuedRequestDroppedWhenHostRecreated() throws Exception {
+
+        activity.perform("onCheckInAndCaptureClicked");
+        activity.recreate();
+
+        // The queued request would deliver its result to the destroyed activity.
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(0);
+        Truth.assertThat(activity.getPlannedGroups()).containsExactly(LOCATION, CONTACTS)
+                .inOrder();
+
+        // The new activity requests permissions right away.
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(1);
+    }
+}
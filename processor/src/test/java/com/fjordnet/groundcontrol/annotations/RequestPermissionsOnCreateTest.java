@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017-2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import com.google.common.truth.Truth;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static java.lang.String.format;
+
+/**
+ * Unit test cases for the {@link RequestPermissionsOnCreate} annotation.
+ */
+public class RequestPermissionsOnCreateTest extends GroundControlTest {
+
+    private static final String ON_CREATE_PERMISSIONS = "__groundControlOnCreatePermissions";
+    private static final String REQUEST_ON_CREATE_PERMISSIONS
+            = "__groundControlRequestOnCreatePermissions();";
+
+    @Test
+    public void successRequestOnCreate() {
+        assertThat("OnCreateActivity").compilesWithoutWarnings();
+    }
+
+    @Test
+    public void requestUnionOfPermissionsOnCreate() throws IOException {
+
+        String aspect = generatedAspectFor("OnCreateActivity");
+
+        // Each permission is requested once, in a single batch.
+        Truth.assertThat(aspect).contains("protected String[] " + ON_CREATE_PERMISSIONS
+                + "() { return new String[] {\"android.permission.CAMERA\", "
+                + "\"android.permission.READ_CONTACTS\", "
+                + "\"android.permission.WRITE_CONTACTS\"}; }");
+        Truth.assertThat(aspect).contains("if (null == savedInstanceState) {\n\t\t\t\t"
+                + REQUEST_ON_CREATE_PERMISSIONS);
+
+        // Three methods with distinct permissions, plus the request on creation.
+        int firstRequestCode = AspectGenerator.getFirstRequestCode(
+                TEST_PACKAGE + ".OnCreateActivity", 4);
+        Truth.assertThat(aspect).contains(format("return %1$d <= requestCode && "
+                + "requestCode <= %2$d;", firstRequestCode, firstRequestCode + 3));
+        Truth.assertThat(aspect).contains(format("GroundControl.requestPermissions(this, "
+                + "permissionSnapshot.missingPermissions, %1$d);", firstRequestCode + 3));
+    }
+
+    @Test
+    public void noRequestOnCreateByDefault() throws IOException {
+
+        String aspect = generatedAspectFor("StorageManagerActivity");
+
+        Truth.assertThat(aspect).doesNotContain(ON_CREATE_PERMISSIONS);
+        Truth.assertThat(aspect).contains("if (null == savedInstanceState) { return; }");
+    }
+
+    @Test
+    public void subclassRequestsInheritedPermissionsOnCreate() throws IOException {
+
+        String rootAspect = generatedAspectFor("HierarchyBaseFragment", "OnCreateSubFragment");
+        String subclassAspect = generatedAspectFor("OnCreateSubFragment",
+                "HierarchyBaseFragment");
+
+        // The root doesn't request permissions on creation itself,
+        // but requests those of the subclass on its behalf.
+        Truth.assertThat(rootAspect).contains("protected String[] " + ON_CREATE_PERMISSIONS
+                + "() { return null; }");
+        Truth.assertThat(rootAspect).contains(REQUEST_ON_CREATE_PERMISSIONS);
+        Truth.assertThat(subclassAspect).contains("@Override protected String[] "
+                + ON_CREATE_PERMISSIONS + "() { return new String[] {"
+                + "\"android.permission.ACCESS_FINE_LOCATION\", "
+                + "\"android.permission.RECORD_AUDIO\"}; }");
+        Truth.assertThat(subclassAspect).doesNotContain(REQUEST_ON_CREATE_PERMISSIONS);
+    }
+
+    @Test
+    public void warningWithoutNeedsPermission() {
+
+        assertThat("OnCreateWithoutNeedsPermission")
+                .compilesWithoutError()
+                .withWarningContaining("has no effect without any method annotated with");
+    }
+}
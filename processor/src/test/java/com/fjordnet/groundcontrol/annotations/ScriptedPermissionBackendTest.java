@@ -0,0 +1,200 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import com.fjordnet.groundcontrol.lifecycle.LifecycleHarness;
+import com.fjordnet.groundcontrol.lifecycle.LifecycleSimulation;
+import com.google.common.truth.Truth;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Collections;
+
+/**
+ * Unit test cases running woven test classes on the JVM against the scripted permission
+ * backend, as local unit tests of apps do, validating that scripted grants, denials and
+ * rationales reach the annotated methods.
+ */
+public class ScriptedPermissionBackendTest extends GroundControlTest {
+
+    private static final String ACCESS_FINE_LOCATION = "android.permission.ACCESS_FINE_LOCATION";
+    private static final String CAMERA = "android.permission.CAMERA";
+    private static final String READ_CONTACTS = "android.permission.READ_CONTACTS";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LifecycleHarness harness;
+
+    @Before
+    public void setUp() throws Exception {
+        harness = new LifecycleHarness(
+                weave(compile(Collections.emptyList(), "LifecycleActivity", "LifecycleFragment"),
+                        temporaryFolder),
+                temporaryFolder.newFolder("stubs"));
+    }
+
+    @Test
+    public void scriptedGrantInvokesMethod() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.script(CAMERA, "GRANT");
+        activity.launch();
+
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(0);
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(1);
+        Truth.assertThat(activity.getCount("capturedQuality")).isEqualTo(90);
+
+        // Granted from then on, without requesting it again.
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(0);
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(2);
+
+        // Nothing reached the simulated device.
+        Truth.assertThat(activity.getPendingRequestCount()).isEqualTo(0);
+        Truth.assertThat(activity.getScriptedRequests()).containsExactly(CAMERA);
+    }
+
+    @Test
+    public void scriptedDenialShowsRationale() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.script(READ_CONTACTS, "DENY");
+        activity.launch();
+
+        activity.perform("onImportClicked");
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("importedCount")).isEqualTo(0);
+
+        // A rationale is recommended after a denial, and requests wait for it.
+        activity.perform("onImportClicked");
+        Truth.assertThat(activity.getCount("rationaleCount")).isEqualTo(1);
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(0);
+
+        activity.script(READ_CONTACTS, "GRANT");
+        activity.perform("acknowledgeRationale");
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(activity.getCount("importedCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void scriptedRationaleShownBeforeRequest() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.scriptRationale(READ_CONTACTS, true);
+        activity.launch();
+
+        activity.perform("onImportClicked");
+        Truth.assertThat(activity.getCount("rationaleCount")).isEqualTo(1);
+        Truth.assertThat(activity.getScriptedRequests()).isEmpty();
+    }
+
+    @Test
+    public void scriptedPermanentDenialShortCircuited() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.launch();
+
+        // Denied, then denied again once a rationale is recommended.
+        for (String outcome : new String[] {"DENY", "DENY_PERMANENTLY"}) {
+            activity.script(CAMERA, outcome);
+            activity.perform("onCaptureClicked");
+            Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+        }
+        Truth.assertThat(activity.getCount("deniedCount")).isEqualTo(2);
+
+        // Denied without requesting the permission again.
+        activity.perform("onCaptureClicked");
+        Truth.assertThat(activity.getCount("deniedCount")).isEqualTo(3);
+        Truth.assertThat(activity.getScriptedRequests()).containsExactly(CAMERA, CAMERA);
+    }
+
+    @Test
+    public void scriptedDismissalsNotPermanentDenials() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.script(CAMERA, "DISMISS");
+        activity.launch();
+
+        // Denials without any rationale recommended before or after, as from Android 11.
+        for (int request = 1; request <= 3; request++) {
+            activity.perform("onCaptureClicked");
+            Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(1);
+            Truth.assertThat(activity.getCount("deniedCount")).isEqualTo(request);
+        }
+
+        Truth.assertThat(activity.getScriptedRequests()).containsExactly(CAMERA, CAMERA, CAMERA);
+    }
+
+    @Test
+    public void scriptedInstallTimeGrantsSkipRequests() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.scriptGrantedAtInstall(true);
+        activity.scriptRationale(READ_CONTACTS, true);
+        activity.launch();
+
+        // Before Android M, gated methods run without checking or requesting permissions.
+        activity.perform("onCaptureClicked");
+        activity.perform("onImportClicked");
+        activity.perform("onLocateClicked");
+        Truth.assertThat(activity.getCount("capturedCount")).isEqualTo(1);
+        Truth.assertThat(activity.getCount("importedCount")).isEqualTo(1);
+        Truth.assertThat(activity.getCount("rationaleCount")).isEqualTo(0);
+        Truth.assertThat(activity.getCount("locatedCount")).isEqualTo(1);
+        Truth.assertThat(activity.getScriptedRequests()).isEmpty();
+        Truth.assertThat(activity.answerScriptedRequests()).isEqualTo(0);
+    }
+
+    @Test
+    public void scriptedResultDeliveredToFragment() throws Exception {
+
+        LifecycleSimulation fragment = simulate("LifecycleFragment");
+        fragment.script(CAMERA, "GRANT");
+        fragment.launch();
+
+        fragment.perform("onCaptureClicked");
+        Truth.assertThat(fragment.answerScriptedRequests()).isEqualTo(1);
+        Truth.assertThat(fragment.getCount("capturedCount")).isEqualTo(1);
+    }
+
+    @Test
+    public void scriptedRevocationSeenByCheckOnlyMethod() throws Exception {
+
+        LifecycleSimulation activity = simulate("LifecycleActivity");
+        activity.scriptGrant(ACCESS_FINE_LOCATION, true);
+        activity.launch();
+
+        activity.perform("onLocateClicked");
+        Truth.assertThat(activity.getCount("locatedCount")).isEqualTo(1);
+
+        // Revoking the permission forgets that it was found to be granted.
+        activity.scriptGrant(ACCESS_FINE_LOCATION, false);
+        activity.perform("onLocateClicked");
+        Truth.assertThat(activity.getCount("locatedCount")).isEqualTo(1);
+        Truth.assertThat(activity.getScriptedRequests()).isEmpty();
+    }
+
+    private LifecycleSimulation simulate(String testClassName) throws Exception {
+        return harness.simulate(TEST_PACKAGE + "." + testClassName);
+    }
+}
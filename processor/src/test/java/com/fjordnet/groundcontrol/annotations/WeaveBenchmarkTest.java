@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import com.google.common.truth.Truth;
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.Compiler;
+import com.google.testing.compile.JavaFileObjects;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * Benchmark of the time ajc takes to weave the aspects generated for a growing number
+ * of annotated classes, with calls advised in all classes or only in the calling classes.
+ */
+public class WeaveBenchmarkTest extends GroundControlTest {
+
+    /** Largest number of annotated classes woven, configurable for benchmarking. */
+    private static final int CLASSES = Integer.getInteger("groundcontrol.weave.classes", 8);
+
+    private static final String BENCHMARK_PACKAGE = TEST_PACKAGE + ".benchmark";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void weaveTimeByAnnotatedClasses() throws IOException {
+
+        // Loads and compiles ajc, which would otherwise count towards the first weaving.
+        weave(1, Collections.<String>emptyList());
+
+        for (int classes = Math.max(1, CLASSES / 4); classes <= CLASSES; classes *= 2) {
+
+            long allClasses = weave(classes, Collections.<String>emptyList());
+            long callingClasses = weave(classes,
+                    Collections.singletonList("-Agroundcontrol.callSites=compilation"));
+
+            System.out.println(String.format("%1$d annotated classes, each with a calling and "
+                            + "an unrelated class, woven in %2$d ms advising calls in all "
+                            + "classes, %3$d ms advising calls in calling classes only",
+                    classes, // 1
+                    TimeUnit.NANOSECONDS.toMillis(allClasses), // 2
+                    TimeUnit.NANOSECONDS.toMillis(callingClasses) // 3
+            ));
+        }
+    }
+
+    /**
+     * Compile and weave the specified number of annotated classes, along with a class
+     * calling each of them and a class that doesn't.
+     *
+     * @return the duration of the weaving, in nanoseconds.
+     */
+    private long weave(int classes, List<String> options) throws IOException {
+
+        Compilation compilation = Compiler.javac()
+                .withProcessors(new GroundControlProcessor())
+                .withOptions(options)
+                .compile(getBenchmarkFiles(classes));
+
+        TemporaryFolder weaveFolder = new TemporaryFolder(temporaryFolder.newFolder());
+        weaveFolder.create();
+
+        long startTime = System.nanoTime();
+        File wovenDir = weave(compilation, weaveFolder);
+        long duration = System.nanoTime() - startTime;
+
+        // Calls are advised however they're scoped.
+        File callingClass = new File(wovenDir, String.format("%1$s/Screen%2$dPresenter.class",
+                BENCHMARK_PACKAGE.replace('.', '/'), classes - 1));
+        Truth.assertThat(new String(Files.readAllBytes(callingClass.toPath()), "ISO-8859-1"))
+                .contains("capture_aroundBody");
+
+        return duration;
+    }
+
+    private List<JavaFileObject> getBenchmarkFiles(int classes) {
+
+        List<JavaFileObject> files = new ArrayList<>();
+
+        for (int i = 0; i < classes; i++) {
+
+            files.add(JavaFileObjects.forSourceString(
+                    String.format("%1$s.Screen%2$dActivity", BENCHMARK_PACKAGE, i),
+                    String.format("package %1$s;\n"
+                            + "public class Screen%2$dActivity extends android.app.Activity {\n"
+                            + "    @com.fjordnet.groundcontrol.annotations.NeedsPermission("
+                            + "android.Manifest.permission.CAMERA)\n"
+                            + "    public void capture() {}\n"
+                            + "}\n",
+                    BENCHMARK_PACKAGE, i)));
+
+            files.add(JavaFileObjects.forSourceString(
+                    String.format("%1$s.Screen%2$dPresenter", BENCHMARK_PACKAGE, i),
+                    String.format("package %1$s;\n"
+                            + "public class Screen%2$dPresenter {\n"
+                            + "    public void onCaptureClicked(Screen%2$dActivity a) {\n"
+                            + "        a.capture();\n"
+                            + "    }\n"
+                            + "}\n",
+                    BENCHMARK_PACKAGE, i)));
+
+            files.add(JavaFileObjects.forSourceString(
+                    String.format("%1$s.Screen%2$dModel", BENCHMARK_PACKAGE, i),
+                    String.format("package %1$s;\n"
+                            + "public class Screen%2$dModel {\n"
+                            + "    private final StringBuilder text = new StringBuilder();\n"
+                            + "    public String describe(int count) {\n"
+                            + "        for (int i = 0; i < count; i++) {\n"
+                            + "            text.append(i).append(',').append(toString());\n"
+                            + "        }\n"
+                            + "        return text.toString().trim();\n"
+                            + "    }\n"
+                            + "}\n",
+                    BENCHMARK_PACKAGE, i)));
+        }
+
+        return files;
+    }
+}
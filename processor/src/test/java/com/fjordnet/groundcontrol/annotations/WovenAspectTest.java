@@ -0,0 +1,346 @@
+/*
+ * Copyright 2017-2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.annotations;
+
+import com.google.common.truth.Truth;
+import com.google.testing.compile.Compilation;
+
+import org.aspectj.apache.bcel.classfile.ClassParser;
+import org.aspectj.apache.bcel.classfile.Code;
+import org.aspectj.apache.bcel.classfile.ConstantPool;
+import org.aspectj.apache.bcel.classfile.Field;
+import org.aspectj.apache.bcel.classfile.JavaClass;
+import org.aspectj.apache.bcel.classfile.Method;
+import org.aspectj.apache.bcel.generic.Instruction;
+import org.aspectj.apache.bcel.generic.InstructionCP;
+import org.aspectj.apache.bcel.generic.InstructionList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.tools.JavaFileObject;
+
+import static com.fjordnet.groundcontrol.annotations.ProcessorUtils.join;
+
+/**
+ * Unit test cases weaving generated aspects into test classes, validating that ajc inlines
+ * the advice without AspectJ runtime constructs that add overhead to every invocation.
+ */
+public class WovenAspectTest extends GroundControlTest {
+
+    /**
+     * Names referenced by woven classes when advice is not inlined, uses join point
+     * reflection, or requires aspect instances other than the stateless singleton.
+     */
+    private static final String[] RUNTIME_CONSTRUCTS = {
+            "AjcClosure",
+            "ajc$around$",
+            "ajc$inlineAccess",
+            "ajc$tjp",
+            "org.aspectj.runtime.reflect.Factory",
+            "org.aspectj.lang.JoinPoint",
+            "ajc$perObjectBind",
+            "ajc$perThis",
+            "ajc$perTarget",
+            "hasAspect",
+            "org.aspectj.runtime.internal.CFlow"
+    };
+
+    private static final String[] WOVEN_TEST_CLASSES = {
+            "WovenCallSites", "WovenCallSitesCaller", "HierarchySubFragment",
+            "HierarchyBaseFragment", "CheckOnlyPrefetcher"
+    };
+
+    /**
+     * Test classes containing both calls to and executions of annotated methods,
+     * so advice is woven into them regardless of the advised join points.
+     */
+    private static final List<String> ADVISED_TEST_CLASSES
+            = Arrays.asList("WovenCallSites", "HierarchySubFragment", "CheckOnlyPrefetcher");
+
+    private static final String BASELINE_PROFILE_DIR = "META-INF/groundcontrol/baseline-prof";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void adviceOnCallsInlined() throws IOException {
+        assertAdviceInlined(Collections.emptyList());
+    }
+
+    @Test
+    public void adviceOnExecutionInlined() throws IOException {
+        assertAdviceInlined(Collections.singletonList("-Agroundcontrol.joinPoint=execution"));
+    }
+
+    @Test
+    public void adviceOnScopedCallsInlined() throws IOException {
+
+        File wovenDir = assertAdviceInlined(
+                Collections.singletonList("-Agroundcontrol.callSites=compilation"));
+
+        // Calls made by other classes of the compilation are still advised.
+        File classFile = new File(wovenDir, String.format(
+                "%1$s/%2$s$1.class", TEST_PACKAGE.replace('.', '/'), "WovenCallSitesCaller"));
+        Truth.assertThat(join(getReferences(classFile, "run"), "\n"))
+                .contains("importContacts_aroundBody");
+    }
+
+    @Test
+    public void baselineProfileCoversCallSites() throws IOException {
+        assertBaselineProfileCoversWovenMembers(Collections.emptyList());
+    }
+
+    @Test
+    public void baselineProfileCoversExecutions() throws IOException {
+        assertBaselineProfileCoversWovenMembers(
+                Collections.singletonList("-Agroundcontrol.joinPoint=execution"));
+    }
+
+    @Test
+    public void nestedChecksElided() throws IOException {
+
+        File wovenDir = weave(
+                compile(Collections.emptyList(), "NestedPermissionsActivity"), temporaryFolder);
+        File classFile = new File(wovenDir, String.format("%1$s/%2$s.class",
+                TEST_PACKAGE.replace('.', '/'), "NestedPermissionsActivity"));
+
+        // Permissions of the enclosing method cover those of the methods it calls,
+        // except for the contacts permission.
+        String nestedCalls = join(getReferences(classFile, "recordVideo"), "\n");
+        Truth.assertThat(nestedCalls).contains("importContacts_aroundBody");
+        Truth.assertThat(nestedCalls).doesNotContain("takePicture_aroundBody");
+        Truth.assertThat(nestedCalls).doesNotContain("checkMicrophone_aroundBody");
+
+        String outerCalls = join(getReferences(classFile, "onSnapshotClicked"), "\n");
+        Truth.assertThat(outerCalls).contains("takePicture_aroundBody");
+    }
+
+    private File assertAdviceInlined(List<String> options) throws IOException {
+
+        File wovenDir = weave(compile(options, WOVEN_TEST_CLASSES), temporaryFolder);
+
+        for (String testClassName : WOVEN_TEST_CLASSES) {
+
+            File classFile = new File(wovenDir, String.format("%1$s/%2$s.class",
+                    TEST_PACKAGE.replace('.', '/'), testClassName));
+            Truth.assertThat(classFile.exists()).isTrue();
+
+            List<String> references = getReferences(classFile);
+
+            // Advice was inlined into the class.
+            if (ADVISED_TEST_CLASSES.contains(testClassName)) {
+                Truth.assertWithMessage(testClassName)
+                        .that(join(references, "\n"))
+                        .contains("$advice");
+            }
+
+            for (String reference : references) {
+                for (String construct : RUNTIME_CONSTRUCTS) {
+                    Truth.assertWithMessage(testClassName)
+                            .that(reference)
+                            .doesNotContain(construct);
+                }
+            }
+        }
+
+        return wovenDir;
+    }
+
+    private void assertBaselineProfileCoversWovenMembers(List<String> options)
+            throws IOException {
+
+        Compilation compilation = compile(options, WOVEN_TEST_CLASSES);
+        File wovenDir = weave(compilation, temporaryFolder);
+
+        List<String> rules = new ArrayList<>();
+        for (JavaFileObject generatedFile : compilation.generatedFiles()) {
+            if (generatedFile.getName().contains(BASELINE_PROFILE_DIR)) {
+                for (String rule : generatedFile.getCharContent(true).toString().split("\n")) {
+                    if (!rule.startsWith("#")) {
+                        rules.add(rule);
+                    }
+                }
+            }
+        }
+        Truth.assertThat(rules).isNotEmpty();
+
+        List<Pattern> patterns = new ArrayList<>();
+        for (String rule : rules) {
+            patterns.add(toPattern(rule));
+        }
+
+        // Every class and member generated by Ground Control, or woven by ajc, is covered.
+        List<String> descriptors = getDescriptors(wovenDir, new ArrayList<String>());
+        for (String descriptor : descriptors) {
+            if (!descriptor.contains("GroundControlAspect")
+                    && !descriptor.contains("_aroundBody")) {
+                continue;
+            }
+
+            boolean covered = false;
+            for (Pattern pattern : patterns) {
+                covered |= pattern.matcher(descriptor).matches();
+            }
+            Truth.assertWithMessage(descriptor).that(covered).isTrue();
+        }
+
+        // Every rule refers to woven classes or members. Rules for call sites match any
+        // calling class, which may not be part of this module.
+        for (int i = 0; i < rules.size(); i++) {
+
+            if (rules.get(i).startsWith("HSPL**;")) {
+                continue;
+            }
+
+            boolean matched = false;
+            for (String descriptor : descriptors) {
+                matched |= patterns.get(i).matcher(descriptor).matches();
+            }
+            Truth.assertWithMessage(rules.get(i)).that(matched).isTrue();
+        }
+    }
+
+    /**
+     * Retrieve the profile descriptors of the classes in the specified directory,
+     * and of the methods they declare, e.g. {@code Lcom/example/Foo;->bar(I)V}.
+     */
+    private List<String> getDescriptors(File dir, List<String> descriptors) throws IOException {
+
+        File[] files = dir.listFiles();
+        if (null == files) {
+            return descriptors;
+        }
+
+        for (File file : files) {
+
+            if (file.isDirectory()) {
+                getDescriptors(file, descriptors);
+                continue;
+            }
+
+            JavaClass javaClass = new ClassParser(file.getPath()).parse();
+            String classDescriptor = String.format("L%s;",
+                    javaClass.getClassName().replace('.', '/'));
+            descriptors.add(classDescriptor);
+
+            for (Method method : javaClass.getMethods()) {
+                descriptors.add(String.format("%1$s->%2$s%3$s",
+                        classDescriptor, method.getName(), method.getSignature()));
+            }
+        }
+
+        return descriptors;
+    }
+
+    /**
+     * Convert the specified baseline profile rule to a pattern matching the descriptors
+     * of the classes or methods it covers, omitting the method flags.
+     */
+    private static Pattern toPattern(String rule) {
+
+        String descriptor = rule.replaceFirst("^[HSP]*", "");
+        StringBuilder regex = new StringBuilder();
+
+        for (int i = 0; i < descriptor.length(); i++) {
+
+            char c = descriptor.charAt(i);
+            if ('*' == c && i + 1 < descriptor.length() && '*' == descriptor.charAt(i + 1)) {
+                regex.append(".*");
+                i++;
+            } else if ('*' == c) {
+                regex.append("[^/]*");
+            } else if ('?' == c) {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Retrieve the names of the members declared by the specified class, and of the classes
+     * and members referenced by its bytecode. Unused constant pool entries left over from
+     * weaving are ignored.
+     */
+    private List<String> getReferences(File classFile) throws IOException {
+
+        JavaClass javaClass = new ClassParser(classFile.getPath()).parse();
+        ConstantPool constantPool = javaClass.getConstantPool();
+
+        List<String> references = new ArrayList<>();
+
+        for (Field field : javaClass.getFields()) {
+            references.add(field.getName());
+        }
+
+        for (Method method : javaClass.getMethods()) {
+
+            references.add(method.getName());
+            references.addAll(getReferences(method, constantPool));
+        }
+
+        return references;
+    }
+
+    /**
+     * Retrieve the names of the classes and members referenced by the bytecode
+     * of the specified method of the specified class.
+     */
+    private List<String> getReferences(File classFile, String methodName) throws IOException {
+
+        JavaClass javaClass = new ClassParser(classFile.getPath()).parse();
+
+        for (Method method : javaClass.getMethods()) {
+            if (methodName.equals(method.getName())) {
+                return getReferences(method, javaClass.getConstantPool());
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    private List<String> getReferences(Method method, ConstantPool constantPool) {
+
+        List<String> references = new ArrayList<>();
+
+        Code code = method.getCode();
+        if (null == code) {
+            return references;
+        }
+
+        for (Instruction instruction : new InstructionList(code.getCode()).getInstructions()) {
+            if (instruction instanceof InstructionCP) {
+                references.add(constantPool
+                        .constantToString(((InstructionCP) instruction).getIndex())
+                        .replace('/', '.'));
+            }
+        }
+
+        return references;
+    }
+}
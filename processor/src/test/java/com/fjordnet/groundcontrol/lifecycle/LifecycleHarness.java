@@ -0,0 +1,218 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.lifecycle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Runs woven activities and support fragments on the JVM, against Android stubs whose
+ * permission checks and requests are answered by a simulated device.
+ * The stubs and the lifecycle driver are compiled from the test resources, then loaded along
+ * with the woven classes and the Ground Control runtime by a class loader of their own,
+ * so that every simulation starts from a pristine device and runtime.
+ */
+public class LifecycleHarness {
+
+    private static final String STUBS_RESOURCE = "/lifecycle";
+
+    private static final String RUNTIME_PACKAGE = "com.fjordnet.groundcontrol.";
+    private static final String[] SHARED_PACKAGES = {
+            RUNTIME_PACKAGE + "annotations.",
+            RUNTIME_PACKAGE + "lifecycle."
+    };
+
+    private final URL[] classPath;
+
+    /**
+     * Compile the Android stubs and the lifecycle driver into the specified directory.
+     *
+     * @param wovenDir directory containing the woven classes to run.
+     */
+    public LifecycleHarness(File wovenDir, File stubsDir) throws IOException, URISyntaxException {
+        this(Collections.singletonList(wovenDir), stubsDir);
+    }
+
+    /**
+     * Compile the Android stubs and the lifecycle driver into the specified directory.
+     *
+     * @param wovenDirs directories containing the woven classes to run, e.g. those of an app
+     * followed by those of its libraries.
+     */
+    public LifecycleHarness(List<File> wovenDirs, File stubsDir)
+            throws IOException, URISyntaxException {
+
+        List<File> sources = findSources(new File(getClass().getResource(STUBS_RESOURCE).toURI()),
+                new ArrayList<File>());
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+        try (StandardJavaFileManager fileManager
+                     = compiler.getStandardFileManager(diagnostics, null, null)) {
+
+            List<String> options = Arrays.asList(
+                    "-proc:none",
+                    "-d", stubsDir.getPath(),
+                    "-classpath", System.getProperty("java.class.path"));
+
+            boolean compiled = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(sources)).call();
+            if (!compiled) {
+                throw new IllegalStateException(String.format(
+                        "Unable to compile Android stubs: %s", diagnostics.getDiagnostics()));
+            }
+        }
+
+        classPath = new URL[wovenDirs.size() + 1];
+        classPath[0] = stubsDir.toURI().toURL();
+        for (int index = 0; index < wovenDirs.size(); index++) {
+            classPath[index + 1] = wovenDirs.get(index).toURI().toURL();
+        }
+    }
+
+    /**
+     * Start a new simulation of the specified woven activity or support fragment.
+     * The component isn't created until the simulation is launched.
+     */
+    public LifecycleSimulation simulate(String componentClassName)
+            throws ReflectiveOperationException {
+
+        return (LifecycleSimulation) createClassLoader()
+                .loadClass(RUNTIME_PACKAGE + "lifecycle.LifecycleDriver")
+                .getConstructor(String.class)
+                .newInstance(componentClassName);
+    }
+
+    /**
+     * @return a new class loader for the woven classes, linked against the Android stubs
+     * and a copy of the Ground Control runtime of its own.
+     */
+    public ClassLoader createClassLoader() {
+        return new SimulationClassLoader(classPath, getClass().getClassLoader());
+    }
+
+    private static List<File> findSources(File dir, List<File> sources) {
+
+        File[] files = dir.listFiles();
+        if (null == files) {
+            return sources;
+        }
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                findSources(file, sources);
+            } else if (file.getName().endsWith(".java")) {
+                sources.add(file);
+            }
+        }
+
+        return sources;
+    }
+
+    /**
+     * Class loader preferring the stubs and the woven classes to the classes of the test,
+     * and defining its own copy of the Ground Control runtime, so that the runtime links
+     * against the stubs. Only the test classes, including {@link LifecycleSimulation},
+     * and libraries are shared with the parent class loader.
+     */
+    private static class SimulationClassLoader extends URLClassLoader {
+
+        SimulationClassLoader(URL[] classPath, ClassLoader parent) {
+            super(classPath, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+
+            synchronized (getClassLoadingLock(name)) {
+
+                Class<?> loadedClass = findLoadedClass(name);
+                if (null == loadedClass) {
+                    try {
+                        loadedClass = findClass(name);
+                    } catch (ClassNotFoundException exception) {
+                        if (!isRuntimeClass(name)) {
+                            return super.loadClass(name, resolve);
+                        }
+                        loadedClass = defineRuntimeClass(name);
+                    }
+                }
+
+                if (resolve) {
+                    resolveClass(loadedClass);
+                }
+
+                return loadedClass;
+            }
+        }
+
+        private static boolean isRuntimeClass(String name) {
+
+            if (!name.startsWith(RUNTIME_PACKAGE)) {
+                return false;
+            }
+
+            for (String sharedPackage : SHARED_PACKAGES) {
+                if (name.startsWith(sharedPackage)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private Class<?> defineRuntimeClass(String name) throws ClassNotFoundException {
+
+            String resourceName = name.replace('.', '/') + ".class";
+            try (InputStream input = getParent().getResourceAsStream(resourceName)) {
+
+                if (null == input) {
+                    throw new ClassNotFoundException(name);
+                }
+
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int length;
+                while (-1 != (length = input.read(buffer))) {
+                    output.write(buffer, 0, length);
+                }
+
+                return defineClass(name, output.toByteArray(), 0, output.size());
+
+            } catch (IOException exception) {
+                throw new ClassNotFoundException(name, exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.lifecycle;
+
+import java.util.List;
+
+/**
+ * Scripted lifecycle of a woven activity or support fragment, running against the Android
+ * stubs on the JVM. Implemented by the lifecycle driver, which is loaded along with the stubs
+ * by {@link LifecycleHarness}, hence the use of JDK types only.
+ */
+public interface LifecycleSimulation {
+
+    /**
+     * Create the component, without any saved state.
+     */
+    void launch() throws Exception;
+
+    /**
+     * Simulate a configuration change, e.g. a rotation: save the state of the component,
+     * marshal it through a parcel, destroy the component, then create a new instance
+     * from the restored state.
+     */
+    void recreate() throws Exception;
+
+    /**
+     * Destroy the component, without saving its state.
+     */
+    void destroy() throws Exception;
+
+    /**
+     * Resume the activity, or the host activity of the fragment, e.g. upon returning from
+     * the app settings.
+     */
+    void resume();
+
+    /**
+     * Invoke the specified public method, taking no arguments, on the current instance
+     * of the component.
+     */
+    void perform(String methodName) throws Exception;
+
+    /**
+     * Answer the oldest pending permission request, delivering the result to the current
+     * instance of the component.
+     *
+     * @return {@code false} if there was no pending request.
+     */
+    boolean answer(boolean granted);
+
+    /**
+     * Deny the oldest pending permission request, as when the user chooses not to be asked
+     * again, delivering the result to the current instance of the component.
+     *
+     * @return {@code false} if there was no pending request.
+     */
+    boolean denyPermanently();
+
+    /**
+     * @return the value of the specified {@code int} field of the current instance
+     * of the component.
+     */
+    int getCount(String fieldName) throws Exception;
+
+    void setPermissionState(String permission, boolean granted, boolean showRationale);
+
+    int getPendingRequestCount();
+
+    /**
+     * @return the number of times permissions were checked since the simulation started.
+     */
+    int getPermissionChecks();
+
+    /**
+     * Answer requests for the specified permission with the specified outcome, the name of a
+     * {@code ScriptedPermissionBackend.Outcome}. The scripted backend is installed in place of
+     * the simulated device upon first use.
+     */
+    void script(String permission, String outcome);
+
+    /**
+     * Set the duration in milliseconds after which unanswered permission requests expire.
+     */
+    void setRequestExpiry(long expiry);
+
+    /**
+     * Grant or revoke the specified permission with the scripted backend, e.g. from the app
+     * settings.
+     */
+    void scriptGrant(String permission, boolean granted);
+
+    /**
+     * Specify whether the scripted backend grants all permissions at install time,
+     * as before Android M.
+     */
+    void scriptGrantedAtInstall(boolean grantedAtInstall);
+
+    /**
+     * Specify whether the scripted backend recommends a rationale for the specified permission.
+     */
+    void scriptRationale(String permission, boolean showRationale);
+
+    /**
+     * Answer the requests pending with the scripted backend, delivering the results to the
+     * instances which made them.
+     *
+     * @return the number of requests answered.
+     */
+    int answerScriptedRequests();
+
+    /**
+     * Answer the oldest request pending with the scripted backend, delivering the result
+     * to the instance which made it.
+     *
+     * @return {@code false} if there was no pending request.
+     */
+    boolean answerNextScriptedRequest();
+
+    /**
+     * Start a simulation of another woven component within the same process, sharing
+     * the simulated device, the runtime and the scripted backend with this simulation.
+     * Requests planned for the other component are recorded by this simulation.
+     */
+    LifecycleSimulation simulateInSameProcess(String componentClassName) throws Exception;
+
+    /**
+     * @return every permission requested from the scripted backend, in the order of
+     * the requests.
+     */
+    List<String> getScriptedRequests();
+
+    /**
+     * @return the platform groups of the permission requests sent since the simulation
+     * started, as planned by the runtime, in order.
+     */
+    List<String> getPlannedGroups();
+
+    /**
+     * Subscribe a listener of the specified name to changes of the specified permissions
+     * with the permission monitor, replacing any listener of the same name.
+     *
+     * @param unsubscribeWhenNotified whether the listener unsubscribes when first notified.
+     */
+    void subscribe(String listenerName, boolean unsubscribeWhenNotified, String... permissions);
+
+    void unsubscribe(String listenerName);
+
+    /**
+     * @return the notifications received by the listener of the specified name, in order,
+     * each listing the granted permissions prefixed with {@code +}, then the revoked
+     * permissions prefixed with {@code -}, separated by spaces.
+     */
+    List<String> getPermissionChanges(String listenerName);
+
+    /**
+     * @return the number of activity lifecycle callbacks registered with the application.
+     */
+    int getActivityLifecycleCallbacksCount();
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fjordnet.sample.groundcontrol;
+
+import android.app.Activity;
+
+import com.fjordnet.groundcontrol.annotations.NeedsPermission;
+import com.fjordnet.groundcontrol.annotations.OnPermissionDenied;
+
+import static android.Manifest.permission.CAMERA;
+import static android.Manifest.permission.READ_CONTACTS;
+
+/**
+ * Test activity with both check-only methods and methods prompting the user.
+ */
+public class CheckOnlyMixedActivity extends Activity {
+
+    @NeedsPermission(CAMERA)
+    protected void captureMedia() {
+    }
+
+    @NeedsPermission(value = READ_CONTACTS, checkOnly = true, rationaleResourceId = 0x7f060001)
+    protected void prefetchContacts() {
+    }
+
+    @OnPermissionDenied(READ_CONTACTS)
+    protected void onContactsDenied() {
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fjordnet.sample.groundcontrol;
+
+import android.content.Context;
+
+import com.fjordnet.groundcontrol.annotations.NeedsPermission;
+import com.fjordnet.groundcontrol.annotations.OnPermissionDenied;
+
+import static android.Manifest.permission.READ_CONTACTS;
+
+/**
+ * Test class running in the background, only checking the permissions of its annotated
+ * methods through its context accessor.
+ */
+public class CheckOnlyPrefetcher {
+
+    private final Context context;
+
+    public CheckOnlyPrefetcher(Context context) {
+        this.context = context;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    public void prefetch() {
+        prefetchContacts(20);
+    }
+
+    @NeedsPermission(value = READ_CONTACTS, checkOnly = true)
+    protected void prefetchContacts(int limit) {
+    }
+
+    @OnPermissionDenied(READ_CONTACTS)
+    protected void onContactsDenied() {
+    }
+}
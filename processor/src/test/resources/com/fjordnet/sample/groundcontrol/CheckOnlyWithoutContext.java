@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fjordnet.sample.groundcontrol;
+
+import com.fjordnet.groundcontrol.annotations.NeedsPermission;
+
+import static android.Manifest.permission.READ_CONTACTS;
+
+/**
+ * Test class only checking the permissions of its annotated methods,
+ * without any way to access a context.
+ */
+public class CheckOnlyWithoutContext {
+
+    @NeedsPermission(value = READ_CONTACTS, checkOnly = true)
+    protected void prefetchContacts() {
+    }
+}
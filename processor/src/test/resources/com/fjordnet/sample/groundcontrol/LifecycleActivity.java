@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.sample.groundcontrol;
+
+import android.app.Activity;
+
+import com.fjordnet.groundcontrol.OnRationaleAcknowledgedListener;
+import com.fjordnet.groundcontrol.annotations.NeedsPermission;
+import com.fjordnet.groundcontrol.annotations.OnPermissionDenied;
+import com.fjordnet.groundcontrol.annotations.OnShowRationale;
+
+import static android.Manifest.permission.ACCESS_FINE_LOCATION;
+import static android.Manifest.permission.CAMERA;
+import static android.Manifest.permission.READ_CONTACTS;
+
+/**
+ * Test activity whose lifecycle is simulated on the JVM, recording the invocations
+ * of its callbacks across recreations.
+ */
+public class LifecycleActivity extends Activity {
+
+    public int capturedCount;
+    public int capturedQuality;
+    public int deniedCount;
+    public int importedCount;
+    public int locatedCount;
+    public int rationaleCount;
+
+    private OnRationaleAcknowledgedListener rationaleListener;
+
+    public void onCaptureClicked() {
+        capturePhoto(90, "photo.jpg");
+    }
+
+    public void onImportClicked() {
+        importContacts();
+    }
+
+    public void onLocateClicked() {
+        locate();
+    }
+
+    public void acknowledgeRationale() {
+        rationaleListener.onRationaleAcknowledged(this);
+    }
+
+    @NeedsPermission(CAMERA)
+    protected void capturePhoto(int quality, String fileName) {
+        if ("photo.jpg".equals(fileName)) {
+            capturedQuality = quality;
+            capturedCount++;
+        }
+    }
+
+    @OnPermissionDenied(CAMERA)
+    protected void onCameraDenied() {
+        deniedCount++;
+    }
+
+    @NeedsPermission(READ_CONTACTS)
+    protected void importContacts() {
+        importedCount++;
+    }
+
+    @NeedsPermission(value = ACCESS_FINE_LOCATION, checkOnly = true)
+    protected void locate() {
+        locatedCount++;
+    }
+
+    @OnShowRationale(value = READ_CONTACTS, handleRestarts = true)
+    protected void showContactsRationale(OnRationaleAcknowledgedListener listener) {
+        rationaleListener = listener;
+        rationaleCount++;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.sample.groundcontrol;
+
+import android.app.Activity;
+
+import com.fjordnet.groundcontrol.annotations.NeedsPermission;
+
+import static android.Manifest.permission.CAMERA;
+import static android.Manifest.permission.READ_CONTACTS;
+import static android.Manifest.permission.RECORD_AUDIO;
+
+/**
+ * Test activity with methods annotated with {@link NeedsPermission} calling one another.
+ */
+public class NestedPermissionsActivity extends Activity {
+
+    public void onRecordClicked() {
+        recordVideo();
+    }
+
+    public void onSnapshotClicked() {
+        takePicture();
+    }
+
+    @NeedsPermission({CAMERA, RECORD_AUDIO})
+    protected void recordVideo() {
+        takePicture();
+        checkMicrophone();
+        importContacts();
+    }
+
+    @NeedsPermission(CAMERA)
+    protected void takePicture() {
+    }
+
+    @NeedsPermission(value = RECORD_AUDIO, checkOnly = true)
+    protected void checkMicrophone() {
+    }
+
+    @NeedsPermission(READ_CONTACTS)
+    protected void importContacts() {
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fjordnet.sample.groundcontrol;
+
+import com.fjordnet.groundcontrol.annotations.NeedsPermission;
+import com.fjordnet.groundcontrol.annotations.RequestPermissionsOnCreate;
+
+import static android.Manifest.permission.RECORD_AUDIO;
+
+/**
+ * Test fragment requesting the permissions of its own and inherited annotated methods
+ * when created, extending a class which does not request permissions when created.
+ */
+@RequestPermissionsOnCreate
+public class OnCreateSubFragment extends HierarchyBaseFragment {
+
+    @NeedsPermission(RECORD_AUDIO)
+    protected void recordAudio() {
+    }
+}
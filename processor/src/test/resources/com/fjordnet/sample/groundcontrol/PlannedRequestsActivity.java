@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.sample.groundcontrol;
+
+import android.app.Activity;
+
+import com.fjordnet.groundcontrol.annotations.NeedsPermission;
+
+import static android.Manifest.permission.ACCESS_COARSE_LOCATION;
+import static android.Manifest.permission.ACCESS_FINE_LOCATION;
+import static android.Manifest.permission.CAMERA;
+import static android.Manifest.permission.READ_CONTACTS;
+import static android.Manifest.permission.WRITE_CONTACTS;
+
+/**
+ * Test activity requesting permissions of several groups, and requesting permissions again
+ * before earlier requests are answered, whose requests are planned by the runtime.
+ */
+public class PlannedRequestsActivity extends Activity {
+
+    public int checkedInCount;
+    public int capturedCount;
+
+    public void onCheckInClicked() {
+        checkIn();
+    }
+
+    public void onCaptureClicked() {
+        capturePhoto();
+    }
+
+    public void onCheckInAndCaptureClicked() {
+        checkIn();
+        capturePhoto();
+    }
+
+    @NeedsPermission({ACCESS_FINE_LOCATION, READ_CONTACTS, ACCESS_COARSE_LOCATION, WRITE_CONTACTS})
+    protected void checkIn() {
+        checkedInCount++;
+    }
+
+    @NeedsPermission(CAMERA)
+    protected void capturePhoto() {
+        capturedCount++;
+    }
+}
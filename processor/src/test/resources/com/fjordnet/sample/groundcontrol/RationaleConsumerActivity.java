@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.sample.groundcontrol;
+
+import com.fjordnet.groundcontrol.OnRationaleAcknowledgedListener;
+import com.fjordnet.groundcontrol.annotations.NeedsPermission;
+import com.fjordnet.groundcontrol.annotations.OnShowRationale;
+
+import static android.Manifest.permission.CAMERA;
+
+/**
+ * Test activity extending {@link RationaleLibraryActivity}, woven beforehand as in a library,
+ * and showing rationales of its own.
+ */
+public class RationaleConsumerActivity extends RationaleLibraryActivity {
+
+    public int capturedCount;
+
+    public void onCaptureClicked() {
+        capturePhoto();
+    }
+
+    @NeedsPermission(CAMERA)
+    protected void capturePhoto() {
+        capturedCount++;
+    }
+
+    @OnShowRationale(CAMERA)
+    protected void showCameraRationale(OnRationaleAcknowledgedListener listener) {
+        listener.onRationaleAcknowledged(this);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.sample.groundcontrol;
+
+import android.app.Activity;
+
+import com.fjordnet.groundcontrol.OnRationaleAcknowledgedListener;
+import com.fjordnet.groundcontrol.annotations.NeedsPermission;
+import com.fjordnet.groundcontrol.annotations.OnShowRationale;
+
+import static android.Manifest.permission.READ_CONTACTS;
+
+/**
+ * Test activity compiled and woven on its own, as in a library, then extended by
+ * {@link RationaleConsumerActivity}.
+ */
+public class RationaleLibraryActivity extends Activity {
+
+    public int importedCount;
+    public int rationaleCount;
+
+    private OnRationaleAcknowledgedListener rationaleListener;
+
+    public void onImportClicked() {
+        importContacts();
+    }
+
+    public void acknowledgeRationale() {
+        rationaleListener.onRationaleAcknowledged(this);
+    }
+
+    @NeedsPermission(READ_CONTACTS)
+    protected void importContacts() {
+        importedCount++;
+    }
+
+    @OnShowRationale(READ_CONTACTS)
+    protected void showContactsRationale(OnRationaleAcknowledgedListener listener) {
+        rationaleListener = listener;
+        rationaleCount++;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.sample.groundcontrol;
+
+import android.app.Activity;
+
+import com.fjordnet.groundcontrol.OnRationaleAcknowledgedListener;
+import com.fjordnet.groundcontrol.annotations.NeedsPermission;
+import com.fjordnet.groundcontrol.annotations.OnPermissionDenied;
+import com.fjordnet.groundcontrol.annotations.OnShowRationale;
+
+import static android.Manifest.permission.CAMERA;
+import static android.Manifest.permission.READ_CONTACTS;
+import static android.Manifest.permission.RECORD_AUDIO;
+
+/**
+ * Test class invoking methods annotated with {@link NeedsPermission},
+ * so advice is woven at its call sites.
+ */
+public class WovenCallSites extends Activity {
+
+    public void onCaptureClicked() {
+        captureMedia(true);
+    }
+
+    public void onRecordClicked() {
+        recordAudio("first.3gp", "second.3gp");
+    }
+
+    public void onImportClicked() {
+        importContacts(100);
+    }
+
+    @NeedsPermission(value = CAMERA, rationaleResourceId = 0x7f060001)
+    protected void captureMedia(boolean video) {
+    }
+
+    @NeedsPermission(RECORD_AUDIO)
+    protected void recordAudio(String... fileNames) {
+    }
+
+    @OnPermissionDenied(RECORD_AUDIO)
+    protected void onRecordAudioDenied() {
+    }
+
+    @NeedsPermission(READ_CONTACTS)
+    protected void importContacts(int limit) {
+    }
+
+    @OnShowRationale(value = READ_CONTACTS, handleRestarts = true)
+    protected void showImportContactsRationale(OnRationaleAcknowledgedListener listener) {
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.sample.groundcontrol;
+
+/**
+ * Test class invoking a method with the same name as a method annotated with
+ * {@code NeedsPermission} of another class, without calling the annotated method.
+ */
+public class WovenCallSitesNamesake {
+
+    private int importedCount;
+
+    public void onImportClicked() {
+        importContacts(100);
+    }
+
+    public void importContacts(int limit) {
+        importedCount += limit;
+    }
+}
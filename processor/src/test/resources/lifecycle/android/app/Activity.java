@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.app;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.fjordnet.groundcontrol.lifecycle.SimulatedDevice;
+
+/**
+ * Activity stub for lifecycle simulations. Lifecycle methods are invoked through
+ * {@link Instrumentation}, and permission requests are sent to the simulated device.
+ */
+public class Activity extends Context {
+
+    boolean destroyed;
+    private boolean finishing;
+
+    protected void onCreate(Bundle savedInstanceState) {
+    }
+
+    protected void onPostCreate(Bundle savedInstanceState) {
+    }
+
+    protected void onResume() {
+        getApplication().dispatchActivityResumed(this);
+    }
+
+    protected void onSaveInstanceState(Bundle outState) {
+    }
+
+    protected void onDestroy() {
+    }
+
+    public final Application getApplication() {
+        return SimulatedDevice.getApplication();
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return getApplication();
+    }
+
+    public void finish() {
+        finishing = true;
+    }
+
+    public boolean isFinishing() {
+        return finishing;
+    }
+
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    public void onRequestPermissionsResult(int requestCode,
+            String[] permissions,
+            int[] grantResults) {
+    }
+
+    public final void requestPermissions(String[] permissions, int requestCode) {
+        SimulatedDevice.requestPermissions(this, permissions, requestCode);
+    }
+
+    public boolean shouldShowRequestPermissionRationale(String permission) {
+        return SimulatedDevice.shouldShowRequestPermissionRationale(permission);
+    }
+}
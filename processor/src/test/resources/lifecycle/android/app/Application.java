@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.app;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Application stub for lifecycle simulations, dispatching the lifecycle events of activities
+ * to the registered callbacks.
+ */
+public class Application extends Context {
+
+    private final List<ActivityLifecycleCallbacks> lifecycleCallbacks = new ArrayList<>();
+
+    public interface ActivityLifecycleCallbacks {
+
+        void onActivityCreated(Activity activity, Bundle savedInstanceState);
+
+        void onActivityStarted(Activity activity);
+
+        void onActivityResumed(Activity activity);
+
+        void onActivityPaused(Activity activity);
+
+        void onActivityStopped(Activity activity);
+
+        void onActivitySaveInstanceState(Activity activity, Bundle outState);
+
+        void onActivityDestroyed(Activity activity);
+    }
+
+    public void registerActivityLifecycleCallbacks(ActivityLifecycleCallbacks callback) {
+        lifecycleCallbacks.add(callback);
+    }
+
+    public void unregisterActivityLifecycleCallbacks(ActivityLifecycleCallbacks callback) {
+        lifecycleCallbacks.remove(callback);
+    }
+
+    /**
+     * @return the number of registered callbacks, for simulations to check.
+     */
+    public int getActivityLifecycleCallbacksCount() {
+        return lifecycleCallbacks.size();
+    }
+
+    void dispatchActivityResumed(Activity activity) {
+        for (ActivityLifecycleCallbacks callback
+                : lifecycleCallbacks.toArray(new ActivityLifecycleCallbacks[0])) {
+            callback.onActivityResumed(activity);
+        }
+    }
+}
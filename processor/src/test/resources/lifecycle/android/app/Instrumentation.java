@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.app;
+
+import android.os.Bundle;
+
+/**
+ * Instrumentation stub for lifecycle simulations, invoking the lifecycle methods of activities.
+ */
+public class Instrumentation {
+
+    public void callActivityOnCreate(Activity activity, Bundle icicle) {
+        activity.onCreate(icicle);
+    }
+
+    public void callActivityOnPostCreate(Activity activity, Bundle icicle) {
+        activity.onPostCreate(icicle);
+    }
+
+    public void callActivityOnResume(Activity activity) {
+        activity.onResume();
+    }
+
+    public void callActivityOnSaveInstanceState(Activity activity, Bundle outState) {
+        activity.onSaveInstanceState(outState);
+    }
+
+    public void callActivityOnDestroy(Activity activity) {
+        activity.onDestroy();
+        activity.destroyed = true;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content;
+
+import com.fjordnet.groundcontrol.lifecycle.SimulatedDevice;
+
+/**
+ * Context stub for lifecycle simulations, checking permissions against the simulated device
+ * and storing preferences in its memory.
+ */
+public class Context {
+
+    public static final int MODE_PRIVATE = 0;
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        return SimulatedDevice.getSharedPreferences(name);
+    }
+
+    public int checkSelfPermission(String permission) {
+        return SimulatedDevice.checkSelfPermission(permission);
+    }
+}
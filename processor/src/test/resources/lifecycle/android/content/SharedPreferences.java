@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content;
+
+import java.util.Set;
+
+/**
+ * SharedPreferences stub for lifecycle simulations.
+ */
+public interface SharedPreferences {
+
+    Set<String> getStringSet(String key, Set<String> defValues);
+
+    Editor edit();
+
+    interface Editor {
+
+        Editor putStringSet(String key, Set<String> values);
+
+        Editor remove(String key);
+
+        boolean commit();
+
+        void apply();
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bundle stub for lifecycle simulations, holding values in memory until written to a parcel.
+ */
+public final class Bundle implements Parcelable {
+
+    public static final Creator<Bundle> CREATOR = new Creator<Bundle>() {
+
+        @Override
+        public Bundle createFromParcel(Parcel source) {
+            Bundle bundle = new Bundle();
+            bundle.readFromParcel(source);
+            return bundle;
+        }
+
+        @Override
+        public Bundle[] newArray(int size) {
+            return new Bundle[size];
+        }
+    };
+
+    private final Map<String, Object> values = new LinkedHashMap<>();
+    private ClassLoader classLoader;
+
+    public void setClassLoader(ClassLoader loader) {
+        classLoader = loader;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    public boolean containsKey(String key) {
+        return values.containsKey(key);
+    }
+
+    public Set<String> keySet() {
+        return values.keySet();
+    }
+
+    public void remove(String key) {
+        values.remove(key);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        values.put(key, value);
+    }
+
+    public boolean getBoolean(String key) {
+        Object value = values.get(key);
+        return value instanceof Boolean && (Boolean) value;
+    }
+
+    public void putInt(String key, int value) {
+        values.put(key, value);
+    }
+
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public void putLong(String key, long value) {
+        values.put(key, value);
+    }
+
+    public long getLong(String key) {
+        return getLong(key, 0L);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    public void putString(String key, String value) {
+        values.put(key, value);
+    }
+
+    public String getString(String key) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public void putStringArray(String key, String[] value) {
+        values.put(key, value);
+    }
+
+    public String[] getStringArray(String key) {
+        Object value = values.get(key);
+        return value instanceof String[] ? (String[]) value : null;
+    }
+
+    public void putParcelable(String key, Parcelable value) {
+        values.put(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> T getParcelable(String key) {
+        Object value = values.get(key);
+        return value instanceof Parcelable ? (T) value : null;
+    }
+
+    public void putBundle(String key, Bundle value) {
+        values.put(key, value);
+    }
+
+    public Bundle getBundle(String key) {
+        Object value = values.get(key);
+        return value instanceof Bundle ? (Bundle) value : null;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+
+        dest.writeInt(values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            dest.writeString(entry.getKey());
+            dest.writeValue(entry.getValue());
+        }
+    }
+
+    public void readFromParcel(Parcel source) {
+
+        values.clear();
+
+        int size = source.readInt();
+        for (int index = 0; index < size; index++) {
+            String key = source.readString();
+            values.put(key, source.readValue(classLoader));
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parcel stub for lifecycle simulations. Values are copied in and out of the parcel,
+ * and parcelables are recreated through their creators, as when saved state is restored
+ * on devices.
+ */
+public final class Parcel {
+
+    private static final Object PARCELABLE_VALUE = new Object();
+
+    private final List<Object> values = new ArrayList<>();
+    private int position;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        values.clear();
+        position = 0;
+    }
+
+    public int dataPosition() {
+        return position;
+    }
+
+    public void setDataPosition(int position) {
+        this.position = position;
+    }
+
+    public void writeByte(byte value) {
+        values.add(value);
+    }
+
+    public byte readByte() {
+        return (Byte) next();
+    }
+
+    public void writeInt(int value) {
+        values.add(value);
+    }
+
+    public int readInt() {
+        return (Integer) next();
+    }
+
+    public void writeLong(long value) {
+        values.add(value);
+    }
+
+    public long readLong() {
+        return (Long) next();
+    }
+
+    public void writeFloat(float value) {
+        values.add(value);
+    }
+
+    public float readFloat() {
+        return (Float) next();
+    }
+
+    public void writeDouble(double value) {
+        values.add(value);
+    }
+
+    public double readDouble() {
+        return (Double) next();
+    }
+
+    public void writeString(String value) {
+        values.add(value);
+    }
+
+    public String readString() {
+        return (String) next();
+    }
+
+    public void writeStringArray(String[] value) {
+        values.add(null == value ? null : value.clone());
+    }
+
+    public String[] createStringArray() {
+        return (String[]) next();
+    }
+
+    public void writeByteArray(byte[] value) {
+        values.add(null == value ? null : value.clone());
+    }
+
+    public byte[] createByteArray() {
+        return (byte[]) next();
+    }
+
+    public void writeIntArray(int[] value) {
+        values.add(null == value ? null : value.clone());
+    }
+
+    public int[] createIntArray() {
+        return (int[]) next();
+    }
+
+    public void writeLongArray(long[] value) {
+        values.add(null == value ? null : value.clone());
+    }
+
+    public long[] createLongArray() {
+        return (long[]) next();
+    }
+
+    public void writeFloatArray(float[] value) {
+        values.add(null == value ? null : value.clone());
+    }
+
+    public float[] createFloatArray() {
+        return (float[]) next();
+    }
+
+    public void writeDoubleArray(double[] value) {
+        values.add(null == value ? null : value.clone());
+    }
+
+    public double[] createDoubleArray() {
+        return (double[]) next();
+    }
+
+    public void writeBooleanArray(boolean[] value) {
+        values.add(null == value ? null : value.clone());
+    }
+
+    public boolean[] createBooleanArray() {
+        return (boolean[]) next();
+    }
+
+    public void writeCharArray(char[] value) {
+        values.add(null == value ? null : value.clone());
+    }
+
+    public char[] createCharArray() {
+        return (char[]) next();
+    }
+
+    public void writeParcelable(Parcelable value, int flags) {
+
+        if (null == value) {
+            values.add(null);
+            return;
+        }
+
+        values.add(value.getClass().getName());
+        value.writeToParcel(this, flags);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> T readParcelable(ClassLoader loader) {
+
+        String className = (String) next();
+        if (null == className) {
+            return null;
+        }
+
+        return (T) getCreator(className, loader).createFromParcel(this);
+    }
+
+    public <T extends Parcelable> void writeParcelableArray(T[] value, int flags) {
+
+        if (null == value) {
+            writeInt(-1);
+            return;
+        }
+
+        writeInt(value.length);
+        for (T element : value) {
+            writeParcelable(element, flags);
+        }
+    }
+
+    public Parcelable[] readParcelableArray(ClassLoader loader) {
+
+        int length = readInt();
+        if (0 > length) {
+            return null;
+        }
+
+        Parcelable[] value = new Parcelable[length];
+        for (int index = 0; index < length; index++) {
+            value[index] = readParcelable(loader);
+        }
+
+        return value;
+    }
+
+    /**
+     * Write a value of any type supported by {@link Bundle}.
+     */
+    public void writeValue(Object value) {
+
+        if (value instanceof Parcelable) {
+            values.add(PARCELABLE_VALUE);
+            writeParcelable((Parcelable) value, 0);
+        } else if (value instanceof String[]) {
+            writeStringArray((String[]) value);
+        } else if (value instanceof byte[]) {
+            writeByteArray((byte[]) value);
+        } else if (value instanceof int[]) {
+            writeIntArray((int[]) value);
+        } else if (value instanceof long[]) {
+            writeLongArray((long[]) value);
+        } else {
+            values.add(value);
+        }
+    }
+
+    public Object readValue(ClassLoader loader) {
+
+        Object value = next();
+        return PARCELABLE_VALUE == value ? readParcelable(loader) : value;
+    }
+
+    private Object next() {
+        return values.get(position++);
+    }
+
+    private static Parcelable.Creator<?> getCreator(String className, ClassLoader loader) {
+
+        try {
+            Class<?> parcelableClass = Class.forName(className, true,
+                    null == loader ? Parcel.class.getClassLoader() : loader);
+            return (Parcelable.Creator<?>) parcelableClass.getField("CREATOR").get(null);
+
+        } catch (ReflectiveOperationException exception) {
+            throw new IllegalStateException(
+                    String.format("Unable to unmarshal parcelable %s", className), exception);
+        }
+    }
+}
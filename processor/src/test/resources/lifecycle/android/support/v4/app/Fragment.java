@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.app;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import com.fjordnet.groundcontrol.lifecycle.SimulatedDevice;
+
+/**
+ * Support Fragment stub for lifecycle simulations. Lifecycle methods are invoked directly,
+ * and permission requests are sent to the simulated device.
+ */
+public class Fragment {
+
+    private FragmentActivity host;
+
+    public void onAttach(Context context) {
+        host = (FragmentActivity) context;
+    }
+
+    public void onCreate(Bundle savedInstanceState) {
+    }
+
+    public void onActivityCreated(Bundle savedInstanceState) {
+    }
+
+    public void onSaveInstanceState(Bundle outState) {
+    }
+
+    public void onDestroy() {
+    }
+
+    public void onDetach() {
+        host = null;
+    }
+
+    public final FragmentActivity getActivity() {
+        return host;
+    }
+
+    public final boolean isAdded() {
+        return null != host;
+    }
+
+    public Context getContext() {
+        return host;
+    }
+
+    public void onRequestPermissionsResult(int requestCode,
+            String[] permissions,
+            int[] grantResults) {
+    }
+
+    public final void requestPermissions(String[] permissions, int requestCode) {
+        SimulatedDevice.requestPermissions(this, permissions, requestCode);
+    }
+
+    public boolean shouldShowRequestPermissionRationale(String permission) {
+        return SimulatedDevice.shouldShowRequestPermissionRationale(permission);
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.lifecycle;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+
+import com.fjordnet.groundcontrol.GroundControl;
+import com.fjordnet.groundcontrol.OnPermissionRequestPlannedListener;
+import com.fjordnet.groundcontrol.OnPermissionsChangedListener;
+import com.fjordnet.groundcontrol.PermissionMonitor;
+import com.fjordnet.groundcontrol.PermissionRequestPlan;
+import com.fjordnet.groundcontrol.ScriptedPermissionBackend;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drives the lifecycle of a woven activity or support fragment as the framework would,
+ * against the Android stubs. Activities are driven through {@link Instrumentation},
+ * while fragments are attached to a new host activity on every creation.
+ */
+public class LifecycleDriver implements LifecycleSimulation {
+
+    private final Class<?> componentClass;
+    private final boolean isFragment;
+    private final Instrumentation instrumentation = new Instrumentation();
+    private final Map<String, Method> methods = new HashMap<>();
+    private final Map<String, Field> fields = new HashMap<>();
+    private final List<String> plannedGroups = new ArrayList<>();
+    private final Map<String, RecordingListener> listeners = new HashMap<>();
+
+    private Activity activity;
+    private Fragment fragment;
+    private ScriptedPermissionBackend scriptedBackend;
+
+    public LifecycleDriver(String componentClassName) throws ClassNotFoundException {
+        this(componentClassName, null);
+
+        GroundControl.setOnPermissionRequestPlannedListener(
+                new OnPermissionRequestPlannedListener() {
+
+                    @Override
+                    public void onPermissionRequestPlanned(PermissionRequestPlan plan) {
+                        plannedGroups.addAll(Arrays.asList(plan.groups));
+                    }
+                });
+    }
+
+    /**
+     * @param sameProcessDriver the driver of another component in the same process, whose
+     * scripted backend is shared, or {@code null} if this is the first driver.
+     */
+    private LifecycleDriver(String componentClassName, LifecycleDriver sameProcessDriver)
+            throws ClassNotFoundException {
+
+        componentClass = Class.forName(componentClassName, false, getClass().getClassLoader());
+        isFragment = Fragment.class.isAssignableFrom(componentClass);
+
+        if (null != sameProcessDriver) {
+            scriptedBackend = sameProcessDriver.getScriptedBackend();
+        }
+    }
+
+    @Override
+    public void launch() throws Exception {
+        create(null);
+    }
+
+    @Override
+    public void recreate() throws Exception {
+
+        Bundle outState = new Bundle();
+        if (isFragment) {
+            fragment.onSaveInstanceState(outState);
+        } else {
+            instrumentation.callActivityOnSaveInstanceState(activity, outState);
+        }
+
+        destroy();
+        create(marshal(outState));
+    }
+
+    @Override
+    public void destroy() {
+
+        if (isFragment) {
+            fragment.onDestroy();
+            fragment.onDetach();
+            fragment = null;
+        }
+
+        instrumentation.callActivityOnDestroy(activity);
+        activity = null;
+    }
+
+    @Override
+    public void resume() {
+        instrumentation.callActivityOnResume(activity);
+    }
+
+    @Override
+    public void perform(String methodName) throws Exception {
+
+        Method method = methods.get(methodName);
+        if (null == method) {
+            method = componentClass.getMethod(methodName);
+            methods.put(methodName, method);
+        }
+
+        method.invoke(getComponent());
+    }
+
+    @Override
+    public boolean answer(boolean granted) {
+        return answer(granted, false);
+    }
+
+    @Override
+    public boolean denyPermanently() {
+        return answer(false, true);
+    }
+
+    @Override
+    public int getCount(String fieldName) throws Exception {
+
+        Field field = fields.get(fieldName);
+        if (null == field) {
+            field = findField(componentClass, fieldName);
+            field.setAccessible(true);
+            fields.put(fieldName, field);
+        }
+
+        return field.getInt(getComponent());
+    }
+
+    @Override
+    public void setPermissionState(String permission, boolean granted, boolean showRationale) {
+        SimulatedDevice.setPermissionState(permission, granted, showRationale);
+    }
+
+    @Override
+    public int getPendingRequestCount() {
+        return SimulatedDevice.getPendingRequestCount();
+    }
+
+    @Override
+    public int getPermissionChecks() {
+        return SimulatedDevice.getPermissionChecks();
+    }
+
+    @Override
+    public void script(String permission, String outcome) {
+        getScriptedBackend().answer(ScriptedPermissionBackend.Outcome.valueOf(outcome),
+                permission);
+    }
+
+    @Override
+    public void setRequestExpiry(long expiry) {
+        GroundControl.setRequestExpiry(expiry);
+    }
+
+    @Override
+    public void scriptGrant(String permission, boolean granted) {
+        if (granted) {
+            getScriptedBackend().grant(permission);
+        } else {
+            getScriptedBackend().revoke(permission);
+        }
+    }
+
+    @Override
+    public void scriptGrantedAtInstall(boolean grantedAtInstall) {
+        getScriptedBackend().grantAtInstall(grantedAtInstall);
+    }
+
+    @Override
+    public void scriptRationale(String permission, boolean showRationale) {
+        getScriptedBackend().showRationale(showRationale, permission);
+    }
+
+    @Override
+    public int answerScriptedRequests() {
+        return getScriptedBackend().answerPendingRequests();
+    }
+
+    @Override
+    public boolean answerNextScriptedRequest() {
+        return getScriptedBackend().answerNextRequest();
+    }
+
+    @Override
+    public LifecycleSimulation simulateInSameProcess(String componentClassName)
+            throws ClassNotFoundException {
+        return new LifecycleDriver(componentClassName, this);
+    }
+
+    @Override
+    public List<String> getScriptedRequests() {
+        return getScriptedBackend().getRequestedPermissions();
+    }
+
+    @Override
+    public List<String> getPlannedGroups() {
+        return plannedGroups;
+    }
+
+    @Override
+    public void subscribe(String listenerName,
+            boolean unsubscribeWhenNotified,
+            String... permissions) {
+
+        RecordingListener listener = new RecordingListener(unsubscribeWhenNotified);
+        RecordingListener previousListener = listeners.put(listenerName, listener);
+        if (null != previousListener) {
+            PermissionMonitor.unsubscribe(previousListener);
+        }
+
+        PermissionMonitor.subscribe(activity, listener, permissions);
+    }
+
+    @Override
+    public void unsubscribe(String listenerName) {
+        PermissionMonitor.unsubscribe(listeners.get(listenerName));
+    }
+
+    @Override
+    public List<String> getPermissionChanges(String listenerName) {
+        return listeners.get(listenerName).changes;
+    }
+
+    @Override
+    public int getActivityLifecycleCallbacksCount() {
+        return activity.getApplication().getActivityLifecycleCallbacksCount();
+    }
+
+    private static Field findField(Class<?> type, String fieldName)
+            throws NoSuchFieldException {
+
+        try {
+            return type.getDeclaredField(fieldName);
+        } catch (NoSuchFieldException exception) {
+            if (null == type.getSuperclass()) {
+                throw exception;
+            }
+            return findField(type.getSuperclass(), fieldName);
+        }
+    }
+
+    private ScriptedPermissionBackend getScriptedBackend() {
+
+        if (null == scriptedBackend) {
+            scriptedBackend = new ScriptedPermissionBackend();
+            GroundControl.setPermissionBackend(scriptedBackend, false);
+        }
+
+        return scriptedBackend;
+    }
+
+    private boolean answer(boolean granted, boolean dontAskAgain) {
+
+        SimulatedDevice.PermissionRequest request = SimulatedDevice.answer(granted, dontAskAgain);
+        if (null == request) {
+            return false;
+        }
+
+        int[] grantResults = new int[request.permissions.length];
+        Arrays.fill(grantResults, granted
+                ? SimulatedDevice.PERMISSION_GRANTED
+                : SimulatedDevice.PERMISSION_DENIED);
+
+        // As after a configuration change, the result is delivered to the current instance,
+        // rather than to the instance that made the request.
+        if (isFragment) {
+            fragment.onRequestPermissionsResult(request.requestCode, request.permissions,
+                    grantResults);
+        } else {
+            activity.onRequestPermissionsResult(request.requestCode, request.permissions,
+                    grantResults);
+        }
+
+        return true;
+    }
+
+    private void create(Bundle savedInstanceState) throws Exception {
+
+        if (!isFragment) {
+            activity = (Activity) componentClass.newInstance();
+            instrumentation.callActivityOnCreate(activity, savedInstanceState);
+            instrumentation.callActivityOnPostCreate(activity, savedInstanceState);
+            return;
+        }
+
+        activity = new FragmentActivity();
+        instrumentation.callActivityOnCreate(activity, null);
+
+        fragment = (Fragment) componentClass.newInstance();
+        fragment.onAttach(activity);
+        fragment.onCreate(savedInstanceState);
+        fragment.onActivityCreated(savedInstanceState);
+
+        instrumentation.callActivityOnPostCreate(activity, null);
+    }
+
+    private Object getComponent() {
+        return isFragment ? fragment : activity;
+    }
+
+    /**
+     * Write the specified state to a parcel and read it back, as when the state is restored
+     * by the framework.
+     */
+    private Bundle marshal(Bundle state) {
+
+        Parcel parcel = Parcel.obtain();
+        state.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+
+        Bundle restoredState = new Bundle();
+        restoredState.setClassLoader(componentClass.getClassLoader());
+        restoredState.readFromParcel(parcel);
+        parcel.recycle();
+
+        return restoredState;
+    }
+
+    /**
+     * Listener recording the permission changes it's notified of.
+     */
+    private static final class RecordingListener implements OnPermissionsChangedListener {
+
+        private final boolean unsubscribeWhenNotified;
+        private final List<String> changes = new ArrayList<>();
+
+        RecordingListener(boolean unsubscribeWhenNotified) {
+            this.unsubscribeWhenNotified = unsubscribeWhenNotified;
+        }
+
+        @Override
+        public void onPermissionsChanged(String[] grantedPermissions,
+                String[] revokedPermissions) {
+
+            StringBuilder change = new StringBuilder();
+            for (String permission : grantedPermissions) {
+                change.append(" +").append(permission);
+            }
+            for (String permission : revokedPermissions) {
+                change.append(" -").append(permission);
+            }
+            changes.add(change.substring(1));
+
+            if (unsubscribeWhenNotified) {
+                PermissionMonitor.unsubscribe(this);
+            }
+        }
+    }
+}
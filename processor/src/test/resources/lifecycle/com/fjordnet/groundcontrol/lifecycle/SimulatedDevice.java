@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018 Fjord
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fjordnet.groundcontrol.lifecycle;
+
+import android.app.Application;
+import android.content.SharedPreferences;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Permission state of the simulated device, shared by the Android stubs and the lifecycle
+ * driver. Each simulation loads its own copy of this class, so simulations don't share state.
+ */
+public final class SimulatedDevice {
+
+    public static final int PERMISSION_GRANTED = 0;
+    public static final int PERMISSION_DENIED = -1;
+
+    private static final Set<String> grantedPermissions = new HashSet<>();
+    private static final Set<String> rationalePermissions = new HashSet<>();
+    private static final Queue<PermissionRequest> pendingRequests = new ArrayDeque<>();
+    private static final Map<String, SimulatedPreferences> preferences = new HashMap<>();
+    private static final Application application = new Application();
+
+    private static int permissionChecks;
+
+    private SimulatedDevice() {
+    }
+
+    /**
+     * Permission request shown to the user, awaiting an answer.
+     */
+    public static final class PermissionRequest {
+
+        public final Object requester;
+        public final String[] permissions;
+        public final int requestCode;
+
+        PermissionRequest(Object requester, String[] permissions, int requestCode) {
+            this.requester = requester;
+            this.permissions = permissions;
+            this.requestCode = requestCode;
+        }
+    }
+
+    public static int checkSelfPermission(String permission) {
+        permissionChecks++;
+        return grantedPermissions.contains(permission) ? PERMISSION_GRANTED : PERMISSION_DENIED;
+    }
+
+    public static boolean shouldShowRequestPermissionRationale(String permission) {
+        return rationalePermissions.contains(permission);
+    }
+
+    public static void requestPermissions(Object requester, String[] permissions,
+            int requestCode) {
+
+        pendingRequests.add(new PermissionRequest(requester,
+                Arrays.copyOf(permissions, permissions.length), requestCode));
+    }
+
+    public static void setPermissionState(String permission, boolean granted,
+            boolean showRationale) {
+
+        if (granted) {
+            grantedPermissions.add(permission);
+        } else {
+            grantedPermissions.remove(permission);
+        }
+
+        if (showRationale) {
+            rationalePermissions.add(permission);
+        } else {
+            rationalePermissions.remove(permission);
+        }
+    }
+
+    /**
+     * Answer the oldest pending permission request. As on devices, denied permissions are
+     * then flagged as needing a rationale, unless the user chose not to be asked again.
+     *
+     * @return the answered request, or {@code null} if there's none pending.
+     */
+    public static PermissionRequest answer(boolean granted, boolean dontAskAgain) {
+
+        PermissionRequest request = pendingRequests.poll();
+        if (null == request) {
+            return null;
+        }
+
+        for (String permission : request.permissions) {
+            setPermissionState(permission, granted, !granted && !dontAskAgain);
+        }
+
+        return request;
+    }
+
+    /**
+     * @return the preferences of the specified name, kept in memory until the simulation ends.
+     */
+    public static SharedPreferences getSharedPreferences(String name) {
+
+        SimulatedPreferences namedPreferences = preferences.get(name);
+        if (null == namedPreferences) {
+            namedPreferences = new SimulatedPreferences();
+            preferences.put(name, namedPreferences);
+        }
+
+        return namedPreferences;
+    }
+
+    public static Application getApplication() {
+        return application;
+    }
+
+    public static int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    public static int getPermissionChecks() {
+        return permissionChecks;
+    }
+
+    /**
+     * Preferences whose edits are applied immediately.
+     */
+    private static final class SimulatedPreferences
+            implements SharedPreferences, SharedPreferences.Editor {
+
+        private final Map<String, Set<String>> stringSets = new HashMap<>();
+
+        @Override
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            Set<String> values = stringSets.get(key);
+            return null == values ? defValues : values;
+        }
+
+        @Override
+        public Editor edit() {
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            stringSets.put(key, new HashSet<>(values));
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            stringSets.remove(key);
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            return true;
+        }
+
+        @Override
+        public void apply() {
+        }
+    }
+}